@@ -1,12 +1,27 @@
 #!/usr/bin/env bash
 
 set -euo pipefail
-: ${CORE_PEER_TLS_ENABLED:="false"}
 : ${DEBUG:="false"}
+: ${JAVA_OPTS:=""}
+: ${CHAINCODE_METRICS_ENABLED:="false"}
+
+# class data sharing archive of the classes a started chaincode loads, built with the image
+if [ -f /chaincode.jsa ]; then
+   JAVA_OPTS="-XX:SharedArchiveFile=/chaincode.jsa ${JAVA_OPTS}"
+fi
+
+# transaction metrics go through the contract's provider unless another one is configured
+if [ "${CHAINCODE_METRICS_ENABLED,,}" = "true" ]; then
+   export CHAINCODE_METRICS_PROVIDER="${CHAINCODE_METRICS_PROVIDER:-org.example.CredentialMetricsProvider}"
+fi
 
 if [ "${DEBUG,,}" = "true" ]; then
-   exec java -agentlib:jdwp=transport=dt_socket,server=y,suspend=n,address=0.0.0.0:8000 -jar /chaincode.jar
-else [ "${CORE_PEER_TLS_ENABLED,,}" = "true" ]; then
-   exec java -jar /chaincode.jar
+   JAVA_OPTS="${JAVA_OPTS} -agentlib:jdwp=transport=dt_socket,server=y,suspend=n,address=0.0.0.0:8000"
 fi
 
+# with CHAINCODE_SERVER_ADDRESS set, the chaincode runs as a service the peer connects to
+if [ -n "${CHAINCODE_SERVER_ADDRESS:-}" ]; then
+   exec java ${JAVA_OPTS} -cp /chaincode.jar org.example.CredentialChaincodeServer
+else
+   exec java ${JAVA_OPTS} -jar /chaincode.jar
+fi
@@ -0,0 +1,40 @@
+#!/usr/bin/env bash
+#
+# Measures the time from starting the JVM to the first completed transaction of chaincode images, using the
+# same training run the image build records its class data sharing archive with. Each image is measured
+# with its archive and with class data sharing turned off, so one image gives the effect of the archive;
+# to include the effect of the minimized jar, build the image of an earlier commit too and pass both tags:
+#
+#   docker/measure-startup.sh credential-chaincode:before credential-chaincode:after
+#
+# Record the output in the description of the change that affects startup.
+# RUNS sets the number of containers started per image and setting (default 10).
+
+set -euo pipefail
+: ${RUNS:=10}
+
+if [ "$#" -eq 0 ]; then
+   echo "usage: $0 IMAGE..." >&2
+   exit 1
+fi
+
+cd "$(dirname "$0")/.."
+gradle --quiet startupTrainingJar
+TRAINING_JAR="$(pwd)/build/libs/startup-training.jar"
+
+measure() {
+   local image="$1" label="$2" share="$3"
+   for run in $(seq "${RUNS}"); do
+      # timed inside the container, so starting the container is not counted
+      docker run --rm -v "${TRAINING_JAR}:/startup-training.jar:ro" --entrypoint sh "${image}" -c \
+         "start=\$(date +%s%N) && java ${share} -cp /chaincode.jar:/startup-training.jar org.example.StartupTraining --first-transaction >/dev/null 2>&1 \
+            && echo \$(( (\$(date +%s%N) - start) / 1000000 ))"
+   done | sort -n | awk -v label="${label}" '
+      { ms[NR] = $1 }
+      END { printf "%s: median %d ms, min %d ms, max %d ms over %d runs\n", label, ms[int((NR + 1) / 2)], ms[1], ms[NR], NR }'
+}
+
+for image in "$@"; do
+   measure "${image}" "${image} without archive" '-Xshare:off'
+   measure "${image}" "${image}" '$([ -f /chaincode.jsa ] && echo -XX:SharedArchiveFile=/chaincode.jsa)'
+done
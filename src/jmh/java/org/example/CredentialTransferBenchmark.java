@@ -0,0 +1,127 @@
+package org.example;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks the transactions of {@link CredentialTransfer} against an in-memory world state.
+ *
+ * Run with {@code gradle jmh}; the GC profiler is enabled by the task to report allocation rates.
+ * Every invocation is a separate transaction with its own read cache, like on a peer, but without the
+ * gRPC round trips, so the numbers show the cost of the contract code and its ledger access pattern.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = {"-Xms4g", "-Xmx4g"})
+public class CredentialTransferBenchmark {
+
+    private static final int CREDENTIALS_PER_OWNER = 100;
+
+    @Param({"1000", "100000", "1000000"})
+    public int credentialCount;
+
+    private CredentialTransfer contract;
+
+    private InMemoryChaincodeStub stub;
+
+    private SimulatedContext ctx;
+
+    private int created;
+
+    private long transactions;
+
+    /**
+     * Fills the world state with {@code credentialCount} credentials spread over owners of equal size.
+     */
+    @Setup(Level.Trial)
+    public void populate() {
+        contract = new CredentialTransfer();
+        stub = new InMemoryChaincodeStub();
+        stub.setHistoryEnabled(false);
+        ctx = new SimulatedContext(stub);
+
+        for (int i = 0; i < credentialCount; i++) {
+            contract.CreateCredential(begin(), credentialID(i), owner(i), "credential-name-" + i, "credential-value-" + i);
+        }
+        created = credentialCount;
+        // every credential was created with its owner index entry, as after a completed migration
+        stub.putState(CredentialTransfer.OWNER_INDEX_COMPLETE_KEY, new byte[] {0x00});
+    }
+
+    /**
+     * Creates a credential with a new ID.
+     *
+     * @return the created credential
+     */
+    @Benchmark
+    public Credential createCredential() {
+        int i = created++;
+        return contract.CreateCredential(begin(), credentialID(i), owner(i), "credential-name-" + i, "credential-value-" + i);
+    }
+
+    /**
+     * Reads a random existing credential.
+     *
+     * @return the credential
+     */
+    @Benchmark
+    public Credential readCredential() {
+        int i = ThreadLocalRandom.current().nextInt(credentialCount);
+        return contract.ReadCredential(begin(), credentialID(i), owner(i));
+    }
+
+    /**
+     * Replaces the value of a random existing credential.
+     *
+     * @return the updated credential
+     */
+    @Benchmark
+    public Credential updateCredential() {
+        int i = ThreadLocalRandom.current().nextInt(credentialCount);
+        return contract.UpdateCredential(begin(), credentialID(i), owner(i), "credential-name-" + i, "updated-credential-value-" + i);
+    }
+
+    /**
+     * Lists the credentials of a random owner.
+     *
+     * @return the JSON listing
+     */
+    @Benchmark
+    public String getAllCredentials() {
+        int i = ThreadLocalRandom.current().nextInt(credentialCount);
+        return contract.GetAllCredentials(begin(), owner(i));
+    }
+
+    /**
+     * Starts a transaction with an ID of its own, so that every write keys its owner statistics delta
+     * apart, as it does on a peer.
+     */
+    private SimulatedContext begin() {
+        stub.setTxId("tx" + transactions++);
+        return ctx.begin(stub);
+    }
+
+    private static String credentialID(final int i) {
+        return "credential" + i;
+    }
+
+    private static String owner(final int i) {
+        return "owner" + (i / CREDENTIALS_PER_OWNER);
+    }
+}
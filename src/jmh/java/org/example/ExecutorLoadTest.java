@@ -0,0 +1,145 @@
+package org.example;
+
+import org.hyperledger.fabric.shim.ChaincodeStub;
+
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Proxy;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Load test of the transaction executor the chaincode server is configured with.
+ *
+ * Run with {@code gradle loadTest}, setting the {@code TP_*} variables described in
+ * {@link ChaincodeServerSettings} to try other sizes. For each concurrency level, that many clients
+ * submit {@code ReadCredential} transactions to the executor in a closed loop, each waiting for its
+ * transaction before sending the next. Every state read of a transaction waits for the simulated
+ * round trip to the peer, {@code -PpeerLatencyMicros} (default 500), which is what keeps the executor
+ * threads busy on a real peer. Throughput should grow with concurrency until every thread is busy; past
+ * that point, queued transactions only add latency, and once the queue is full transactions are rejected
+ * and the client retries after the same delay as a round trip.
+ */
+public final class ExecutorLoadTest {
+
+    private static final int CREDENTIAL_COUNT = 10_000;
+
+    private static final int[] CONCURRENCY = {1, 2, 4, 8, 16, 32, 64, 128};
+
+    private final CredentialTransfer contract = new CredentialTransfer();
+
+    private final ChaincodeStub peer;
+
+    private final ThreadLocal<SimulatedContext> contexts;
+
+    private final long peerLatencyNanos;
+
+    private ExecutorLoadTest(final long peerLatencyNanos) {
+        this.peerLatencyNanos = peerLatencyNanos;
+
+        InMemoryChaincodeStub store = new InMemoryChaincodeStub();
+        store.setHistoryEnabled(false);
+        SimulatedContext ctx = new SimulatedContext(store);
+        for (int i = 0; i < CREDENTIAL_COUNT; i++) {
+            store.setTxId("seed" + i);
+            contract.CreateCredential(ctx.begin(store), "credential" + i, "owner" + i / 100, "credential-name-" + i, "credential-value-" + i);
+        }
+
+        peer = withLatency(store, peerLatencyNanos);
+        contexts = ThreadLocal.withInitial(() -> new SimulatedContext(peer));
+    }
+
+    /**
+     * Runs the load test.
+     *
+     * @param args the seconds to measure each concurrency level for, and the simulated peer latency in
+     *             microseconds
+     * @throws InterruptedException if interrupted
+     */
+    public static void main(final String[] args) throws InterruptedException {
+        long seconds = args.length > 0 ? Long.parseLong(args[0]) : 5;
+        long latencyMicros = args.length > 1 ? Long.parseLong(args[1]) : 500;
+
+        Map<String, String> env = new HashMap<String, String>(System.getenv());
+        env.putIfAbsent(ChaincodeServerSettings.CHAINCODE_ID_VARIABLE, "load-test");
+        ChaincodeServerSettings settings = new ChaincodeServerSettings(env);
+        System.out.println(settings + " peerLatency=" + latencyMicros + "us");
+
+        ExecutorLoadTest test = new ExecutorLoadTest(TimeUnit.MICROSECONDS.toNanos(latencyMicros));
+        AtomicInteger threads = new AtomicInteger();
+        ThreadPoolExecutor executor = settings.newExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "transaction-" + threads.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+
+        try {
+            test.run(executor, CONCURRENCY[0], TimeUnit.SECONDS.toNanos(1));
+            for (int clients : CONCURRENCY) {
+                System.out.println(test.run(executor, clients, TimeUnit.SECONDS.toNanos(seconds)));
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    private String run(final ThreadPoolExecutor executor, final int clients, final long durationNanos) throws InterruptedException {
+        LatencyHistogram latency = new LatencyHistogram();
+        LongAdder rejected = new LongAdder();
+        long deadline = System.nanoTime() + durationNanos;
+
+        Thread[] threads = new Thread[clients];
+        for (int c = 0; c < clients; c++) {
+            threads[c] = new Thread(() -> {
+                while (System.nanoTime() < deadline) {
+                    long start = System.nanoTime();
+                    try {
+                        Future<Credential> transaction = executor.submit(this::readCredential);
+                        transaction.get();
+                        latency.record(System.nanoTime() - start);
+                    } catch (RejectedExecutionException e) {
+                        rejected.increment();
+                        LockSupport.parkNanos(peerLatencyNanos);
+                    } catch (InterruptedException | ExecutionException e) {
+                        throw new IllegalStateException(e);
+                    }
+                }
+            }, "client-" + c);
+            threads[c].start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+
+        long completed = latency.getCount();
+        return String.format("clients=%d tx/s=%d rejected=%d latency[%s]",
+                clients, completed * TimeUnit.SECONDS.toNanos(1) / durationNanos, rejected.sum(), latency);
+    }
+
+    private Credential readCredential() {
+        int i = ThreadLocalRandom.current().nextInt(CREDENTIAL_COUNT);
+        return contract.ReadCredential(contexts.get().begin(peer), "credential" + i, "owner" + i / 100);
+    }
+
+    private static ChaincodeStub withLatency(final ChaincodeStub stub, final long latencyNanos) {
+        return (ChaincodeStub) Proxy.newProxyInstance(ChaincodeStub.class.getClassLoader(), new Class<?>[] {ChaincodeStub.class},
+            (proxy, method, methodArgs) -> {
+                if (method.getName().startsWith("getState") || method.getName().startsWith("getPrivateData")) {
+                    LockSupport.parkNanos(latencyNanos);
+                }
+                try {
+                    return method.invoke(stub, methodArgs);
+                } catch (InvocationTargetException e) {
+                    throw e.getCause();
+                }
+            });
+    }
+}
@@ -0,0 +1,299 @@
+package org.example;
+
+import org.example.VersionedWorldState.Endorsement;
+import org.example.VersionedWorldState.ValidationCode;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Simulates concurrent submits of {@link CredentialTransfer} transactions against a {@link VersionedWorldState}
+ * and reports how many survive validation.
+ *
+ * Run with {@code gradle conflictSimulation}, passing settings as {@code name=value} pairs, e.g.
+ * {@code gradle conflictSimulation -Psimulation.args="owners=10 skew=3 lag=2"}:
+ *
+ * <ul>
+ * <li>{@code transactions}: number of transactions to submit (default 20000)</li>
+ * <li>{@code blockSize}: transactions per block (default 100)</li>
+ * <li>{@code endorsers}: threads endorsing the transactions of a block in parallel (default 8)</li>
+ * <li>{@code lag}: blocks endorsed while earlier blocks are still being ordered, so their endorsements
+ *     do not see the earlier blocks' writes (default 1)</li>
+ * <li>{@code credentials}: credentials created before the run (default 1000)</li>
+ * <li>{@code owners}: number of owners (default 100)</li>
+ * <li>{@code skew}: how strongly credentials and owners are picked from the front of their lists; 1 is
+ *     uniform, higher values concentrate the load on few hot credentials and owners (default 1)</li>
+ * <li>{@code create}, {@code update}, {@code delete}: relative weights of the operations
+ *     (default 20, 70 and 10)</li>
+ * </ul>
+ *
+ * Updates and deletes target credentials that exist in the committed state when their block is
+ * planned, as a client would see them, so changes by blocks still in flight show up as conflicts.
+ * The report lists goodput, the share of ordered transactions invalidated by each kind of conflict,
+ * the outcome per operation and the keys that caused most conflicts.
+ */
+public final class MvccConflictSimulation {
+
+    private static final int HOT_KEYS = 10;
+
+    private final Map<String, String> settings;
+
+    private final VersionedWorldState state = new VersionedWorldState();
+
+    private final CredentialTransfer contract = new CredentialTransfer();
+
+    private final ThreadLocal<SimulatedContext> contexts = ThreadLocal.withInitial(() -> new SimulatedContext(state.getCommitted()));
+
+    private final List<String> credentials = new ArrayList<String>();
+
+    private final Map<String, String> owners = new HashMap<String, String>();
+
+    private final Map<Operation, Map<ValidationCode, Integer>> outcomes = new EnumMap<Operation, Map<ValidationCode, Integer>>(Operation.class);
+
+    private final Map<String, Integer> conflictKeys = new HashMap<String, Integer>();
+
+    private int nextCredential;
+
+    private int nextTx;
+
+    private MvccConflictSimulation(final Map<String, String> settings) {
+        this.settings = settings;
+    }
+
+    /**
+     * Runs the simulation.
+     *
+     * @param args settings as {@code name=value} pairs
+     * @throws Exception if a transaction cannot be endorsed
+     */
+    public static void main(final String[] args) throws Exception {
+        Map<String, String> settings = new TreeMap<String, String>();
+        for (String arg : args) {
+            int equals = arg.indexOf('=');
+            if (equals < 0) {
+                throw new IllegalArgumentException("Setting is not name=value: " + arg);
+            }
+            settings.put(arg.substring(0, equals), arg.substring(equals + 1));
+        }
+        new MvccConflictSimulation(settings).run();
+    }
+
+    private void run() throws InterruptedException, ExecutionException {
+        int transactions = setting("transactions", 20000);
+        int blockSize = setting("blockSize", 100);
+        int lag = setting("lag", 1);
+        int endorserCount = setting("endorsers", 8);
+
+        ExecutorService endorsers = Executors.newFixedThreadPool(endorserCount, runnable -> {
+            Thread thread = new Thread(runnable, "endorser");
+            thread.setDaemon(true);
+            return thread;
+        });
+
+        try {
+            seed(blockSize);
+
+            long start = System.nanoTime();
+            Deque<List<Submit>> ordering = new ArrayDeque<List<Submit>>();
+            int submitted = 0;
+            while (submitted < transactions || !ordering.isEmpty()) {
+                if (submitted < transactions) {
+                    List<Submit> block = plan(Math.min(blockSize, transactions - submitted));
+                    endorse(endorsers, block);
+                    ordering.add(block);
+                    submitted += block.size();
+                }
+                while (ordering.size() > lag || submitted >= transactions && !ordering.isEmpty()) {
+                    commit(ordering.poll());
+                }
+            }
+            report(transactions, System.nanoTime() - start);
+        } finally {
+            endorsers.shutdownNow();
+        }
+    }
+
+    private void seed(final int blockSize) {
+        int count = setting("credentials", 1000);
+        int ownerCount = setting("owners", 100);
+        for (int i = 0; i < count; i += blockSize) {
+            List<Endorsement> block = new ArrayList<Endorsement>();
+            for (int j = i; j < Math.min(i + blockSize, count); j++) {
+                String credentialID = "credential" + nextCredential++;
+                String owner = "owner" + j % ownerCount;
+                block.add(state.endorse("seed" + j, stub -> contract.CreateCredential(contexts.get().begin(stub), credentialID, owner, "name", "value")));
+                credentials.add(credentialID);
+                owners.put(credentialID, owner);
+            }
+            state.commit(block);
+        }
+    }
+
+    private List<Submit> plan(final int size) {
+        int create = setting("create", 20);
+        int update = setting("update", 70);
+        int delete = setting("delete", 10);
+
+        List<Submit> block = new ArrayList<Submit>(size);
+        for (int i = 0; i < size; i++) {
+            int pick = ThreadLocalRandom.current().nextInt(create + update + delete);
+            Operation operation = pick < create || credentials.isEmpty() ? Operation.CREATE
+                    : pick < create + update ? Operation.UPDATE : Operation.DELETE;
+
+            String credentialID;
+            String owner;
+            if (operation == Operation.CREATE) {
+                credentialID = "credential" + nextCredential++;
+                owner = "owner" + hot(setting("owners", 100));
+            } else {
+                credentialID = credentials.get(hot(credentials.size()));
+                owner = owners.get(credentialID);
+            }
+            block.add(new Submit("tx" + nextTx++, operation, credentialID, owner));
+        }
+        return block;
+    }
+
+    private void endorse(final ExecutorService endorsers, final List<Submit> block) throws InterruptedException, ExecutionException {
+        List<Callable<Endorsement>> endorsements = new ArrayList<Callable<Endorsement>>();
+        for (Submit submit : block) {
+            endorsements.add(() -> state.endorse(submit.txID, stub -> submit.run(contexts.get().begin(stub))));
+        }
+
+        List<Future<Endorsement>> results = endorsers.invokeAll(endorsements);
+        for (int i = 0; i < block.size(); i++) {
+            block.get(i).endorsement = results.get(i).get();
+        }
+    }
+
+    private void commit(final List<Submit> block) {
+        List<Endorsement> endorsements = new ArrayList<Endorsement>(block.size());
+        for (Submit submit : block) {
+            endorsements.add(submit.endorsement);
+        }
+        state.commit(endorsements);
+
+        for (Submit submit : block) {
+            ValidationCode code = submit.endorsement.getCode();
+            outcomes.computeIfAbsent(submit.operation, operation -> new EnumMap<ValidationCode, Integer>(ValidationCode.class))
+                    .merge(code, 1, Integer::sum);
+            if (submit.endorsement.getConflictKey() != null) {
+                conflictKeys.merge(readable(submit.endorsement.getConflictKey()), 1, Integer::sum);
+            }
+            if (code == ValidationCode.VALID && submit.operation == Operation.CREATE) {
+                credentials.add(submit.credentialID);
+                owners.put(submit.credentialID, submit.owner);
+            } else if (code == ValidationCode.VALID && submit.operation == Operation.DELETE) {
+                credentials.remove(submit.credentialID);
+                owners.remove(submit.credentialID);
+            }
+        }
+    }
+
+    private void report(final int transactions, final long elapsedNanos) {
+        int valid = total(ValidationCode.VALID);
+        int mvcc = total(ValidationCode.MVCC_READ_CONFLICT);
+        int phantom = total(ValidationCode.PHANTOM_READ_CONFLICT);
+        int failed = total(ValidationCode.ENDORSEMENT_FAILURE);
+        int ordered = transactions - failed;
+
+        System.out.println("settings " + settings);
+        System.out.printf("transactions=%d blocks=%d endorsementFailures=%d ordered=%d valid=%d%n",
+                transactions, state.getHeight(), failed, ordered, valid);
+        System.out.printf("conflictRate=%.1f%% mvccReadConflicts=%d (%.1f%%) phantomReadConflicts=%d (%.1f%%)%n",
+                percent(mvcc + phantom, ordered), mvcc, percent(mvcc, ordered), phantom, percent(phantom, ordered));
+        System.out.printf("goodput=%d tx/s over %d ms%n",
+                valid * TimeUnit.SECONDS.toNanos(1) / Math.max(1, elapsedNanos), TimeUnit.NANOSECONDS.toMillis(elapsedNanos));
+        for (Map.Entry<Operation, Map<ValidationCode, Integer>> outcome : outcomes.entrySet()) {
+            System.out.println(outcome.getKey() + " " + outcome.getValue());
+        }
+
+        System.out.println("hot keys:");
+        conflictKeys.entrySet().stream()
+                .sorted((a, b) -> b.getValue().compareTo(a.getValue()))
+                .limit(HOT_KEYS)
+                .forEach(key -> System.out.printf("%8d %s%n", key.getValue(), key.getKey()));
+    }
+
+    private int total(final ValidationCode code) {
+        int total = 0;
+        for (Map<ValidationCode, Integer> outcome : outcomes.values()) {
+            total += outcome.getOrDefault(code, 0);
+        }
+        return total;
+    }
+
+    private int hot(final int size) {
+        double skew = Double.parseDouble(settings.getOrDefault("skew", "1"));
+        return Math.min(size - 1, (int) (size * Math.pow(ThreadLocalRandom.current().nextDouble(), skew)));
+    }
+
+    private int setting(final String name, final int defaultValue) {
+        String value = settings.get(name);
+        return value == null ? defaultValue : Integer.parseInt(value);
+    }
+
+    private static double percent(final int part, final int whole) {
+        return whole == 0 ? 0 : 100.0 * part / whole;
+    }
+
+    private static String readable(final String key) {
+        return key.replace('\u0000', ' ').trim();
+    }
+
+    private enum Operation {
+        CREATE,
+        UPDATE,
+        DELETE
+    }
+
+    /**
+     * A planned transaction and its endorsement.
+     */
+    private final class Submit {
+
+        private final String txID;
+
+        private final Operation operation;
+
+        private final String credentialID;
+
+        private final String owner;
+
+        private Endorsement endorsement;
+
+        Submit(final String txID, final Operation operation, final String credentialID, final String owner) {
+            this.txID = txID;
+            this.operation = operation;
+            this.credentialID = credentialID;
+            this.owner = owner;
+        }
+
+        void run(final SimulatedContext ctx) {
+            switch (operation) {
+                case CREATE:
+                    contract.CreateCredential(ctx, credentialID, owner, "name", "value");
+                    break;
+                case UPDATE:
+                    contract.UpdateCredential(ctx, credentialID, owner, "name", "value " + txID);
+                    break;
+                default:
+                    contract.DeleteCredential(ctx, credentialID, owner);
+                    break;
+            }
+        }
+    }
+}
@@ -0,0 +1,92 @@
+package org.example;
+
+import org.hyperledger.fabric.contract.ContractRouter;
+import org.hyperledger.fabric.shim.Chaincode;
+import org.hyperledger.fabric.shim.ChaincodeServer;
+import org.hyperledger.fabric.shim.ChaincodeServerProperties;
+import org.hyperledger.fabric.shim.NettyChaincodeServer;
+
+import java.net.InetSocketAddress;
+
+/**
+ * Starts the chaincode the way {@link CredentialChaincodeServer} does and dispatches transactions through
+ * the contract router against an in-memory world state, without a peer.
+ *
+ * The Docker build runs it with the shaded jar to record the classes loaded by a started chaincode for
+ * its class data sharing archive, and {@code docker/measure-startup.sh} runs it with
+ * {@code --first-transaction}, which stops after the first transaction, to time the start of the
+ * chaincode up to its first completed transaction.
+ */
+public final class StartupTraining {
+
+    private StartupTraining() {
+    }
+
+    /**
+     * Runs the transactions.
+     *
+     * @param args {@code --first-transaction} to stop after the first transaction
+     * @throws Exception if the chaincode cannot be started or a transaction fails
+     */
+    public static void main(final String[] args) throws Exception {
+        ContractRouter router = new ContractRouter(new String[] {"-i", "startup-training"});
+        // the router finds the contracts and builds their metadata when it is started with a server;
+        // the server the peer would connect to is started below, where it does not block
+        router.startRouterWithChaincodeServer(new ChaincodeServer() {
+
+            @Override
+            public void start() {
+                // started below
+            }
+
+            @Override
+            public void stop() {
+                // stopped below
+            }
+        });
+
+        ChaincodeServerProperties properties = new ChaincodeServerProperties();
+        properties.setServerAddress(new InetSocketAddress("127.0.0.1", 0));
+        ChaincodeServer server = new NettyChaincodeServer(router, properties);
+        Thread serverThread = new Thread(() -> {
+            try {
+                server.start();
+            } catch (Exception e) {
+                throw new IllegalStateException(e);
+            }
+        }, "chaincode-server");
+        serverThread.setDaemon(true);
+        serverThread.start();
+
+        InMemoryChaincodeStub stub = new InMemoryChaincodeStub();
+        call(router, stub, "CreateCredential", "training1", "owner0", "name", "value");
+
+        if (args.length == 0 || !"--first-transaction".equals(args[0])) {
+            call(router, stub, "InitLedger");
+            call(router, stub, "ReadCredential", "credential1", "owner1");
+            call(router, stub, "UpdateCredential", "credential1", "owner1", "name", "updated value");
+            call(router, stub, "CreateExpiringCredential", "training2", "owner1", "name", "value", "4102444800000");
+            call(router, stub, "ReadCredentials", "[\"credential1\",\"training2\",\"missing\"]");
+            call(router, stub, "CreateCredentials", "[{\"credentialID\":\"training3\",\"credentialOwner\":\"owner2\","
+                    + "\"credentialName\":\"name\",\"credentialValue\":\"value\"}]");
+            call(router, stub, "CredentialExists", "training3", "owner2");
+            call(router, stub, "GetAllCredentials", "owner1");
+            call(router, stub, "GetCredentialSummaries", "owner1");
+            call(router, stub, "GetAllCredentialsWithPagination", "owner1", "10", "");
+            call(router, stub, "GetCredentialHistory", "credential1", "0", "10");
+            call(router, stub, "GetOwnerStats", "owner1");
+            call(router, stub, "DeleteCredential", "training3", "owner2");
+            call(router, stub, "org.hyperledger.fabric:GetMetadata");
+        }
+        server.stop();
+    }
+
+    private static void call(final ContractRouter router, final InMemoryChaincodeStub stub, final String... args) {
+        stub.setTxId(args[0]);
+        stub.setArgs(args);
+        Chaincode.Response response = router.invoke(stub);
+        if (response.getStatus() != Chaincode.Response.Status.SUCCESS) {
+            throw new IllegalStateException(String.format("%s failed: %s", args[0], response.getMessage()));
+        }
+    }
+}
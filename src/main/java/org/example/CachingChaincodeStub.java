@@ -0,0 +1,405 @@
+package org.example;
+
+import org.hyperledger.fabric.protos.peer.ChaincodeEventPackage.ChaincodeEvent;
+import org.hyperledger.fabric.protos.peer.ChaincodeShim.QueryResponseMetadata;
+import org.hyperledger.fabric.protos.peer.ProposalPackage.SignedProposal;
+import org.hyperledger.fabric.shim.Chaincode.Response;
+import org.hyperledger.fabric.shim.ChaincodeStub;
+import org.hyperledger.fabric.shim.ledger.CompositeKey;
+import org.hyperledger.fabric.shim.ledger.KeyModification;
+import org.hyperledger.fabric.shim.ledger.KeyValue;
+import org.hyperledger.fabric.shim.ledger.QueryResultsIterator;
+import org.hyperledger.fabric.shim.ledger.QueryResultsIteratorWithMetadata;
+
+import java.time.Instant;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Stub that caches the public world state seen by a single transaction.
+ *
+ * The first read of a key goes to the peer and later reads of the same key are served from memory.
+ * Writes and deletes are forwarded to the peer and recorded, so the transaction reads its own writes,
+ * which the peer itself does not do. Range and composite key queries, history and private data
+ * always go to the peer and do not see pending writes.
+ *
+ * Reads made while a range or composite key query is open are kept only until the query moves to its
+ * next entry. A transaction that walks a scan reads each key once per entry, so keeping those values
+ * would only hold a second copy of everything the scan returns.
+ *
+ * Calls that reach the peer are reported to the {@link TransactionTimer} of the transaction; for
+ * queries only the call that opens the iterator is timed.
+ *
+ * An instance must not outlive the transaction it was created for.
+ */
+final class CachingChaincodeStub implements ChaincodeStub {
+
+    /**
+     * Cached for keys that do not exist, so they are not read again. Reads return null for them.
+     */
+    private static final byte[] MISSING = new byte[0];
+
+    private final ChaincodeStub delegate;
+
+    private final Map<String, byte[]> state = new HashMap<String, byte[]>();
+
+    /**
+     * Values read since the open scans last moved to their next entry.
+     */
+    private final Map<String, byte[]> entryState = new HashMap<String, byte[]>();
+
+    private int openScans;
+
+    CachingChaincodeStub(final ChaincodeStub delegate) {
+        this.delegate = delegate;
+    }
+
+    /**
+     * Returns the stub this cache reads from and writes to.
+     *
+     * @return the underlying stub
+     */
+    ChaincodeStub getDelegate() {
+        return delegate;
+    }
+
+    @Override
+    public byte[] getState(final String key) {
+        byte[] value = state.get(key);
+        if (value == null) {
+            value = entryState.get(key);
+        }
+        if (value == null) {
+            long start = TransactionTimer.begin();
+            value = delegate.getState(key);
+            TransactionTimer.stubCall(start);
+            (openScans > 0 ? entryState : state).put(key, value == null ? MISSING : value);
+        }
+        return value == MISSING ? null : value;
+    }
+
+    @Override
+    public void putState(final String key, final byte[] value) {
+        long start = TransactionTimer.begin();
+        delegate.putState(key, value);
+        TransactionTimer.stubCall(start);
+        state.put(key, value == null ? MISSING : value);
+        entryState.remove(key);
+    }
+
+    @Override
+    public void delState(final String key) {
+        long start = TransactionTimer.begin();
+        delegate.delState(key);
+        TransactionTimer.stubCall(start);
+        state.put(key, MISSING);
+        entryState.remove(key);
+    }
+
+    @Override
+    public List<byte[]> getArgs() {
+        return delegate.getArgs();
+    }
+
+    @Override
+    public List<String> getStringArgs() {
+        return delegate.getStringArgs();
+    }
+
+    @Override
+    public String getFunction() {
+        return delegate.getFunction();
+    }
+
+    @Override
+    public List<String> getParameters() {
+        return delegate.getParameters();
+    }
+
+    @Override
+    public String getTxId() {
+        return delegate.getTxId();
+    }
+
+    @Override
+    public String getChannelId() {
+        return delegate.getChannelId();
+    }
+
+    @Override
+    public Response invokeChaincode(final String chaincodeName, final List<byte[]> args, final String channel) {
+        return delegate.invokeChaincode(chaincodeName, args, channel);
+    }
+
+    @Override
+    public byte[] getStateValidationParameter(final String key) {
+        return delegate.getStateValidationParameter(key);
+    }
+
+    @Override
+    public void setStateValidationParameter(final String key, final byte[] value) {
+        delegate.setStateValidationParameter(key, value);
+    }
+
+    @Override
+    public QueryResultsIterator<KeyValue> getStateByRange(final String startKey, final String endKey) {
+        long start = TransactionTimer.begin();
+        try {
+            return new Scan<KeyValue>(delegate.getStateByRange(startKey, endKey));
+        } finally {
+            TransactionTimer.stubCall(start);
+        }
+    }
+
+    @Override
+    public QueryResultsIteratorWithMetadata<KeyValue> getStateByRangeWithPagination(final String startKey, final String endKey, final int pageSize,
+                                                                                    final String bookmark) {
+        long start = TransactionTimer.begin();
+        try {
+            return new PagedScan<KeyValue>(delegate.getStateByRangeWithPagination(startKey, endKey, pageSize, bookmark));
+        } finally {
+            TransactionTimer.stubCall(start);
+        }
+    }
+
+    @Override
+    public QueryResultsIterator<KeyValue> getStateByPartialCompositeKey(final String compositeKey) {
+        long start = TransactionTimer.begin();
+        try {
+            return new Scan<KeyValue>(delegate.getStateByPartialCompositeKey(compositeKey));
+        } finally {
+            TransactionTimer.stubCall(start);
+        }
+    }
+
+    @Override
+    public QueryResultsIterator<KeyValue> getStateByPartialCompositeKey(final String objectType, final String... attributes) {
+        long start = TransactionTimer.begin();
+        try {
+            return new Scan<KeyValue>(delegate.getStateByPartialCompositeKey(objectType, attributes));
+        } finally {
+            TransactionTimer.stubCall(start);
+        }
+    }
+
+    @Override
+    public QueryResultsIterator<KeyValue> getStateByPartialCompositeKey(final CompositeKey compositeKey) {
+        long start = TransactionTimer.begin();
+        try {
+            return new Scan<KeyValue>(delegate.getStateByPartialCompositeKey(compositeKey));
+        } finally {
+            TransactionTimer.stubCall(start);
+        }
+    }
+
+    @Override
+    public QueryResultsIteratorWithMetadata<KeyValue> getStateByPartialCompositeKeyWithPagination(final CompositeKey compositeKey, final int pageSize,
+                                                                                                  final String bookmark) {
+        long start = TransactionTimer.begin();
+        try {
+            return new PagedScan<KeyValue>(delegate.getStateByPartialCompositeKeyWithPagination(compositeKey, pageSize, bookmark));
+        } finally {
+            TransactionTimer.stubCall(start);
+        }
+    }
+
+    @Override
+    public CompositeKey createCompositeKey(final String objectType, final String... attributes) {
+        return delegate.createCompositeKey(objectType, attributes);
+    }
+
+    @Override
+    public CompositeKey splitCompositeKey(final String compositeKey) {
+        return delegate.splitCompositeKey(compositeKey);
+    }
+
+    @Override
+    public QueryResultsIterator<KeyValue> getQueryResult(final String query) {
+        return delegate.getQueryResult(query);
+    }
+
+    @Override
+    public QueryResultsIteratorWithMetadata<KeyValue> getQueryResultWithPagination(final String query, final int pageSize, final String bookmark) {
+        return delegate.getQueryResultWithPagination(query, pageSize, bookmark);
+    }
+
+    @Override
+    public QueryResultsIterator<KeyModification> getHistoryForKey(final String key) {
+        long start = TransactionTimer.begin();
+        try {
+            return delegate.getHistoryForKey(key);
+        } finally {
+            TransactionTimer.stubCall(start);
+        }
+    }
+
+    @Override
+    public byte[] getPrivateData(final String collection, final String key) {
+        long start = TransactionTimer.begin();
+        try {
+            return delegate.getPrivateData(collection, key);
+        } finally {
+            TransactionTimer.stubCall(start);
+        }
+    }
+
+    @Override
+    public byte[] getPrivateDataHash(final String collection, final String key) {
+        return delegate.getPrivateDataHash(collection, key);
+    }
+
+    @Override
+    public byte[] getPrivateDataValidationParameter(final String collection, final String key) {
+        return delegate.getPrivateDataValidationParameter(collection, key);
+    }
+
+    @Override
+    public void putPrivateData(final String collection, final String key, final byte[] value) {
+        delegate.putPrivateData(collection, key, value);
+    }
+
+    @Override
+    public void setPrivateDataValidationParameter(final String collection, final String key, final byte[] value) {
+        delegate.setPrivateDataValidationParameter(collection, key, value);
+    }
+
+    @Override
+    public void delPrivateData(final String collection, final String key) {
+        delegate.delPrivateData(collection, key);
+    }
+
+    @Override
+    public QueryResultsIterator<KeyValue> getPrivateDataByRange(final String collection, final String startKey, final String endKey) {
+        return delegate.getPrivateDataByRange(collection, startKey, endKey);
+    }
+
+    @Override
+    public QueryResultsIterator<KeyValue> getPrivateDataByPartialCompositeKey(final String collection, final String compositeKey) {
+        return delegate.getPrivateDataByPartialCompositeKey(collection, compositeKey);
+    }
+
+    @Override
+    public QueryResultsIterator<KeyValue> getPrivateDataByPartialCompositeKey(final String collection, final CompositeKey compositeKey) {
+        return delegate.getPrivateDataByPartialCompositeKey(collection, compositeKey);
+    }
+
+    @Override
+    public QueryResultsIterator<KeyValue> getPrivateDataByPartialCompositeKey(final String collection, final String objectType, final String... attributes) {
+        return delegate.getPrivateDataByPartialCompositeKey(collection, objectType, attributes);
+    }
+
+    @Override
+    public QueryResultsIterator<KeyValue> getPrivateDataQueryResult(final String collection, final String query) {
+        return delegate.getPrivateDataQueryResult(collection, query);
+    }
+
+    @Override
+    public void setEvent(final String name, final byte[] payload) {
+        delegate.setEvent(name, payload);
+    }
+
+    @Override
+    public ChaincodeEvent getEvent() {
+        return delegate.getEvent();
+    }
+
+    @Override
+    public SignedProposal getSignedProposal() {
+        return delegate.getSignedProposal();
+    }
+
+    @Override
+    public Instant getTxTimestamp() {
+        return delegate.getTxTimestamp();
+    }
+
+    @Override
+    public byte[] getCreator() {
+        return delegate.getCreator();
+    }
+
+    @Override
+    public Map<String, byte[]> getTransient() {
+        return delegate.getTransient();
+    }
+
+    @Override
+    public byte[] getBinding() {
+        return delegate.getBinding();
+    }
+
+    @Override
+    public String getMspId() {
+        return delegate.getMspId();
+    }
+
+    /**
+     * Query results that drop the values read for the previous entry when the query moves on.
+     */
+    private class Scan<T> implements QueryResultsIterator<T> {
+
+        private final Iterable<T> results;
+
+        private final AutoCloseable resource;
+
+        private boolean open = true;
+
+        Scan(final Iterable<T> results, final AutoCloseable resource) {
+            this.results = results;
+            this.resource = resource;
+            openScans++;
+        }
+
+        Scan(final QueryResultsIterator<T> results) {
+            this(results, results);
+        }
+
+        @Override
+        public Iterator<T> iterator() {
+            final Iterator<T> entries = results.iterator();
+            return new Iterator<T>() {
+
+                @Override
+                public boolean hasNext() {
+                    return entries.hasNext();
+                }
+
+                @Override
+                public T next() {
+                    entryState.clear();
+                    return entries.next();
+                }
+            };
+        }
+
+        @Override
+        public void close() throws Exception {
+            if (open) {
+                open = false;
+                entryState.clear();
+                openScans--;
+            }
+            resource.close();
+        }
+    }
+
+    /**
+     * A {@link Scan} over one page of results that passes on the bookmark of the page.
+     */
+    private final class PagedScan<T> extends Scan<T> implements QueryResultsIteratorWithMetadata<T> {
+
+        private final QueryResultsIteratorWithMetadata<T> page;
+
+        PagedScan(final QueryResultsIteratorWithMetadata<T> page) {
+            super(page, page);
+            this.page = page;
+        }
+
+        @Override
+        public QueryResponseMetadata getMetadata() {
+            return page.getMetadata();
+        }
+    }
+}
@@ -0,0 +1,201 @@
+package org.example;
+
+import org.hyperledger.fabric.shim.ChaincodeServerProperties;
+
+import java.net.InetSocketAddress;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Settings of the chaincode server, read from environment variables.
+ *
+ * The gRPC settings map onto {@link ChaincodeServerProperties}. The transaction executor is the shim's
+ * thread pool, which reads its sizing from the chaincode configuration under the {@code TP_*} names used
+ * here; the shim otherwise only takes them from a {@code config.props} resource. The work queue of the
+ * pool is bounded, so transactions arriving while it is full are rejected rather than waiting behind a
+ * backlog that would outlast the peer's execute timeout. It defaults to {@value #QUEUE_SIZE_PER_THREAD}
+ * transactions per thread.
+ */
+final class ChaincodeServerSettings {
+
+    static final String SERVER_ADDRESS_VARIABLE = "CHAINCODE_SERVER_ADDRESS";
+    static final String CHAINCODE_ID_VARIABLE = "CHAINCODE_ID";
+    static final String PEER_CHAINCODE_ID_VARIABLE = "CORE_CHAINCODE_ID_NAME";
+
+    static final String MAX_INBOUND_MESSAGE_SIZE_VARIABLE = "CHAINCODE_MAX_INBOUND_MESSAGE_SIZE";
+    static final String MAX_CONNECTION_AGE_VARIABLE = "CHAINCODE_MAX_CONNECTION_AGE_SECONDS";
+    static final String KEEPALIVE_TIME_VARIABLE = "CHAINCODE_KEEPALIVE_TIME_MINUTES";
+    static final String KEEPALIVE_TIMEOUT_VARIABLE = "CHAINCODE_KEEPALIVE_TIMEOUT_SECONDS";
+    static final String PERMIT_KEEPALIVE_TIME_VARIABLE = "CHAINCODE_PERMIT_KEEPALIVE_TIME_MINUTES";
+    static final String PERMIT_KEEPALIVE_WITHOUT_CALLS_VARIABLE = "CHAINCODE_PERMIT_KEEPALIVE_WITHOUT_CALLS";
+    static final String TLS_KEY_FILE_VARIABLE = "CHAINCODE_TLS_KEY_FILE";
+    static final String TLS_CERT_FILE_VARIABLE = "CHAINCODE_TLS_CERT_FILE";
+    static final String TLS_CLIENT_CA_CERT_FILE_VARIABLE = "CHAINCODE_TLS_CLIENT_CA_CERT_FILE";
+
+    static final String CORE_POOL_SIZE_VARIABLE = "TP_CORE_POOL_SIZE";
+    static final String MAX_POOL_SIZE_VARIABLE = "TP_MAX_POOL_SIZE";
+    static final String QUEUE_SIZE_VARIABLE = "TP_QUEUE_SIZE";
+    static final String KEEP_ALIVE_VARIABLE = "TP_KEEP_ALIVE_MS";
+
+    static final String DEFAULT_SERVER_ADDRESS = "0.0.0.0:9999";
+
+    private static final int DEFAULT_POOL_SIZE = 5;
+    private static final int QUEUE_SIZE_PER_THREAD = 8;
+    private static final long DEFAULT_KEEP_ALIVE_MS = 5000;
+
+    private final Map<String, String> env;
+
+    private final String chaincodeId;
+
+    private final InetSocketAddress serverAddress;
+
+    private final int corePoolSize;
+
+    private final int maxPoolSize;
+
+    private final int queueSize;
+
+    private final long keepAliveMillis;
+
+    /**
+     * Reads the settings.
+     *
+     * @param env the environment variables
+     * @throws IllegalArgumentException if a variable is missing or malformed
+     */
+    ChaincodeServerSettings(final Map<String, String> env) {
+        this.env = env;
+
+        String id = value(CHAINCODE_ID_VARIABLE);
+        chaincodeId = id != null ? id : value(PEER_CHAINCODE_ID_VARIABLE);
+        if (chaincodeId == null) {
+            throw new IllegalArgumentException(CHAINCODE_ID_VARIABLE + " is required");
+        }
+
+        String address = value(SERVER_ADDRESS_VARIABLE);
+        serverAddress = parseAddress(address != null ? address : DEFAULT_SERVER_ADDRESS);
+
+        corePoolSize = intValue(CORE_POOL_SIZE_VARIABLE, DEFAULT_POOL_SIZE, 1);
+        maxPoolSize = intValue(MAX_POOL_SIZE_VARIABLE, Math.max(DEFAULT_POOL_SIZE, corePoolSize), corePoolSize);
+        queueSize = intValue(QUEUE_SIZE_VARIABLE, QUEUE_SIZE_PER_THREAD * maxPoolSize, 1);
+        keepAliveMillis = intValue(KEEP_ALIVE_VARIABLE, (int) DEFAULT_KEEP_ALIVE_MS, 0);
+    }
+
+    String getChaincodeId() {
+        return chaincodeId;
+    }
+
+    InetSocketAddress getServerAddress() {
+        return serverAddress;
+    }
+
+    int getCorePoolSize() {
+        return corePoolSize;
+    }
+
+    int getMaxPoolSize() {
+        return maxPoolSize;
+    }
+
+    int getQueueSize() {
+        return queueSize;
+    }
+
+    /**
+     * Builds the gRPC server settings, leaving the shim's defaults for variables that are not set.
+     *
+     * @return the server properties
+     */
+    ChaincodeServerProperties toServerProperties() {
+        ChaincodeServerProperties properties = new ChaincodeServerProperties();
+        properties.setServerAddress(serverAddress);
+        properties.setMaxInboundMessageSize(intValue(MAX_INBOUND_MESSAGE_SIZE_VARIABLE, properties.getMaxInboundMessageSize(), 1));
+        properties.setMaxConnectionAgeSeconds(intValue(MAX_CONNECTION_AGE_VARIABLE, properties.getMaxConnectionAgeSeconds(), 1));
+        properties.setKeepAliveTimeMinutes(intValue(KEEPALIVE_TIME_VARIABLE, properties.getKeepAliveTimeMinutes(), 1));
+        properties.setKeepAliveTimeoutSeconds(intValue(KEEPALIVE_TIMEOUT_VARIABLE, properties.getKeepAliveTimeoutSeconds(), 1));
+        properties.setPermitKeepAliveTimeMinutes(intValue(PERMIT_KEEPALIVE_TIME_VARIABLE, properties.getPermitKeepAliveTimeMinutes(), 1));
+
+        String withoutCalls = value(PERMIT_KEEPALIVE_WITHOUT_CALLS_VARIABLE);
+        if (withoutCalls != null) {
+            properties.setPermitKeepAliveWithoutCalls(Boolean.parseBoolean(withoutCalls));
+        }
+
+        String keyFile = value(TLS_KEY_FILE_VARIABLE);
+        String certFile = value(TLS_CERT_FILE_VARIABLE);
+        if (keyFile != null || certFile != null) {
+            if (keyFile == null || certFile == null) {
+                throw new IllegalArgumentException(TLS_KEY_FILE_VARIABLE + " and " + TLS_CERT_FILE_VARIABLE + " must be set together");
+            }
+            properties.setTlsEnabled(true);
+            properties.setKeyFile(keyFile);
+            properties.setKeyCertChainFile(certFile);
+            properties.setTrustCertCollectionFile(value(TLS_CLIENT_CA_CERT_FILE_VARIABLE));
+        }
+        return properties;
+    }
+
+    /**
+     * Sets the sizing of the shim's transaction executor in the chaincode configuration.
+     *
+     * @param config the configuration of the chaincode, before the server starts
+     */
+    void applyExecutorSettings(final Properties config) {
+        config.setProperty(CORE_POOL_SIZE_VARIABLE, Integer.toString(corePoolSize));
+        config.setProperty(MAX_POOL_SIZE_VARIABLE, Integer.toString(maxPoolSize));
+        config.setProperty(QUEUE_SIZE_VARIABLE, Integer.toString(queueSize));
+        config.setProperty(KEEP_ALIVE_VARIABLE, Long.toString(keepAliveMillis));
+    }
+
+    /**
+     * Builds a thread pool sized like the shim's transaction executor, for load tests without a peer.
+     *
+     * @param threadFactory the factory of the worker threads
+     * @return the executor, which rejects transactions once its queue is full
+     */
+    ThreadPoolExecutor newExecutor(final ThreadFactory threadFactory) {
+        return new ThreadPoolExecutor(corePoolSize, maxPoolSize, keepAliveMillis, TimeUnit.MILLISECONDS,
+                new LinkedBlockingQueue<Runnable>(queueSize), threadFactory, new ThreadPoolExecutor.AbortPolicy());
+    }
+
+    @Override
+    public String toString() {
+        return String.format("chaincode=%s address=%s executor[core=%d max=%d queue=%d keepAlive=%dms]",
+                chaincodeId, serverAddress, corePoolSize, maxPoolSize, queueSize, keepAliveMillis);
+    }
+
+    private String value(final String variable) {
+        String value = env.get(variable);
+        return value == null || value.trim().isEmpty() ? null : value.trim();
+    }
+
+    private int intValue(final String variable, final int defaultValue, final int minimum) {
+        String value = value(variable);
+        if (value == null) {
+            return defaultValue;
+        }
+
+        int parsed;
+        try {
+            parsed = Integer.parseInt(value);
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException(String.format("%s is not a number: %s", variable, value), e);
+        }
+        if (parsed < minimum) {
+            throw new IllegalArgumentException(String.format("%s must be at least %d: %d", variable, minimum, parsed));
+        }
+        return parsed;
+    }
+
+    private static InetSocketAddress parseAddress(final String address) {
+        int colon = address.lastIndexOf(':');
+        try {
+            return new InetSocketAddress(address.substring(0, colon), Integer.parseInt(address.substring(colon + 1)));
+        } catch (RuntimeException e) {
+            throw new IllegalArgumentException(String.format("%s is not a host:port address: %s", SERVER_ADDRESS_VARIABLE, address), e);
+        }
+    }
+}
@@ -1,5 +1,6 @@
 package org.example;
 
+import com.owlike.genson.annotation.JsonCreator;
 import com.owlike.genson.annotation.JsonProperty;
 import org.hyperledger.fabric.contract.annotation.DataType;
 import org.hyperledger.fabric.contract.annotation.Property;
@@ -21,6 +22,12 @@ public final class Credential {
     @Property()
     private final String credentialValue;
 
+    @Property()
+    private final long expiresAt;
+
+    @Property()
+    private final long version;
+
     public String getCredentialID() {
         return credentialID;
     }
@@ -37,12 +44,43 @@ public final class Credential {
         return credentialValue;
     }
 
+    /**
+     * Returns the time the credential expires at.
+     *
+     * @return milliseconds since the epoch, or 0 if the credential does not expire
+     */
+    public long getExpiresAt() {
+        return expiresAt;
+    }
+
+    /**
+     * Returns the number of times the stored credential has been written.
+     *
+     * Equality ignores the version, which identifies a stored state rather than the content.
+     *
+     * @return the version, or 0 for records written before versions were introduced
+     */
+    public long getVersion() {
+        return version;
+    }
+
+    public Credential(final String credentialID, final String credentialName, final String credentialOwner, final String credentialValue) {
+        this(credentialID, credentialName, credentialOwner, credentialValue, 0);
+    }
+
+    public Credential(final String credentialID, final String credentialName, final String credentialOwner, final String credentialValue, final long expiresAt) {
+        this(credentialID, credentialName, credentialOwner, credentialValue, expiresAt, 0);
+    }
+
+    @JsonCreator
     public Credential(@JsonProperty("credentialID") final String credentialID, @JsonProperty("credentialName") final String credentialName, @JsonProperty("credentialOwner") final String credentialOwner,
-                      @JsonProperty("credentialValue") final String credentialValue) {
+                      @JsonProperty("credentialValue") final String credentialValue, @JsonProperty("expiresAt") final long expiresAt, @JsonProperty("version") final long version) {
         this.credentialID = credentialID;
         this.credentialName = credentialName;
         this.credentialOwner = credentialOwner;
         this.credentialValue = credentialValue;
+        this.expiresAt = expiresAt;
+        this.version = version;
     }
 
     @Override
@@ -62,7 +100,7 @@ public final class Credential {
 
         Credential other = (Credential) obj;
 
-        return Objects.deepEquals(
+        return getExpiresAt() == other.getExpiresAt() && Objects.deepEquals(
                 new String[] {getCredentialID(), getCredentialName(), getCredentialOwner(), getCredentialValue()},
                 new String[] {other.getCredentialID(), other.getCredentialName(), other.getCredentialOwner(), getCredentialValue()});
     }
@@ -0,0 +1,40 @@
+package org.example;
+
+import org.hyperledger.fabric.contract.ContractRouter;
+import org.hyperledger.fabric.shim.ChaincodeServer;
+import org.hyperledger.fabric.shim.NettyChaincodeServer;
+
+import java.util.logging.Logger;
+
+/**
+ * Entry point that runs the contract as an external chaincode service: the chaincode listens for the
+ * peer on {@code CHAINCODE_SERVER_ADDRESS} instead of dialling it.
+ *
+ * The chaincode is identified by {@code CHAINCODE_ID}, the package ID the peer was given for the
+ * service. The gRPC server and the transaction executor are configured as described in
+ * {@link ChaincodeServerSettings}.
+ */
+public final class CredentialChaincodeServer {
+
+    private static final Logger LOGGER = Logger.getLogger(CredentialChaincodeServer.class.getName());
+
+    private CredentialChaincodeServer() {
+    }
+
+    /**
+     * Starts the server and blocks until it shuts down.
+     *
+     * @param args unused
+     * @throws Exception if the server cannot be started
+     */
+    public static void main(final String[] args) throws Exception {
+        ChaincodeServerSettings settings = new ChaincodeServerSettings(System.getenv());
+        LOGGER.info("Starting chaincode server: " + settings);
+
+        ContractRouter router = new ContractRouter(new String[] {"-i", settings.getChaincodeId()});
+        settings.applyExecutorSettings(router.getChaincodeConfig());
+
+        ChaincodeServer server = new NettyChaincodeServer(router, settings.toServerProperties());
+        router.startRouterWithChaincodeServer(server);
+    }
+}
@@ -0,0 +1,101 @@
+package org.example;
+
+import org.hyperledger.fabric.shim.ChaincodeStub;
+
+/**
+ * Collects the credential changes of a transaction and publishes them once it is done: as a single
+ * chaincode event for off-chain indexers, and as the {@link OwnerStats} deltas of the owners involved.
+ *
+ * A transaction can carry only one event, so every transaction that changes credentials records its
+ * changes here and publishes them together once it is done. The payload is a compact JSON array with one
+ * entry per change holding the operation, the credential ID, the owner and the version of the
+ * credential, and never the value:
+ *
+ * <pre>
+ * [{"op":"UPDATE","id":"credential1","owner":"owner1","version":2}]
+ * </pre>
+ *
+ * Versions grow with every write of a credential and carry on from the last version when a deleted or
+ * expired credential is created again under its ID, so an indexer can skip changes older than the state
+ * it holds. Deletes carry no version.
+ */
+final class CredentialChanges {
+
+    /**
+     * Name of the chaincode event that carries the changes.
+     */
+    static final String EVENT_NAME = "CredentialsChanged";
+
+    private final JsonBuffer payload = new JsonBuffer().raw("[");
+
+    private final OwnerStats stats = new OwnerStats();
+
+    private int count;
+
+    void created(final Credential credential) {
+        add("CREATE", credential.getCredentialID(), credential.getCredentialOwner(), credential.getVersion());
+        stats.add(credential.getCredentialOwner(), 1, OwnerStats.valueBytes(credential.getCredentialValue()));
+    }
+
+    /**
+     * Records an update. The previous state is only taken out of the statistics if it was counted in
+     * them, see {@link CredentialCodec#isCounted}.
+     *
+     * @param credential      the new state of the credential
+     * @param bytes           the size of the new value
+     * @param previousOwner   the owner before the update
+     * @param previousBytes   the size of the value before the update
+     * @param previousCounted whether the record before the update was counted
+     */
+    void updated(final Credential credential, final long bytes, final String previousOwner, final long previousBytes, final boolean previousCounted) {
+        add("UPDATE", credential.getCredentialID(), credential.getCredentialOwner(), credential.getVersion());
+        if (previousCounted) {
+            stats.add(previousOwner, -1, -previousBytes);
+        }
+        stats.add(credential.getCredentialOwner(), 1, bytes);
+    }
+
+    /**
+     * Records a delete.
+     *
+     * @param credentialID    the ID of the deleted credential
+     * @param credentialOwner the owner of the deleted credential
+     * @param bytes           the size of its value
+     * @param counted         whether the deleted record was counted in the statistics
+     */
+    void deleted(final String credentialID, final String credentialOwner, final long bytes, final boolean counted) {
+        add("DELETE", credentialID, credentialOwner, 0);
+        if (counted) {
+            stats.add(credentialOwner, -1, -bytes);
+        }
+    }
+
+    /**
+     * Writes the owner statistics deltas and sets the event of the transaction if any credential
+     * changed. Called once, after the last change.
+     *
+     * @param stub the stub of the transaction
+     */
+    void publish(final ChaincodeStub stub) {
+        if (count > 0) {
+            stats.write(stub);
+            stub.setEvent(EVENT_NAME, payload.raw("]").toByteArray());
+        }
+    }
+
+    private void add(final String operation, final String credentialID, final String credentialOwner, final long version) {
+        if (count++ > 0) {
+            payload.raw(",");
+        }
+        payload.raw("{\"op\":\"").raw(operation);
+        payload.raw("\",\"id\":").string(credentialID);
+        payload.raw(",\"owner\":").string(credentialOwner);
+        payload.raw(",\"version\":");
+        if (version > 0) {
+            payload.number(version);
+        } else {
+            payload.raw("null");
+        }
+        payload.raw("}");
+    }
+}
@@ -0,0 +1,320 @@
+package org.example;
+
+import com.owlike.genson.Genson;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Encodes credentials for the world state.
+ *
+ * Records start with a format byte followed by length-prefixed fields, each written as a one byte tag,
+ * a four byte big-endian length and the UTF-8 bytes of the value. Null values are left out and unknown
+ * tags are skipped, so fields can be added without changing the format byte.
+ *
+ * Records written before the binary format was introduced are JSON documents. Their first byte is
+ * always an opening brace or whitespace, which never collides with a format byte, so they are still
+ * decoded transparently.
+ */
+final class CredentialCodec {
+
+    /**
+     * Format byte of the tagged binary encoding.
+     */
+    static final byte FORMAT_V1 = 0x01;
+
+    private static final byte TAG_ID = 1;
+    private static final byte TAG_NAME = 2;
+    private static final byte TAG_OWNER = 3;
+    private static final byte TAG_VALUE = 4;
+    private static final byte TAG_EXPIRES_AT = 5;
+    private static final byte TAG_VERSION = 6;
+    private static final byte TAG_COUNTED = 7;
+
+    /**
+     * Value of the field that marks records included in the {@link OwnerStats}.
+     */
+    private static final byte[] COUNTED = new byte[0];
+
+    private static final int FIELD_HEADER_SIZE = Byte.BYTES + Integer.BYTES;
+
+    private static final Genson GENSON = new Genson();
+
+    private CredentialCodec() {
+    }
+
+    /**
+     * Encodes a credential in the binary format.
+     *
+     * Every record written in the binary format is marked as included in the owner statistics, so the
+     * transaction writing it must account for it in its {@link OwnerStats} delta.
+     *
+     * @param credential the credential
+     * @return the encoded record
+     */
+    static byte[] encode(final Credential credential) {
+        return encode(credential, true);
+    }
+
+    /**
+     * Encodes the ID, name and owner of a credential in the binary format, leaving the value out.
+     *
+     * @param credential the credential
+     * @return the encoded record
+     */
+    static byte[] encodeMetadata(final Credential credential) {
+        return encode(credential, false);
+    }
+
+    private static byte[] encode(final Credential credential, final boolean withValue) {
+        long start = TransactionTimer.begin();
+        byte[] id = utf8(credential.getCredentialID());
+        byte[] name = utf8(credential.getCredentialName());
+        byte[] owner = utf8(credential.getCredentialOwner());
+        byte[] value = withValue ? utf8(credential.getCredentialValue()) : null;
+        byte[] expiresAt = credential.getExpiresAt() > 0 ? utf8(Long.toString(credential.getExpiresAt())) : null;
+        byte[] version = credential.getVersion() > 0 ? utf8(Long.toString(credential.getVersion())) : null;
+
+        ByteBuffer buffer = ByteBuffer.allocate(Byte.BYTES + fieldSize(id) + fieldSize(name) + fieldSize(owner) + fieldSize(value) + fieldSize(expiresAt)
+                + fieldSize(version) + fieldSize(COUNTED));
+        buffer.put(FORMAT_V1);
+        putField(buffer, TAG_ID, id);
+        putField(buffer, TAG_NAME, name);
+        putField(buffer, TAG_OWNER, owner);
+        putField(buffer, TAG_VALUE, value);
+        putField(buffer, TAG_EXPIRES_AT, expiresAt);
+        putField(buffer, TAG_VERSION, version);
+        putField(buffer, TAG_COUNTED, COUNTED);
+        TransactionTimer.serialization(start);
+        return buffer.array();
+    }
+
+    /**
+     * Decodes a record in either the binary or the legacy JSON format.
+     *
+     * The value of the returned credential is null if the record has no value field.
+     *
+     * @param record the stored record
+     * @return the credential, or null if the record is empty
+     */
+    static Credential decode(final byte[] record) {
+        if (record == null || record.length == 0) {
+            return null;
+        }
+
+        long start = TransactionTimer.begin();
+        try {
+            if (!isBinary(record)) {
+                return GENSON.deserialize(new String(record, StandardCharsets.UTF_8), Credential.class);
+            }
+
+            String[] fields = decodeFields(record);
+            return new Credential(fields[TAG_ID], fields[TAG_NAME], fields[TAG_OWNER], fields[TAG_VALUE], parseLong(fields[TAG_EXPIRES_AT]),
+                    parseLong(fields[TAG_VERSION]));
+        } finally {
+            TransactionTimer.serialization(start);
+        }
+    }
+
+    /**
+     * Appends the JSON representation of a stored record to a response.
+     *
+     * Records are written field by field in the layout Genson produces for a {@link Credential}, so the
+     * response matches what {@code ReadCredential} returns: the expiry and the version are always
+     * present, and zero for credentials that do not expire and records written before versions were
+     * introduced. Legacy JSON records are decoded first, since they may lack those fields.
+     *
+     * @param record the stored record
+     * @param json   the response being built
+     */
+    static void appendJson(final byte[] record, final JsonBuffer json) {
+        long start = TransactionTimer.begin();
+        if (isBinary(record)) {
+            String[] fields = decodeFields(record);
+            appendVersion(fields, appendExpiresAt(fields, appendFields(fields, json).raw(",\"credentialValue\":").string(fields[TAG_VALUE]))).raw("}");
+        } else {
+            Credential credential = GENSON.deserialize(new String(record, StandardCharsets.UTF_8), Credential.class);
+            json.raw("{\"credentialID\":").string(credential.getCredentialID());
+            json.raw(",\"credentialName\":").string(credential.getCredentialName());
+            json.raw(",\"credentialOwner\":").string(credential.getCredentialOwner());
+            json.raw(",\"credentialValue\":").string(credential.getCredentialValue());
+            json.raw(",\"expiresAt\":").number(credential.getExpiresAt());
+            json.raw(",\"version\":").number(credential.getVersion()).raw("}");
+        }
+        TransactionTimer.serialization(start);
+    }
+
+    /**
+     * Appends the JSON representation of a binary record whose value is stored apart from it.
+     *
+     * @param record the stored record
+     * @param value  the value of the credential
+     * @param json   the response being built
+     */
+    static void appendJson(final byte[] record, final String value, final JsonBuffer json) {
+        long start = TransactionTimer.begin();
+        String[] fields = decodeFields(record);
+        appendVersion(fields, appendExpiresAt(fields, appendFields(fields, json).raw(",\"credentialValue\":").string(value))).raw("}");
+        TransactionTimer.serialization(start);
+    }
+
+    /**
+     * Appends the ID, name and owner of a stored record to a response, with the expiry of expiring
+     * credentials, leaving out the value.
+     *
+     * @param record the stored record
+     * @param json   the response being built
+     */
+    static void appendSummaryJson(final byte[] record, final JsonBuffer json) {
+        long start = TransactionTimer.begin();
+        if (isBinary(record)) {
+            String[] fields = decodeFields(record);
+            appendFields(fields, json);
+            if (fields[TAG_EXPIRES_AT] != null) {
+                appendExpiresAt(fields, json);
+            }
+            json.raw("}");
+        } else {
+            Credential credential = GENSON.deserialize(new String(record, StandardCharsets.UTF_8), Credential.class);
+            json.raw("{\"credentialID\":").string(credential.getCredentialID());
+            json.raw(",\"credentialName\":").string(credential.getCredentialName());
+            json.raw(",\"credentialOwner\":").string(credential.getCredentialOwner()).raw("}");
+        }
+        TransactionTimer.serialization(start);
+    }
+
+    /**
+     * Tells whether a record carries the value of its credential.
+     *
+     * Legacy JSON records always do; binary records written since values are stored apart do not.
+     *
+     * @param record the stored record
+     * @return true if the value is part of the record
+     */
+    static boolean hasValue(final byte[] record) {
+        return !isBinary(record) || findField(record, TAG_VALUE) != null;
+    }
+
+    /**
+     * Returns the expiry of a stored record without decoding the other fields.
+     *
+     * Legacy JSON records predate expiry and never expire.
+     *
+     * @param record the stored record
+     * @return milliseconds since the epoch, or 0 if the credential does not expire
+     */
+    static long getExpiresAt(final byte[] record) {
+        if (record == null || !isBinary(record)) {
+            return 0;
+        }
+
+        ByteBuffer field = findField(record, TAG_EXPIRES_AT);
+        return field == null ? 0 : parseLong(new String(record, field.position(), field.remaining(), StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Tells whether a record is included in the owner statistics.
+     *
+     * Records written before the statistics were introduced are not, until {@code MigrateCredentials}
+     * counts them.
+     *
+     * @param record the stored record
+     * @return true if the record is counted
+     */
+    static boolean isCounted(final byte[] record) {
+        return isBinary(record) && findField(record, TAG_COUNTED) != null;
+    }
+
+    /**
+     * Tells whether a record uses the binary format rather than legacy JSON.
+     *
+     * @param record the stored record
+     * @return true for binary records
+     */
+    static boolean isBinary(final byte[] record) {
+        return record.length > 0 && record[0] == FORMAT_V1;
+    }
+
+    /**
+     * Scans the field headers of a binary record for a tag.
+     *
+     * @return a buffer positioned at the value of the field and limited to its end, or null if the field is absent
+     */
+    private static ByteBuffer findField(final byte[] record, final byte wanted) {
+        ByteBuffer buffer = ByteBuffer.wrap(record, 1, record.length - 1);
+        while (buffer.remaining() >= FIELD_HEADER_SIZE) {
+            byte tag = buffer.get();
+            int length = buffer.getInt();
+            if (length < 0 || length > buffer.remaining()) {
+                break;
+            }
+            if (tag == wanted) {
+                buffer.limit(buffer.position() + length);
+                return buffer;
+            }
+            buffer.position(buffer.position() + length);
+        }
+        return null;
+    }
+
+    private static String[] decodeFields(final byte[] record) {
+        String[] fields = new String[TAG_COUNTED + 1];
+        ByteBuffer buffer = ByteBuffer.wrap(record, 1, record.length - 1);
+
+        while (buffer.hasRemaining()) {
+            if (buffer.remaining() < FIELD_HEADER_SIZE) {
+                throw new IllegalArgumentException("Truncated credential record");
+            }
+            byte tag = buffer.get();
+            int length = buffer.getInt();
+            if (length < 0 || length > buffer.remaining()) {
+                throw new IllegalArgumentException("Truncated credential record");
+            }
+            if (tag > 0 && tag < fields.length) {
+                fields[tag] = new String(record, buffer.position(), length, StandardCharsets.UTF_8);
+            }
+            buffer.position(buffer.position() + length);
+        }
+        return fields;
+    }
+
+    private static JsonBuffer appendFields(final String[] fields, final JsonBuffer json) {
+        json.raw("{\"credentialID\":").string(fields[TAG_ID]);
+        json.raw(",\"credentialName\":").string(fields[TAG_NAME]);
+        return json.raw(",\"credentialOwner\":").string(fields[TAG_OWNER]);
+    }
+
+    private static JsonBuffer appendExpiresAt(final String[] fields, final JsonBuffer json) {
+        return json.raw(",\"expiresAt\":").number(parseLong(fields[TAG_EXPIRES_AT]));
+    }
+
+    private static JsonBuffer appendVersion(final String[] fields, final JsonBuffer json) {
+        return json.raw(",\"version\":").number(parseLong(fields[TAG_VERSION]));
+    }
+
+    private static long parseLong(final String field) {
+        if (field == null) {
+            return 0;
+        }
+        try {
+            return Long.parseLong(field);
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Malformed credential field " + field, e);
+        }
+    }
+
+    private static byte[] utf8(final String value) {
+        return value == null ? null : value.getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static int fieldSize(final byte[] value) {
+        return value == null ? 0 : FIELD_HEADER_SIZE + value.length;
+    }
+
+    private static void putField(final ByteBuffer buffer, final byte tag, final byte[] value) {
+        if (value == null) {
+            return;
+        }
+        buffer.put(tag).putInt(value.length).put(value);
+    }
+}
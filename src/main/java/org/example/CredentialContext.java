@@ -0,0 +1,22 @@
+package org.example;
+
+import org.hyperledger.fabric.contract.Context;
+import org.hyperledger.fabric.shim.ChaincodeStub;
+
+/**
+ * Transaction context of the credential contract.
+ *
+ * The stub exposed by this context caches world state reads for the duration of the transaction,
+ * so reading the same key several times costs a single round trip to the peer.
+ */
+public final class CredentialContext extends Context {
+
+    /**
+     * Creates the context of a transaction.
+     *
+     * @param stub the stub of the transaction, as provided by the peer
+     */
+    public CredentialContext(final ChaincodeStub stub) {
+        super(new CachingChaincodeStub(stub));
+    }
+}
@@ -0,0 +1,69 @@
+package org.example;
+
+import org.hyperledger.fabric.metrics.MetricsProvider;
+import org.hyperledger.fabric.metrics.TaskMetricsCollector;
+
+import java.util.Properties;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Logger;
+
+/**
+ * Metrics provider of the chaincode shim that periodically logs the transaction statistics of the contract
+ * together with the state of the shim's transaction thread pool.
+ *
+ * Enable it with {@code CHAINCODE_METRICS_ENABLED=true} and
+ * {@code CHAINCODE_METRICS_PROVIDER=org.example.CredentialMetricsProvider}. The interval defaults to
+ * 60 seconds and can be changed with {@code CHAINCODE_METRICS_SUMMARY_INTERVAL} (seconds).
+ *
+ * The statistics are only logged, like those of the shim's default provider: the shim hands a provider
+ * the thread pool's {@link TaskMetricsCollector} but offers no exporter. Scrape the log, or replace this
+ * provider with one that publishes {@link TransactionMetrics} to a metrics backend.
+ */
+public final class CredentialMetricsProvider implements MetricsProvider {
+
+    static final String INTERVAL_VARIABLE = "CHAINCODE_METRICS_SUMMARY_INTERVAL";
+
+    private static final long DEFAULT_INTERVAL_SECONDS = 60;
+
+    private static final Logger LOGGER = Logger.getLogger(CredentialMetricsProvider.class.getName());
+
+    private final ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "credential-metrics");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private volatile TaskMetricsCollector taskService;
+
+    @Override
+    public void initialize(final Properties props) {
+        TransactionMetrics.setEnabled(true);
+
+        String interval = props.getProperty(INTERVAL_VARIABLE, System.getenv(INTERVAL_VARIABLE));
+        long seconds = interval == null ? DEFAULT_INTERVAL_SECONDS : Long.parseLong(interval.trim());
+        scheduler.scheduleAtFixedRate(this::logSummary, seconds, seconds, TimeUnit.SECONDS);
+    }
+
+    @Override
+    public void setTaskMetricsCollector(final TaskMetricsCollector collector) {
+        this.taskService = collector;
+    }
+
+    /**
+     * Logs the current statistics.
+     */
+    void logSummary() {
+        TaskMetricsCollector tasks = taskService;
+        if (tasks != null) {
+            LOGGER.info(String.format("executor active=%d pool=%d/%d queued=%d",
+                    tasks.getActiveCount(), tasks.getPoolSize(), tasks.getMaximumPoolSize(), tasks.getCurrentQueueCount()));
+        }
+
+        String summary = TransactionMetrics.getInstance().summary();
+        if (!summary.isEmpty()) {
+            LOGGER.info(summary);
+        }
+    }
+}
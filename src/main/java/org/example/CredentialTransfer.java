@@ -12,11 +12,21 @@ import org.hyperledger.fabric.contract.annotation.Default;
 import org.hyperledger.fabric.contract.annotation.Transaction;
 import org.hyperledger.fabric.shim.ChaincodeException;
 import org.hyperledger.fabric.shim.ChaincodeStub;
+import org.hyperledger.fabric.shim.ledger.CompositeKey;
+import org.hyperledger.fabric.shim.ledger.KeyModification;
 import org.hyperledger.fabric.shim.ledger.KeyValue;
 import org.hyperledger.fabric.shim.ledger.QueryResultsIterator;
+import org.hyperledger.fabric.shim.ledger.QueryResultsIteratorWithMetadata;
 
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
 
 @Contract(
         name = "basic",
@@ -34,18 +44,111 @@ import java.util.List;
 @Default
 public final class CredentialTransfer implements ContractInterface {
 
+    /**
+     * Object type of the secondary index that maps an owner to the IDs of its credentials.
+     */
+    static final String OWNER_INDEX = "owner~credentialID";
+
+    /**
+     * Object type of the index that lists expiring credentials by the time bucket they expire in.
+     */
+    static final String EXPIRY_INDEX = "expiry~bucket";
+
+    /**
+     * Object type of the entries that keep the last version of deleted credentials, so that a credential
+     * created again under the same ID continues from it.
+     */
+    static final String DELETED_VERSION = "deleted~version";
+
+    /**
+     * Key of the marker that {@link #MigrateCredentials} writes once it has given every credential its owner
+     * index entry. Until then, owner listings scan all records, as they did before the index.
+     */
+    static final String OWNER_INDEX_COMPLETE_KEY = new CompositeKey("migration", "ownerIndex").toString();
+
+    /**
+     * Width of the time buckets of the expiry index.
+     */
+    static final long EXPIRY_BUCKET_MILLIS = 60 * 60 * 1000;
+
+    /**
+     * Index entries carry no data, but an empty value would be treated as a delete by the peer.
+     */
+    private static final byte[] INDEX_ENTRY_VALUE = new byte[] {0x00};
+
+    /**
+     * Upper bound on the page size of paginated listings, which bounds the size of a single response.
+     */
+    static final int MAX_PAGE_SIZE = 500;
+
+    /**
+     * Upper bound on the number of entries of a batch transaction, which keeps it well within endorsement timeouts.
+     */
+    static final int MAX_BATCH_SIZE = 1000;
+
+    /**
+     * Upper bound on the decompressed size in bytes of the payload a single import transaction reads.
+     */
+    static final int MAX_IMPORT_BYTES = 4 * 1024 * 1024;
+
+    /**
+     * Upper bound on the size in bytes of one record of an import payload.
+     */
+    static final int MAX_IMPORT_LINE_BYTES = 1024 * 1024;
+
+    /**
+     * Expected version that matches any stored version.
+     */
+    private static final long ANY_VERSION = -1;
+
     private final Genson genson = new Genson();
 
+    /**
+     * Creates a context whose stub caches world state reads within the transaction.
+     *
+     * @param stub the stub of the transaction
+     * @return the transaction context
+     */
+    @Override
+    public Context createContext(final ChaincodeStub stub) {
+        return new CredentialContext(stub);
+    }
+
+    /**
+     * Starts timing the transaction when metrics are enabled.
+     *
+     * @param ctx the transaction context
+     */
+    @Override
+    public void beforeTransaction(final Context ctx) {
+        if (TransactionMetrics.isEnabled()) {
+            TransactionTimer.start();
+        }
+    }
+
+    /**
+     * Records the metrics of a successful transaction.
+     *
+     * @param ctx    the transaction context
+     * @param result the value returned by the transaction
+     */
+    @Override
+    public void afterTransaction(final Context ctx, final Object result) {
+        TransactionTimer timer = TransactionTimer.stop();
+        if (timer != null) {
+            TransactionMetrics.getInstance().record(ctx.getStub().getFunction(), timer, resultSize(result));
+        }
+    }
+
     @Transaction(intent = Transaction.TYPE.SUBMIT)
     public void InitLedger(final Context ctx) {
         ChaincodeStub stub = ctx.getStub();
+        CredentialChanges changes = new CredentialChanges();
 
-        CreateCredential(ctx, "credential1", "owner1", "credential-name-1", "credential-value-1");
-        CreateCredential(ctx, "credential2", "owner2", "credential-name-2", "credential-value-2");
-        CreateCredential(ctx, "credential3", "owner3", "credential-name-3", "credential-value-3");
-        CreateCredential(ctx, "credential4", "owner4", "credential-name-4", "credential-value-4");
-        CreateCredential(ctx, "credential5", "owner5", "credential-name-5", "credential-value-5");
-        CreateCredential(ctx, "credential6", "owner6", "credential-name-6", "credential-value-6");
+        for (int i = 1; i <= 6; i++) {
+            createCredential(stub, new Credential("credential" + i, "credential-name-" + i, "owner" + i, "credential-value-" + i), changes);
+        }
+        changes.publish(stub);
     }
 
     /**
@@ -60,20 +163,177 @@ public final class CredentialTransfer implements ContractInterface {
     @Transaction(intent = Transaction.TYPE.SUBMIT)
     public Credential CreateCredential(final Context ctx, final String credentialID, final String credentialOwner, final String credentialName, final String credentialValue) {
         ChaincodeStub stub = ctx.getStub();
+        CredentialChanges changes = new CredentialChanges();
 
-        if (CredentialExists(ctx, credentialID, credentialOwner)) {
-            String errorMessage = String.format("Credential %s already exists", credentialID);
-            throw new ChaincodeException(errorMessage, CredentialTransferError.CREDENTIAL_ALREADY_EXISTS.toString());
-        }
-        Credential credential = new Credential(credentialID, credentialName, credentialOwner, credentialValue);
-        String sortedJson = genson.serialize(credential);
-        stub.putStringState(credentialID, sortedJson);
+        Credential credential = createCredential(stub, new Credential(credentialID, credentialName, credentialOwner, credentialValue), changes);
+        changes.publish(stub);
         return credential;
     }
 
+    /**
+     * Creates a new credential that expires at the given time.
+     *
+     * Once expired, the credential is hidden from reads and listings, and {@link #PurgeExpired} removes it.
+     *
+     * @param ctx             the transaction context
+     * @param credentialID    the ID of the new credential
+     * @param credentialOwner the owner of the new credential
+     * @param credentialName  the name of the new credential
+     * @param credentialValue the value of the new credential
+     * @param expiresAt       the expiry in milliseconds since the epoch, or 0 for a credential that does not expire
+     * @return the created credential
+     */
+    @Transaction(intent = Transaction.TYPE.SUBMIT)
+    public Credential CreateExpiringCredential(final Context ctx, final String credentialID, final String credentialOwner, final String credentialName,
+                                               final String credentialValue, final long expiresAt) {
+        ChaincodeStub stub = ctx.getStub();
+        CredentialChanges changes = new CredentialChanges();
+
+        Credential credential = createCredential(stub, new Credential(credentialID, credentialName, credentialOwner, credentialValue, expiresAt), changes);
+        changes.publish(stub);
+        return credential;
+    }
+
+    /**
+     * Creates a new credential whose value is kept in a private data collection.
+     *
+     * The value is taken from the {@value CredentialValues#TRANSIENT_VALUE} transient field, so it appears
+     * neither in the proposal nor in the block; only its hash is written to the world state.
+     *
+     * @param ctx             the transaction context
+     * @param credentialID    the ID of the new credential
+     * @param credentialOwner the owner of the new credential
+     * @param credentialName  the name of the new credential
+     * @param collection      the private data collection the value is stored in
+     * @return the created credential, without its value
+     */
+    @Transaction(intent = Transaction.TYPE.SUBMIT)
+    public Credential CreatePrivateCredential(final Context ctx, final String credentialID, final String credentialOwner, final String credentialName,
+                                              final String collection) {
+        ChaincodeStub stub = ctx.getStub();
+
+        String credentialValue = requireTransientValue(stub, CredentialValues.TRANSIENT_VALUE);
+        CredentialChanges changes = new CredentialChanges();
+        checkNotExists(stub, credentialID, changes);
+        long version = nextVersion(stub, credentialID);
+        Credential credential = new Credential(credentialID, credentialName, credentialOwner, null, 0, version);
+        stub.putState(credentialID, CredentialCodec.encodeMetadata(credential));
+        CredentialValues.putPrivate(stub, credentialID, collection, credentialValue);
+        stub.putState(ownerIndexKey(credentialOwner, credentialID), INDEX_ENTRY_VALUE);
+
+        changes.created(new Credential(credentialID, credentialName, credentialOwner, credentialValue, 0, version));
+        changes.publish(stub);
+        return credential;
+    }
+
+    /**
+     * Creates several new credentials on the ledger in one transaction.
+     *
+     * Entries are processed in order and the transaction fails on the first invalid entry,
+     * in which case none of the credentials are created.
+     *
+     * @param ctx             the transaction context
+     * @param credentialsJSON JSON array of the credentials to create
+     * @return JSON array with the result of each entry
+     */
+    @Transaction(intent = Transaction.TYPE.SUBMIT)
+    public String CreateCredentials(final Context ctx, final String credentialsJSON) {
+        ChaincodeStub stub = ctx.getStub();
+
+        Credential[] credentials = parseBatch(credentialsJSON, Credential[].class);
+        List<Map<String, String>> results = new ArrayList<Map<String, String>>();
+        Set<String> seen = new HashSet<String>();
+        CredentialChanges changes = new CredentialChanges();
+
+        for (int i = 0; i < credentials.length; i++) {
+            try {
+                checkBatchEntry(credentials[i], seen);
+                createCredential(stub, credentials[i], changes);
+            } catch (ChaincodeException e) {
+                throw batchEntryError(i, e);
+            }
+            results.add(batchResult(credentials[i].getCredentialID(), "CREATED"));
+        }
+
+        changes.publish(stub);
+        return genson.serialize(results);
+    }
+
+    /**
+     * Imports credentials from a gzip-compressed, newline-delimited JSON payload, as many as fit in one
+     * transaction.
+     *
+     * Each non-blank line holds one credential. The payload is decompressed and parsed line by line, and
+     * the transaction stops after {@value #MAX_BATCH_SIZE} credentials, or once the next line might take
+     * it past {@value #MAX_IMPORT_BYTES} decompressed bytes. The returned cursor is the number of lines the
+     * transaction consumed; to continue, the client submits the lines after it as a new payload, so no
+     * transaction decompresses what an earlier one imported. A line longer than
+     * {@value #MAX_IMPORT_LINE_BYTES} bytes, or a payload that decompresses past the byte bound before a
+     * credential has been read, is rejected. Lines are validated like batch entries and the transaction
+     * fails on the first invalid one, in which case nothing is imported.
+     *
+     * @param ctx     the transaction context
+     * @param payload base64 encoding of the gzip-compressed payload
+     * @return object with the number of imported credentials, the number of lines consumed and whether
+     *         the payload is exhausted
+     */
+    @Transaction(intent = Transaction.TYPE.SUBMIT)
+    public String ImportCredentials(final Context ctx, final String payload) {
+        ChaincodeStub stub = ctx.getStub();
+
+        int line = 0;
+        int imported = 0;
+        boolean done;
+        Set<String> seen = new HashSet<String>();
+        CredentialChanges changes = new CredentialChanges();
+
+        // A line started below this budget ends within MAX_IMPORT_BYTES, including its line break.
+        long budget = MAX_IMPORT_BYTES - MAX_IMPORT_LINE_BYTES - 1;
+        try (ImportPayloadReader lines = new ImportPayloadReader(payload, MAX_IMPORT_BYTES, MAX_IMPORT_LINE_BYTES)) {
+            while (imported < MAX_BATCH_SIZE && (imported == 0 || lines.getBytesRead() < budget)) {
+                String json = lines.readLine();
+                if (json == null) {
+                    break;
+                }
+                line++;
+                if (json.trim().isEmpty()) {
+                    continue;
+                }
+
+                try {
+                    Credential credential = parseImportLine(json);
+                    checkBatchEntry(credential, seen);
+                    createCredential(stub, credential, changes);
+                } catch (ChaincodeException e) {
+                    String errorMessage = String.format("Line %d: %s", line, e.getMessage());
+                    throw new ChaincodeException(errorMessage, e.getPayload());
+                }
+                imported++;
+            }
+            done = !lines.hasMoreLines();
+        } catch (IOException e) {
+            String errorMessage = String.format("Payload is not base64 encoded gzip-compressed NDJSON: %s", e.getMessage());
+            throw new ChaincodeException(errorMessage, CredentialTransferError.INVALID_CREDENTIAL_BATCH.toString());
+        }
+
+        if (imported == 0) {
+            throw new ChaincodeException("Payload must contain at least one credential", CredentialTransferError.INVALID_CREDENTIAL_BATCH.toString());
+        }
+        changes.publish(stub);
+
+        JsonBuffer response = new JsonBuffer();
+        response.raw("{\"imported\":").number(imported);
+        response.raw(",\"cursor\":").number(line);
+        response.raw(",\"done\":").raw(done ? "true" : "false").raw("}");
+        return response.toString();
+    }
+
     /**
      * Retrieves an credential with the specified ID from the ledger.
      *
+     * The value is read from its own entry unless the record still carries it. Expired credentials
+     * are reported as missing.
+     *
      * @param ctx          the transaction context
      * @param credentialID the ID of the credential
      * @return the credential found on the ledger if there was one
@@ -81,19 +341,77 @@ public final class CredentialTransfer implements ContractInterface {
     @Transaction(intent = Transaction.TYPE.EVALUATE)
     public Credential ReadCredential(final Context ctx, final String credentialID, final String credentialOwner) {
         ChaincodeStub stub = ctx.getStub();
-        String credentialJSON = stub.getStringState(credentialID);
+        Credential credential = readStoredCredential(stub, credentialID);
 
-        if (credentialJSON == null || credentialJSON.isEmpty()) {
+        if (credential == null) {
             String errorMessage = String.format("Credential %s does not exist", credentialID);
             throw new ChaincodeException(errorMessage, CredentialTransferError.CREDENTIAL_NOT_FOUND.toString());
         }
 
-        return genson.deserialize(credentialJSON, Credential.class);
+        return credential;
+    }
+
+    /**
+     * Retrieves several credentials from the ledger in one transaction.
+     *
+     * Records in the binary format are written into the response without building a {@link Credential}, and IDs
+     * that are not on the ledger or have expired are listed instead of failing the transaction.
+     *
+     * @param ctx               the transaction context
+     * @param credentialIDsJSON JSON array of at most {@value #MAX_BATCH_SIZE} distinct credential IDs
+     * @return object with the credentials found, in request order, and the IDs that were missing
+     */
+    @Transaction(intent = Transaction.TYPE.EVALUATE)
+    public String ReadCredentials(final Context ctx, final String credentialIDsJSON) {
+        ChaincodeStub stub = ctx.getStub();
+
+        String[] credentialIDs = parseBatch(credentialIDsJSON, String[].class);
+        List<String> missing = new ArrayList<String>();
+        Set<String> seen = new HashSet<String>();
+
+        JsonBuffer response = new JsonBuffer();
+        response.raw("{\"credentials\":[");
+        boolean first = true;
+        for (int i = 0; i < credentialIDs.length; i++) {
+            try {
+                checkBatchEntry(credentialIDs[i], seen);
+            } catch (ChaincodeException e) {
+                throw batchEntryError(i, e);
+            }
+
+            byte[] record = stub.getState(credentialIDs[i]);
+            if (record == null || record.length == 0 || isExpired(stub, record)) {
+                missing.add(credentialIDs[i]);
+                continue;
+            }
+
+            if (!first) {
+                response.raw(",");
+            }
+            appendCredential(stub, credentialIDs[i], record, response);
+            first = false;
+        }
+
+        response.raw("],\"missing\":[");
+        for (int i = 0; i < missing.size(); i++) {
+            if (i > 0) {
+                response.raw(",");
+            }
+            response.string(missing.get(i));
+        }
+        response.raw("]}");
+
+        return response.toString();
     }
 
     /**
      * Updates the properties of an credential on the ledger.
      *
+     * The value of a private credential stays in its collection and is replaced by the
+     * {@value CredentialValues#TRANSIENT_VALUE} transient field, which is required; the given value must be
+     * empty, so that the secret appears neither in the proposal nor in the block. The returned credential
+     * then has no value. The expiry is kept unless the update sets a new one.
+     *
      * @param ctx             the transaction context
      * @param credentialID    the ID of the credential being updated
      * @param credentialOwner the credentialOwner of the credential being updated
@@ -103,16 +421,75 @@ public final class CredentialTransfer implements ContractInterface {
     @Transaction(intent = Transaction.TYPE.SUBMIT)
     public Credential UpdateCredential(final Context ctx, final String credentialID, final String credentialOwner, final String credentialName, final String credentialValue) {
         ChaincodeStub stub = ctx.getStub();
+        CredentialChanges changes = new CredentialChanges();
 
-        if (!CredentialExists(ctx, credentialID, credentialOwner)) {
-            String errorMessage = String.format("Credential %s does not exist", credentialID);
-            throw new ChaincodeException(errorMessage, CredentialTransferError.CREDENTIAL_NOT_FOUND.toString());
+        Credential credential = updateCredential(stub, new Credential(credentialID, credentialName, credentialOwner, credentialValue), ANY_VERSION,
+                CredentialValues.TRANSIENT_VALUE, changes);
+        changes.publish(stub);
+        return credential;
+    }
+
+    /**
+     * Updates a credential only if it is still at the version the client read.
+     *
+     * Otherwise the proposal is rejected during endorsement with {@code CREDENTIAL_VERSION_MISMATCH}, so a
+     * client racing another writer learns it right away instead of when the transaction fails MVCC
+     * validation after ordering. The value is handled as in {@link #UpdateCredential}.
+     *
+     * @param ctx             the transaction context
+     * @param credentialID    the ID of the credential being updated
+     * @param credentialOwner the new owner of the credential
+     * @param credentialName  the new name of the credential
+     * @param credentialValue the new value of the credential
+     * @param expectedVersion the version the client read, 0 for records written before versions were introduced
+     * @return the updated credential with its new version
+     */
+    @Transaction(intent = Transaction.TYPE.SUBMIT)
+    public Credential UpdateCredentialIfVersion(final Context ctx, final String credentialID, final String credentialOwner, final String credentialName,
+                                                final String credentialValue, final long expectedVersion) {
+        ChaincodeStub stub = ctx.getStub();
+        checkExpectedVersion(expectedVersion);
+        CredentialChanges changes = new CredentialChanges();
+
+        Credential credential = updateCredential(stub, new Credential(credentialID, credentialName, credentialOwner, credentialValue), expectedVersion,
+                CredentialValues.TRANSIENT_VALUE, changes);
+        changes.publish(stub);
+        return credential;
+    }
+
+    /**
+     * Updates several credentials on the ledger in one transaction.
+     *
+     * Entries are processed in order and the transaction fails on the first invalid entry,
+     * in which case none of the credentials are updated. The value of each private credential is taken
+     * from its own transient field, {@value CredentialValues#TRANSIENT_VALUE} followed by a slash and the
+     * credential ID, so that every entry gets its own value.
+     *
+     * @param ctx             the transaction context
+     * @param credentialsJSON JSON array of the new states of the credentials
+     * @return JSON array with the result of each entry
+     */
+    @Transaction(intent = Transaction.TYPE.SUBMIT)
+    public String UpdateCredentials(final Context ctx, final String credentialsJSON) {
+        ChaincodeStub stub = ctx.getStub();
+
+        Credential[] credentials = parseBatch(credentialsJSON, Credential[].class);
+        List<Map<String, String>> results = new ArrayList<Map<String, String>>();
+        Set<String> seen = new HashSet<String>();
+        CredentialChanges changes = new CredentialChanges();
+
+        for (int i = 0; i < credentials.length; i++) {
+            try {
+                checkBatchEntry(credentials[i], seen);
+                updateCredential(stub, credentials[i], ANY_VERSION, CredentialValues.transientField(credentials[i].getCredentialID()), changes);
+            } catch (ChaincodeException e) {
+                throw batchEntryError(i, e);
+            }
+            results.add(batchResult(credentials[i].getCredentialID(), "UPDATED"));
         }
 
-        Credential newCredential = new Credential(credentialID, credentialName, credentialOwner, credentialValue);
-        String sortedJson = genson.serialize(newCredential);
-        stub.putStringState(credentialID, sortedJson);
-        return newCredential;
+        changes.publish(stub);
+        return genson.serialize(results);
     }
 
     /**
@@ -124,13 +501,60 @@ public final class CredentialTransfer implements ContractInterface {
     @Transaction(intent = Transaction.TYPE.SUBMIT)
     public void DeleteCredential(final Context ctx, final String credentialID, final String credentialOwner) {
         ChaincodeStub stub = ctx.getStub();
+        CredentialChanges changes = new CredentialChanges();
 
-        if (!CredentialExists(ctx, credentialID, credentialOwner)) {
-            String errorMessage = String.format("Credential %s does not exist", credentialID);
-            throw new ChaincodeException(errorMessage, CredentialTransferError.CREDENTIAL_NOT_FOUND.toString());
+        deleteCredential(stub, credentialID, ANY_VERSION, changes);
+        changes.publish(stub);
+    }
+
+    /**
+     * Deletes a credential only if it is still at the version the client read.
+     *
+     * @param ctx             the transaction context
+     * @param credentialID    the ID of the credential being deleted
+     * @param expectedVersion the version the client read, 0 for records written before versions were introduced
+     */
+    @Transaction(intent = Transaction.TYPE.SUBMIT)
+    public void DeleteCredentialIfVersion(final Context ctx, final String credentialID, final String credentialOwner, final long expectedVersion) {
+        ChaincodeStub stub = ctx.getStub();
+        checkExpectedVersion(expectedVersion);
+        CredentialChanges changes = new CredentialChanges();
+
+        deleteCredential(stub, credentialID, expectedVersion, changes);
+        changes.publish(stub);
+    }
+
+    /**
+     * Deletes several credentials on the ledger in one transaction.
+     *
+     * Entries are processed in order and the transaction fails on the first unknown ID,
+     * in which case none of the credentials are deleted.
+     *
+     * @param ctx               the transaction context
+     * @param credentialIDsJSON JSON array of the IDs of the credentials to delete
+     * @return JSON array with the result of each entry
+     */
+    @Transaction(intent = Transaction.TYPE.SUBMIT)
+    public String DeleteCredentials(final Context ctx, final String credentialIDsJSON) {
+        ChaincodeStub stub = ctx.getStub();
+
+        String[] credentialIDs = parseBatch(credentialIDsJSON, String[].class);
+        List<Map<String, String>> results = new ArrayList<Map<String, String>>();
+        Set<String> seen = new HashSet<String>();
+        CredentialChanges changes = new CredentialChanges();
+
+        for (int i = 0; i < credentialIDs.length; i++) {
+            try {
+                checkBatchEntry(credentialIDs[i], seen);
+                deleteCredential(stub, credentialIDs[i], ANY_VERSION, changes);
+            } catch (ChaincodeException e) {
+                throw batchEntryError(i, e);
+            }
+            results.add(batchResult(credentialIDs[i], "DELETED"));
         }
 
-        stub.delState(credentialID);
+        changes.publish(stub);
+        return genson.serialize(results);
     }
 
     /**
@@ -143,33 +567,844 @@ public final class CredentialTransfer implements ContractInterface {
     @Transaction(intent = Transaction.TYPE.EVALUATE)
     public boolean CredentialExists(final Context ctx, final String credentialID, final String credentialOwner) {
         ChaincodeStub stub = ctx.getStub();
-        String credentialJSON = stub.getStringState(credentialID);
+        byte[] record = stub.getState(credentialID);
 
-        return (credentialJSON != null && !credentialJSON.isEmpty());
+        return (record != null && record.length > 0 && !isExpired(stub, record));
     }
 
     /**
-     * Retrieves all credentials from the ledger.
+     * Retrieves all credentials of an owner from the ledger.
      *
-     * @param ctx the transaction context
+     * Only the owner's partition of the owner index is scanned, so the cost depends on the
+     * number of credentials the owner holds rather than on the size of the world state.
+     * Records in the binary format are written into the response without building a {@link Credential}.
+     * Until {@link #MigrateCredentials} has indexed every credential, all records are scanned instead.
+     *
+     * @param ctx             the transaction context
+     * @param credentialOwner the owner whose credentials are listed
      * @return array of credentials found on the ledger
      */
     @Transaction(intent = Transaction.TYPE.EVALUATE)
     public String GetAllCredentials(final Context ctx, final String credentialOwner) {
         ChaincodeStub stub = ctx.getStub();
 
-        List<Credential> queryResults = new ArrayList<Credential>();
-        QueryResultsIterator<KeyValue> results = stub.getStateByRange("", "");
+        JsonBuffer response = new JsonBuffer();
+        response.raw("[");
+        appendOwnerCredentials(stub, credentialOwner, response, true);
+        response.raw("]");
+
+        return response.toString();
+    }
+
+    /**
+     * Retrieves the ID, name and owner of all credentials of an owner, without their values.
+     *
+     * Only the credential records are read, so the cost does not depend on the size of the values.
+     * Until {@link #MigrateCredentials} has indexed every credential, all records are scanned.
+     *
+     * @param ctx             the transaction context
+     * @param credentialOwner the owner whose credentials are listed
+     * @return array of credential summaries found on the ledger
+     */
+    @Transaction(intent = Transaction.TYPE.EVALUATE)
+    public String GetCredentialSummaries(final Context ctx, final String credentialOwner) {
+        ChaincodeStub stub = ctx.getStub();
+
+        JsonBuffer response = new JsonBuffer();
+        response.raw("[");
+        appendOwnerCredentials(stub, credentialOwner, response, false);
+        response.raw("]");
+
+        return response.toString();
+    }
+
+    /**
+     * Retrieves one page of the credentials of an owner from the ledger.
+     *
+     * Pass an empty bookmark to fetch the first page and the returned bookmark to fetch the next one;
+     * an empty bookmark in the response means there are no more pages. Expired credentials are skipped,
+     * so a page may hold fewer credentials than the page size even if more pages follow; the fetched
+     * records count is the number of credentials in the page.
+     *
+     * @param ctx             the transaction context
+     * @param credentialOwner the owner whose credentials are listed
+     * @param pageSize        the maximum number of credentials to return, at most {@value #MAX_PAGE_SIZE}
+     * @param bookmark        the bookmark returned by the previous page, or empty for the first page
+     * @return object with the credentials of the page, the number of credentials in it and the next bookmark
+     */
+    @Transaction(intent = Transaction.TYPE.EVALUATE)
+    public String GetAllCredentialsWithPagination(final Context ctx, final String credentialOwner, final int pageSize, final String bookmark) {
+        ChaincodeStub stub = ctx.getStub();
+
+        if (pageSize <= 0 || pageSize > MAX_PAGE_SIZE) {
+            String errorMessage = String.format("Page size %d is not between 1 and %d", pageSize, MAX_PAGE_SIZE);
+            throw new ChaincodeException(errorMessage, CredentialTransferError.INVALID_PAGE_SIZE.toString());
+        }
+
+        JsonBuffer response = new JsonBuffer();
+        QueryResultsIteratorWithMetadata<KeyValue> results = stub.getStateByPartialCompositeKeyWithPagination(
+                new CompositeKey(OWNER_INDEX, credentialOwner), pageSize, bookmark);
+        try {
+            response.raw("{\"records\":[");
+            int returned = appendCredentials(stub, results, response, true);
+            response.raw("],\"fetchedRecordsCount\":").number(returned);
+            response.raw(",\"bookmark\":").string(results.getMetadata().getBookmark()).raw("}");
+        } finally {
+            closeIterator(results);
+        }
 
-        for (KeyValue result : results) {
-            Credential credential = genson.deserialize(result.getStringValue(), Credential.class);
-            if (credential.getCredentialOwner().equals(credentialOwner)) {
-                queryResults.add(credential);
+        return response.toString();
+    }
+
+    /**
+     * Retrieves the recorded changes of a credential, newest first.
+     *
+     * Each entry has the ID and timestamp of the transaction, whether it deleted the credential and the
+     * ID, name and owner the credential had afterwards; values are not part of the history. Entries are
+     * written into the response as the peer streams them, and the scan stops at the first entry older
+     * than {@code since} or once {@code limit} entries are written, so the response size is bounded by
+     * the limit rather than by the length of the history.
+     *
+     * @param ctx          the transaction context
+     * @param credentialID the ID of the credential
+     * @param since        the oldest transaction time to include in milliseconds since the epoch, or 0 for no bound
+     * @param limit        the maximum number of entries to return, at most {@value #MAX_PAGE_SIZE}
+     * @return array of history entries
+     */
+    @Transaction(intent = Transaction.TYPE.EVALUATE)
+    public String GetCredentialHistory(final Context ctx, final String credentialID, final long since, final int limit) {
+        ChaincodeStub stub = ctx.getStub();
+
+        if (limit <= 0 || limit > MAX_PAGE_SIZE) {
+            String errorMessage = String.format("Limit %d is not between 1 and %d", limit, MAX_PAGE_SIZE);
+            throw new ChaincodeException(errorMessage, CredentialTransferError.INVALID_PAGE_SIZE.toString());
+        }
+
+        JsonBuffer response = new JsonBuffer();
+        QueryResultsIterator<KeyModification> modifications = stub.getHistoryForKey(credentialID);
+        try {
+            response.raw("[");
+            int count = 0;
+            Iterator<KeyModification> entries = modifications.iterator();
+            while (count < limit && entries.hasNext()) {
+                KeyModification modification = entries.next();
+                long timestamp = modification.getTimestamp().toEpochMilli();
+                if (timestamp < since) {
+                    break;
+                }
+
+                if (count > 0) {
+                    response.raw(",");
+                }
+                response.raw("{\"txId\":").string(modification.getTxId());
+                response.raw(",\"timestamp\":").number(timestamp);
+                response.raw(",\"isDeleted\":").raw(modification.isDeleted() ? "true" : "false");
+                response.raw(",\"credential\":");
+                byte[] record = modification.getValue();
+                if (modification.isDeleted() || record == null || record.length == 0) {
+                    response.raw("null");
+                } else {
+                    CredentialCodec.appendSummaryJson(record, response);
+                }
+                response.raw("}");
+                count++;
             }
+            response.raw("]");
+        } finally {
+            closeIterator(modifications);
         }
 
-        final String response = genson.serialize(queryResults);
+        return response.toString();
+    }
+
+    /**
+     * Rewrites one page of credential records into the current storage layout.
+     *
+     * Records written as JSON, or in the binary format with their value inline, are re-encoded with
+     * the value stored apart, and records without an owner index entry get one. Records written before the
+     * owner statistics were introduced are marked as counted and added to the statistics of their owner,
+     * which seeds the statistics with the credentials that existed before. Records already in the current
+     * layout are left alone, so the migration can be resumed from any bookmark and run again safely.
+     * Readers accept both layouts, and owner listings scan all records until the last page is migrated,
+     * so the ledger stays usable while pages are migrated one transaction at a time.
+     *
+     * Pass an empty bookmark to start and the returned bookmark to continue; the migration is complete
+     * when the response reports it as done, and has to be run to completion once after deploying this
+     * version for the owner listings to use the index. The peer does not allow paginated queries in a
+     * transaction that writes, so the page is cut from a plain range scan and the bookmark is the first
+     * key left for the next page.
+     *
+     * @param ctx      the transaction context
+     * @param pageSize the number of records to scan, at most {@value #MAX_PAGE_SIZE}
+     * @param bookmark the bookmark returned by the previous page, or empty for the first page
+     * @return object with the number of scanned and migrated records, the next bookmark and whether the migration is done
+     */
+    @Transaction(intent = Transaction.TYPE.SUBMIT)
+    public String MigrateCredentials(final Context ctx, final int pageSize, final String bookmark) {
+        ChaincodeStub stub = ctx.getStub();
+
+        if (pageSize <= 0 || pageSize > MAX_PAGE_SIZE) {
+            String errorMessage = String.format("Page size %d is not between 1 and %d", pageSize, MAX_PAGE_SIZE);
+            throw new ChaincodeException(errorMessage, CredentialTransferError.INVALID_PAGE_SIZE.toString());
+        }
+
+        int scanned = 0;
+        int migrated = 0;
+        String nextBookmark = "";
+        OwnerStats stats = new OwnerStats();
+        QueryResultsIterator<KeyValue> records = stub.getStateByRange(bookmark == null ? "" : bookmark, "");
+        try {
+            Iterator<KeyValue> entries = records.iterator();
+            while (entries.hasNext()) {
+                KeyValue entry = entries.next();
+                if (scanned == pageSize) {
+                    nextBookmark = entry.getKey();
+                    break;
+                }
+                scanned++;
+                if (migrateCredential(stub, entry.getKey(), entry.getValue(), stats)) {
+                    migrated++;
+                }
+            }
+        } finally {
+            closeIterator(records);
+        }
+        stats.write(stub);
+        if (nextBookmark.isEmpty()) {
+            stub.putState(OWNER_INDEX_COMPLETE_KEY, INDEX_ENTRY_VALUE);
+        }
+
+        JsonBuffer response = new JsonBuffer();
+        response.raw("{\"scanned\":").number(scanned);
+        response.raw(",\"migrated\":").number(migrated);
+        response.raw(",\"bookmark\":").string(nextBookmark);
+        response.raw(",\"done\":").raw(nextBookmark.isEmpty() ? "true" : "false").raw("}");
+        return response.toString();
+    }
+
+    /**
+     * Retrieves the number of credentials an owner holds and the total size of their values.
+     *
+     * The statistics are the sum of the deltas written by the transactions that changed the owner's
+     * credentials; the number of deltas tells when {@link #CompactOwnerStats} is due. Credentials written
+     * before the statistics were introduced are only included once {@link #MigrateCredentials} has
+     * counted them. The totals are reported as at least zero.
+     *
+     * @param ctx             the transaction context
+     * @param credentialOwner the owner
+     * @return object with the owner, the number of credentials, the value bytes and the number of deltas summed
+     */
+    @Transaction(intent = Transaction.TYPE.EVALUATE)
+    public String GetOwnerStats(final Context ctx, final String credentialOwner) {
+        ChaincodeStub stub = ctx.getStub();
+
+        long credentials = 0;
+        long bytes = 0;
+        int deltas = 0;
+        QueryResultsIterator<KeyValue> entries = stub.getStateByPartialCompositeKey(OwnerStats.STAT_KEY_TYPE, credentialOwner);
+        try {
+            for (KeyValue entry : entries) {
+                long[] delta = OwnerStats.decode(entry.getValue());
+                credentials += delta[0];
+                bytes += delta[1];
+                deltas++;
+            }
+        } finally {
+            closeIterator(entries);
+        }
+
+        JsonBuffer response = new JsonBuffer();
+        response.raw("{\"owner\":").string(credentialOwner);
+        response.raw(",\"credentials\":").number(Math.max(0, credentials));
+        response.raw(",\"bytes\":").number(Math.max(0, bytes));
+        response.raw(",\"deltas\":").number(deltas).raw("}");
+        return response.toString();
+    }
+
+    /**
+     * Folds the statistics deltas of an owner into a single entry.
+     *
+     * At most {@value #MAX_BATCH_SIZE} deltas are folded per transaction; call again while the response
+     * is not done. Transactions that change credentials never read deltas, so they are not affected by a
+     * compaction, but a compaction fails validation if a delta of the owner is added while it runs and
+     * can simply be retried.
+     *
+     * @param ctx             the transaction context
+     * @param credentialOwner the owner
+     * @return object with the number of folded deltas and whether the owner has no deltas left to fold
+     */
+    @Transaction(intent = Transaction.TYPE.SUBMIT)
+    public String CompactOwnerStats(final Context ctx, final String credentialOwner) {
+        ChaincodeStub stub = ctx.getStub();
+
+        long credentials = 0;
+        long bytes = 0;
+        List<String> keys = new ArrayList<String>();
+        boolean done;
+        QueryResultsIterator<KeyValue> entries = stub.getStateByPartialCompositeKey(OwnerStats.STAT_KEY_TYPE, credentialOwner);
+        try {
+            Iterator<KeyValue> deltas = entries.iterator();
+            while (keys.size() < MAX_BATCH_SIZE && deltas.hasNext()) {
+                KeyValue entry = deltas.next();
+                long[] delta = OwnerStats.decode(entry.getValue());
+                credentials += delta[0];
+                bytes += delta[1];
+                keys.add(entry.getKey());
+            }
+            done = !deltas.hasNext();
+        } finally {
+            closeIterator(entries);
+        }
+
+        int folded = 0;
+        if (keys.size() > 1) {
+            for (String key : keys) {
+                stub.delState(key);
+            }
+            if (credentials != 0 || bytes != 0) {
+                stub.putState(OwnerStats.key(credentialOwner, stub.getTxId()), OwnerStats.encode(credentials, bytes));
+            }
+            folded = keys.size();
+        }
+
+        JsonBuffer response = new JsonBuffer();
+        response.raw("{\"folded\":").number(folded);
+        response.raw(",\"done\":").raw(done ? "true" : "false").raw("}");
+        return response.toString();
+    }
+
+    /**
+     * Deletes expired credentials, oldest expiry first.
+     *
+     * The expiry index is scanned from its first bucket up to the bucket of {@code now}, so live
+     * credentials outside that bucket are never touched. At most {@code maxItems} index entries are
+     * examined per transaction; call again while the response is not done. {@code now} is capped at the
+     * transaction timestamp, so a client cannot purge credentials that have not expired yet.
+     *
+     * @param ctx      the transaction context
+     * @param now      the time to purge up to in milliseconds since the epoch
+     * @param maxItems the maximum number of index entries to examine, at most {@value #MAX_BATCH_SIZE}
+     * @return object with the number of examined entries, the number of purged credentials and whether no expired credential is left
+     */
+    @Transaction(intent = Transaction.TYPE.SUBMIT)
+    public String PurgeExpired(final Context ctx, final long now, final int maxItems) {
+        ChaincodeStub stub = ctx.getStub();
+
+        if (maxItems <= 0 || maxItems > MAX_BATCH_SIZE) {
+            String errorMessage = String.format("Max items %d is not between 1 and %d", maxItems, MAX_BATCH_SIZE);
+            throw new ChaincodeException(errorMessage, CredentialTransferError.INVALID_PAGE_SIZE.toString());
+        }
+
+        long cutoff = Math.min(now, stub.getTxTimestamp().toEpochMilli());
+        String lastBucket = expiryBucket(cutoff);
+        int scanned = 0;
+        int purged = 0;
+        boolean done = true;
+        CredentialChanges changes = new CredentialChanges();
+
+        QueryResultsIterator<KeyValue> entries = stub.getStateByPartialCompositeKey(new CompositeKey(EXPIRY_INDEX));
+        try {
+            for (KeyValue entry : entries) {
+                List<String> attributes = CompositeKey.parseCompositeKey(entry.getKey()).getAttributes();
+                if (attributes.get(0).compareTo(lastBucket) > 0) {
+                    break;
+                }
+                if (scanned == maxItems) {
+                    done = false;
+                    break;
+                }
+                scanned++;
+
+                String credentialID = attributes.get(1);
+                byte[] record = stub.getState(credentialID);
+                long expiresAt = CredentialCodec.getExpiresAt(record);
+                if (expiresAt <= 0 || !expiryIndexKey(expiresAt, credentialID).equals(entry.getKey())) {
+                    stub.delState(entry.getKey());
+                } else if (expiresAt <= cutoff) {
+                    removeCredential(stub, credentialID, record, CredentialCodec.decode(record), changes);
+                    purged++;
+                }
+            }
+        } finally {
+            closeIterator(entries);
+        }
+
+        changes.publish(stub);
+
+        JsonBuffer response = new JsonBuffer();
+        response.raw("{\"scanned\":").number(scanned);
+        response.raw(",\"purged\":").number(purged);
+        response.raw(",\"done\":").raw(done ? "true" : "false").raw("}");
+        return response.toString();
+    }
+
+    /**
+     * Builds the owner index key under which a credential is listed for its owner.
+     *
+     * @param credentialOwner the owner of the credential
+     * @param credentialID    the ID of the credential
+     * @return the composite key of the index entry
+     */
+    static String ownerIndexKey(final String credentialOwner, final String credentialID) {
+        return new CompositeKey(OWNER_INDEX, credentialOwner, credentialID).toString();
+    }
+
+    /**
+     * Builds the expiry index key under which an expiring credential is listed.
+     *
+     * @param expiresAt    the expiry of the credential in milliseconds since the epoch
+     * @param credentialID the ID of the credential
+     * @return the composite key of the index entry
+     */
+    static String expiryIndexKey(final long expiresAt, final String credentialID) {
+        return new CompositeKey(EXPIRY_INDEX, expiryBucket(expiresAt), credentialID).toString();
+    }
+
+    /**
+     * Builds the key under which the last version of a deleted credential is kept.
+     *
+     * @param credentialID the ID of the credential
+     * @return the composite key of the entry
+     */
+    static String deletedVersionKey(final String credentialID) {
+        return new CompositeKey(DELETED_VERSION, credentialID).toString();
+    }
+
+    /**
+     * Zero-pads the bucket number so that buckets sort in time order.
+     */
+    private static String expiryBucket(final long expiresAt) {
+        return String.format("%013d", expiresAt / EXPIRY_BUCKET_MILLIS);
+    }
+
+    /**
+     * Tells whether a stored record has expired as of the transaction timestamp. The timestamp is only
+     * looked at for records that carry an expiry.
+     */
+    private static boolean isExpired(final ChaincodeStub stub, final byte[] record) {
+        long expiresAt = CredentialCodec.getExpiresAt(record);
+        return expiresAt > 0 && expiresAt <= stub.getTxTimestamp().toEpochMilli();
+    }
+
+    /**
+     * Appends the credentials of an owner, listed from the owner index once {@link #MigrateCredentials} has
+     * completed it and otherwise found by scanning all records, which also finds credentials written
+     * before the index was introduced.
+     */
+    private static void appendOwnerCredentials(final ChaincodeStub stub, final String credentialOwner, final JsonBuffer json, final boolean withValues) {
+        byte[] marker = stub.getState(OWNER_INDEX_COMPLETE_KEY);
+        boolean indexComplete = marker != null && marker.length > 0;
+        QueryResultsIterator<KeyValue> results = indexComplete
+                ? stub.getStateByPartialCompositeKey(OWNER_INDEX, credentialOwner)
+                : stub.getStateByRange("", "");
+        try {
+            if (indexComplete) {
+                appendCredentials(stub, results, json, withValues);
+            } else {
+                appendScannedCredentials(stub, credentialOwner, results, json, withValues);
+            }
+        } finally {
+            closeIterator(results);
+        }
+    }
+
+    /**
+     * Appends the credentials of an owner found in a scan of all records, skipping expired ones.
+     */
+    private static void appendScannedCredentials(final ChaincodeStub stub, final String credentialOwner, final Iterable<KeyValue> records,
+                                                 final JsonBuffer json, final boolean withValues) {
+        int count = 0;
+        for (KeyValue entry : records) {
+            byte[] record = entry.getValue();
+            Credential credential = CredentialCodec.decode(record);
+            if (credential == null || !credentialOwner.equals(credential.getCredentialOwner()) || isExpired(stub, record)) {
+                continue;
+            }
+
+            if (count++ > 0) {
+                json.raw(",");
+            }
+            if (withValues) {
+                appendCredential(stub, entry.getKey(), record, json);
+            } else {
+                CredentialCodec.appendSummaryJson(record, json);
+            }
+        }
+    }
+
+    /**
+     * Appends the credentials listed by owner index entries, skipping those that are gone or expired.
+     *
+     * @return the number of credentials appended
+     */
+    private static int appendCredentials(final ChaincodeStub stub, final Iterable<KeyValue> indexEntries, final JsonBuffer json,
+                                         final boolean withValues) {
+        int count = 0;
+        for (KeyValue indexEntry : indexEntries) {
+            String credentialID = CompositeKey.parseCompositeKey(indexEntry.getKey()).getAttributes().get(1);
+            byte[] record = stub.getState(credentialID);
+            if (record == null || record.length == 0 || isExpired(stub, record)) {
+                continue;
+            }
+
+            if (count > 0) {
+                json.raw(",");
+            }
+            if (withValues) {
+                appendCredential(stub, credentialID, record, json);
+            } else {
+                CredentialCodec.appendSummaryJson(record, json);
+            }
+            count++;
+        }
+        return count;
+    }
+
+    private static void appendCredential(final ChaincodeStub stub, final String credentialID, final byte[] record, final JsonBuffer json) {
+        if (CredentialCodec.hasValue(record)) {
+            CredentialCodec.appendJson(record, json);
+        } else {
+            CredentialCodec.appendJson(record, CredentialValues.get(stub, credentialID), json);
+        }
+    }
+
+    private static long resultSize(final Object result) {
+        if (result instanceof String) {
+            return ((String) result).length();
+        }
+        if (result instanceof Credential) {
+            Credential credential = (Credential) result;
+            return length(credential.getCredentialID()) + length(credential.getCredentialName())
+                    + length(credential.getCredentialOwner()) + length(credential.getCredentialValue());
+        }
+        return 0;
+    }
+
+    private static int length(final String value) {
+        return value == null ? 0 : value.length();
+    }
+
+    private static void closeIterator(final AutoCloseable iterator) {
+        try {
+            iterator.close();
+        } catch (Exception e) {
+            throw new ChaincodeException("Failed to close query results", e);
+        }
+    }
+
+    private Credential createCredential(final ChaincodeStub stub, final Credential newCredential, final CredentialChanges changes) {
+        String credentialID = newCredential.getCredentialID();
+
+        checkNotExists(stub, credentialID, changes);
+        Credential credential = new Credential(credentialID, newCredential.getCredentialName(), newCredential.getCredentialOwner(),
+                newCredential.getCredentialValue(), newCredential.getExpiresAt(), nextVersion(stub, credentialID));
+        writeCredential(stub, credential, false);
+        stub.putState(ownerIndexKey(credential.getCredentialOwner(), credentialID), INDEX_ENTRY_VALUE);
+        if (credential.getExpiresAt() > 0) {
+            stub.putState(expiryIndexKey(credential.getExpiresAt(), credentialID), INDEX_ENTRY_VALUE);
+        }
+        changes.created(credential);
+        return credential;
+    }
+
+    private Credential updateCredential(final ChaincodeStub stub, final Credential update, final long expectedVersion, final String transientField,
+                                        final CredentialChanges changes) {
+        String credentialID = update.getCredentialID();
+        String credentialOwner = update.getCredentialOwner();
+
+        byte[] record = stub.getState(credentialID);
+        Credential previous = CredentialCodec.decode(record);
+        if (previous == null || isExpired(stub, record)) {
+            String errorMessage = String.format("Credential %s does not exist", credentialID);
+            throw new ChaincodeException(errorMessage, CredentialTransferError.CREDENTIAL_NOT_FOUND.toString());
+        }
+        checkVersion(credentialID, previous, expectedVersion);
+
+        long expiresAt = update.getExpiresAt() > 0 ? update.getExpiresAt() : previous.getExpiresAt();
+        long version = previous.getVersion() + 1;
+        Credential newCredential = new Credential(credentialID, update.getCredentialName(), credentialOwner, update.getCredentialValue(), expiresAt, version);
+
+        boolean separateValue = !CredentialCodec.hasValue(record);
+        boolean counted = CredentialCodec.isCounted(record);
+        long previousBytes = storedValueBytes(stub, credentialID, previous, separateValue);
+        String collection = separateValue ? CredentialValues.getCollection(stub, credentialID) : null;
+        Credential updated = newCredential;
+        if (collection == null) {
+            writeCredential(stub, newCredential, separateValue);
+            changes.updated(newCredential, OwnerStats.valueBytes(newCredential.getCredentialValue()), previous.getCredentialOwner(), previousBytes, counted);
+        } else {
+            if (CredentialValues.isSeparate(newCredential.getCredentialValue())) {
+                String errorMessage = String.format("Credential %s is private, its value must be passed in transient field %s",
+                        credentialID, transientField);
+                throw new ChaincodeException(errorMessage, CredentialTransferError.INVALID_ARGUMENT.toString());
+            }
+            String credentialValue = requireTransientValue(stub, transientField);
+
+            updated = new Credential(credentialID, newCredential.getCredentialName(), credentialOwner, null, expiresAt, version);
+            stub.putState(credentialID, CredentialCodec.encodeMetadata(updated));
+            CredentialValues.putPrivate(stub, credentialID, collection, credentialValue);
+            changes.updated(updated, OwnerStats.valueBytes(credentialValue), previous.getCredentialOwner(), previousBytes, counted);
+        }
+
+        String previousOwner = previous.getCredentialOwner();
+        if (!credentialOwner.equals(previousOwner)) {
+            if (previousOwner != null) {
+                stub.delState(ownerIndexKey(previousOwner, credentialID));
+            }
+            stub.putState(ownerIndexKey(credentialOwner, credentialID), INDEX_ENTRY_VALUE);
+        } else if (!CredentialCodec.isBinary(record) && !hasOwnerIndexEntry(stub, credentialOwner, credentialID)) {
+            stub.putState(ownerIndexKey(credentialOwner, credentialID), INDEX_ENTRY_VALUE);
+        }
+        if (expiresAt != previous.getExpiresAt()) {
+            if (previous.getExpiresAt() > 0) {
+                stub.delState(expiryIndexKey(previous.getExpiresAt(), credentialID));
+            }
+            stub.putState(expiryIndexKey(expiresAt, credentialID), INDEX_ENTRY_VALUE);
+        }
+        return updated;
+    }
+
+    private void deleteCredential(final ChaincodeStub stub, final String credentialID, final long expectedVersion, final CredentialChanges changes) {
+        byte[] record = stub.getState(credentialID);
+        Credential previous = CredentialCodec.decode(record);
+        if (previous == null || isExpired(stub, record)) {
+            String errorMessage = String.format("Credential %s does not exist", credentialID);
+            throw new ChaincodeException(errorMessage, CredentialTransferError.CREDENTIAL_NOT_FOUND.toString());
+        }
+        checkVersion(credentialID, previous, expectedVersion);
+
+        removeCredential(stub, credentialID, record, previous, changes);
+    }
+
+    /**
+     * Fails unless the stored credential is at the expected version. The check runs during endorsement, so
+     * a client that lost a race learns it before the transaction is ordered.
+     */
+    private static void checkVersion(final String credentialID, final Credential stored, final long expectedVersion) {
+        if (expectedVersion != ANY_VERSION && stored.getVersion() != expectedVersion) {
+            String errorMessage = String.format("Credential %s is at version %d, not %d", credentialID, stored.getVersion(), expectedVersion);
+            throw new ChaincodeException(errorMessage, CredentialTransferError.CREDENTIAL_VERSION_MISMATCH.toString());
+        }
+    }
+
+    /**
+     * Removes a stored credential with its value and index entries.
+     */
+    private static void removeCredential(final ChaincodeStub stub, final String credentialID, final byte[] record, final Credential previous,
+                                         final CredentialChanges changes) {
+        boolean separateValue = !CredentialCodec.hasValue(record);
+        long previousBytes = storedValueBytes(stub, credentialID, previous, separateValue);
+        stub.delState(credentialID);
+        if (separateValue) {
+            CredentialValues.delete(stub, credentialID);
+        }
+        if (previous.getCredentialOwner() != null) {
+            stub.delState(ownerIndexKey(previous.getCredentialOwner(), credentialID));
+        }
+        if (previous.getExpiresAt() > 0) {
+            stub.delState(expiryIndexKey(previous.getExpiresAt(), credentialID));
+        }
+        if (previous.getVersion() > 0) {
+            stub.putState(deletedVersionKey(credentialID), Long.toString(previous.getVersion()).getBytes(StandardCharsets.UTF_8));
+        }
+        changes.deleted(credentialID, previous.getCredentialOwner(), previousBytes, CredentialCodec.isCounted(record));
+    }
+
+    /**
+     * Returns the value of a private credential, which is only accepted from transient data.
+     */
+    private static String requireTransientValue(final ChaincodeStub stub, final String field) {
+        String credentialValue = CredentialValues.getTransient(stub, field);
+        if (credentialValue == null) {
+            String errorMessage = String.format("Transient field %s is required", field);
+            throw new ChaincodeException(errorMessage, CredentialTransferError.CREDENTIAL_VALUE_MISSING.toString());
+        }
+        return credentialValue;
+    }
+
+    /**
+     * Returns the size of the stored value of a credential, taking it from the value entry header when
+     * the value is stored apart so that chunks and private data are not read.
+     */
+    private static long storedValueBytes(final ChaincodeStub stub, final String credentialID, final Credential stored, final boolean separateValue) {
+        return separateValue ? CredentialValues.size(stub, credentialID) : OwnerStats.valueBytes(stored.getCredentialValue());
+    }
+
+    /**
+     * Rejects a version passed by a client that no record can be at. Negative versions are reserved for
+     * {@link #ANY_VERSION}, which clients cannot ask for.
+     */
+    private static void checkExpectedVersion(final long expectedVersion) {
+        if (expectedVersion < 0) {
+            String errorMessage = String.format("Version %d is negative", expectedVersion);
+            throw new ChaincodeException(errorMessage, CredentialTransferError.INVALID_ARGUMENT.toString());
+        }
+    }
+
+    /**
+     * Fails if a credential exists under the ID, removing it first if it has expired so that the ID can be reused.
+     */
+    private static void checkNotExists(final ChaincodeStub stub, final String credentialID, final CredentialChanges changes) {
+        byte[] record = stub.getState(credentialID);
+        if (record != null && record.length > 0 && isExpired(stub, record)) {
+            removeCredential(stub, credentialID, record, CredentialCodec.decode(record), changes);
+        } else if (record != null && record.length > 0) {
+            String errorMessage = String.format("Credential %s already exists", credentialID);
+            throw new ChaincodeException(errorMessage, CredentialTransferError.CREDENTIAL_ALREADY_EXISTS.toString());
+        }
+    }
+
+    /**
+     * Returns the version of a credential created under the ID: one past the last version of the credential
+     * deleted under it, or 1 if there was none. The kept version is removed, since the new record carries it
+     * on, so versions never repeat for an ID and a reader cannot mistake a new credential for an old one.
+     */
+    private static long nextVersion(final ChaincodeStub stub, final String credentialID) {
+        String key = deletedVersionKey(credentialID);
+        byte[] deleted = stub.getState(key);
+        if (deleted == null || deleted.length == 0) {
+            return 1;
+        }
+        stub.delState(key);
+        return Long.parseLong(new String(deleted, StandardCharsets.UTF_8)) + 1;
+    }
+
+    /**
+     * Writes the record of a credential and, unless it is kept inline, its value. A value that is
+     * already stored apart is updated in place, and one that is now kept inline has its entry removed.
+     */
+    private static void writeCredential(final ChaincodeStub stub, final Credential credential, final boolean separateValue) {
+        String credentialID = credential.getCredentialID();
+
+        if (CredentialValues.isSeparate(credential.getCredentialValue())) {
+            stub.putState(credentialID, CredentialCodec.encodeMetadata(credential));
+            if (separateValue) {
+                CredentialValues.update(stub, credentialID, credential.getCredentialValue());
+            } else {
+                CredentialValues.put(stub, credentialID, credential.getCredentialValue());
+            }
+        } else {
+            stub.putState(credentialID, CredentialCodec.encode(credential));
+            if (separateValue) {
+                CredentialValues.delete(stub, credentialID);
+            }
+        }
+    }
+
+    /**
+     * Rewrites a record that is not in the current layout, adding it to the statistics of its owner if it
+     * was not counted yet, and writes the owner index entry of a record that has none.
+     *
+     * @return whether the record was rewritten or indexed
+     */
+    private static boolean migrateCredential(final ChaincodeStub stub, final String credentialID, final byte[] record, final OwnerStats stats) {
+        if (record == null || record.length == 0) {
+            return false;
+        }
+
+        Credential credential = CredentialCodec.decode(record);
+        String credentialOwner = credential.getCredentialOwner();
+        boolean counted = CredentialCodec.isCounted(record);
+        boolean inlineValue = CredentialCodec.hasValue(record);
+        boolean rewrite = !counted || !CredentialCodec.isBinary(record) || inlineValue && CredentialValues.isSeparate(credential.getCredentialValue());
+        boolean index = credentialOwner != null && !hasOwnerIndexEntry(stub, credentialOwner, credentialID);
+        if (!rewrite && !index) {
+            return false;
+        }
+
+        if (rewrite && !inlineValue) {
+            stub.putState(credentialID, CredentialCodec.encodeMetadata(credential));
+            stats.add(credentialOwner, 1, CredentialValues.size(stub, credentialID));
+        } else if (rewrite) {
+            Credential migrated = new Credential(credentialID, credential.getCredentialName(), credentialOwner, credential.getCredentialValue(),
+                    credential.getExpiresAt(), credential.getVersion());
+            writeCredential(stub, migrated, false);
+            if (!counted) {
+                stats.add(credentialOwner, 1, OwnerStats.valueBytes(migrated.getCredentialValue()));
+            }
+        }
+        if (index) {
+            stub.putState(ownerIndexKey(credentialOwner, credentialID), INDEX_ENTRY_VALUE);
+        }
+        return true;
+    }
+
+    private static boolean hasOwnerIndexEntry(final ChaincodeStub stub, final String credentialOwner, final String credentialID) {
+        byte[] entry = stub.getState(ownerIndexKey(credentialOwner, credentialID));
+        return entry != null && entry.length > 0;
+    }
+
+    private Credential parseImportLine(final String json) {
+        try {
+            return genson.deserialize(json, Credential.class);
+        } catch (RuntimeException e) {
+            String errorMessage = String.format("Record is not valid JSON: %s", e.getMessage());
+            throw new ChaincodeException(errorMessage, CredentialTransferError.INVALID_CREDENTIAL_BATCH.toString());
+        }
+    }
+
+    private <T> T[] parseBatch(final String batchJSON, final Class<T[]> type) {
+        T[] entries;
+        try {
+            entries = genson.deserialize(batchJSON, type);
+        } catch (RuntimeException e) {
+            String errorMessage = String.format("Batch is not a valid JSON array: %s", e.getMessage());
+            throw new ChaincodeException(errorMessage, CredentialTransferError.INVALID_CREDENTIAL_BATCH.toString());
+        }
+
+        if (entries == null || entries.length == 0 || entries.length > MAX_BATCH_SIZE) {
+            String errorMessage = String.format("Batch must contain between 1 and %d entries", MAX_BATCH_SIZE);
+            throw new ChaincodeException(errorMessage, CredentialTransferError.INVALID_CREDENTIAL_BATCH.toString());
+        }
+        return entries;
+    }
+
+    private static void checkBatchEntry(final Credential credential, final Set<String> seen) {
+        if (credential == null || isBlank(credential.getCredentialOwner())) {
+            throw new ChaincodeException("Credential owner is required", CredentialTransferError.INVALID_CREDENTIAL_BATCH.toString());
+        }
+
+        checkBatchEntry(credential.getCredentialID(), seen);
+    }
+
+    private static void checkBatchEntry(final String credentialID, final Set<String> seen) {
+        if (isBlank(credentialID)) {
+            throw new ChaincodeException("Credential ID is required", CredentialTransferError.INVALID_CREDENTIAL_BATCH.toString());
+        }
+
+        if (!seen.add(credentialID)) {
+            String errorMessage = String.format("Credential %s appears more than once", credentialID);
+            throw new ChaincodeException(errorMessage, CredentialTransferError.INVALID_CREDENTIAL_BATCH.toString());
+        }
+    }
+
+    private static ChaincodeException batchEntryError(final int index, final ChaincodeException cause) {
+        String errorMessage = String.format("Entry %d: %s", index, cause.getMessage());
+        return new ChaincodeException(errorMessage, cause.getPayload());
+    }
+
+    private static Map<String, String> batchResult(final String credentialID, final String status) {
+        Map<String, String> result = new LinkedHashMap<String, String>();
+        result.put("credentialID", credentialID);
+        result.put("status", status);
+        return result;
+    }
+
+    private static boolean isBlank(final String value) {
+        return value == null || value.trim().isEmpty();
+    }
+
+    private static Credential readStoredCredential(final ChaincodeStub stub, final String credentialID) {
+        byte[] record = stub.getState(credentialID);
+        Credential credential = CredentialCodec.decode(record);
+        if (credential == null || isExpired(stub, record)) {
+            return null;
+        }
+        if (CredentialCodec.hasValue(record)) {
+            return credential;
+        }
 
-        return response;
+        return new Credential(credential.getCredentialID(), credential.getCredentialName(), credential.getCredentialOwner(),
+                CredentialValues.get(stub, credentialID), credential.getExpiresAt(), credential.getVersion());
     }
 }
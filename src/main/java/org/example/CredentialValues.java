@@ -0,0 +1,401 @@
+package org.example;
+
+import org.hyperledger.fabric.shim.ChaincodeException;
+import org.hyperledger.fabric.shim.ChaincodeStub;
+import org.hyperledger.fabric.shim.ledger.CompositeKey;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Stores credential values apart from the credential records.
+ *
+ * A record written without a value field keeps its value under a composite key of its own, so listings,
+ * summaries and existence checks never read the value bytes. Composite keys start with a null character,
+ * which keeps the value entries out of simple range scans over credential IDs.
+ *
+ * A value entry starts with a tag byte. Values up to {@value #CHUNK_SIZE} bytes follow the tag inline.
+ * Larger values are cut into chunks of {@value #CHUNK_SIZE} bytes, each stored under the SHA-256 hash of
+ * its content, and the entry holds the manifest: the total length followed by the hashes of the chunks in
+ * order. Identical chunks are stored once, whichever credentials they belong to, and an update writes only
+ * the chunks its previous manifest did not reference. Next to each chunk is the number of manifests that
+ * reference it; a chunk is written when the count goes up from zero and deleted when it drops back to zero,
+ * so deleting or updating one credential never removes a chunk another one still needs. Credentials that
+ * share a chunk write the same count, so transactions adding or dropping them at once conflict on it.
+ *
+ * Values of private credentials are kept in a private data collection under the credential ID, and
+ * their entry holds only the SHA-256 hash and length of the value and the name of the collection, so the
+ * value never reaches a block. Clients pass such values, and may pass them again when reading from a
+ * peer outside the collection, in the {@value #TRANSIENT_VALUE} transient field, or in a field named after
+ * the credential (see {@link #transientField}) when a transaction handles several private credentials.
+ *
+ * Empty values are kept inline in the record because the peer treats an empty state value as a delete.
+ */
+final class CredentialValues {
+
+    /**
+     * Object type of the composite keys the values are stored under.
+     */
+    static final String VALUE_KEY_TYPE = "credential~value";
+
+    /**
+     * Object type of the composite keys the chunks of large values are stored under.
+     */
+    static final String CHUNK_KEY_TYPE = "credential~chunk";
+
+    /**
+     * Object type of the composite keys the reference counts of the chunks are stored under.
+     */
+    static final String CHUNK_REFS_KEY_TYPE = "credential~chunkrefs";
+
+    /**
+     * Size of the chunks of large values, and the largest value stored inline in its entry.
+     */
+    static final int CHUNK_SIZE = 16 * 1024;
+
+    /**
+     * Transient field that carries the values of private credentials.
+     */
+    static final String TRANSIENT_VALUE = "credentialValue";
+
+    private static final byte INLINE = 0;
+    private static final byte MANIFEST = 1;
+    private static final byte PRIVATE = 2;
+
+    private static final int HASH_SIZE = 32;
+
+    private CredentialValues() {
+    }
+
+    /**
+     * Builds the key under which the value of a credential is stored.
+     *
+     * @param credentialID the ID of the credential
+     * @return the composite key of the value
+     */
+    static String key(final String credentialID) {
+        return new CompositeKey(VALUE_KEY_TYPE, credentialID).toString();
+    }
+
+    /**
+     * Builds the key under which a chunk of large values is stored.
+     *
+     * @param hash the SHA-256 hash of the chunk, in hexadecimal
+     * @return the composite key of the chunk
+     */
+    static String chunkKey(final String hash) {
+        return new CompositeKey(CHUNK_KEY_TYPE, hash).toString();
+    }
+
+    /**
+     * Builds the key under which the number of manifests referencing a chunk is stored.
+     *
+     * @param hash the SHA-256 hash of the chunk, in hexadecimal
+     * @return the composite key of the reference count
+     */
+    static String chunkRefsKey(final String hash) {
+        return new CompositeKey(CHUNK_REFS_KEY_TYPE, hash).toString();
+    }
+
+    /**
+     * Tells whether a value is stored apart from its record.
+     *
+     * @param credentialValue the value of the credential
+     * @return true if the value gets an entry of its own
+     */
+    static boolean isSeparate(final String credentialValue) {
+        return credentialValue != null && !credentialValue.isEmpty();
+    }
+
+    /**
+     * Writes the value of a new credential.
+     *
+     * @param stub            the stub of the transaction
+     * @param credentialID    the ID of the credential
+     * @param credentialValue the value, which must not be empty
+     */
+    static void put(final ChaincodeStub stub, final String credentialID, final String credentialValue) {
+        write(stub, credentialID, credentialValue, null);
+    }
+
+    /**
+     * Replaces the value of a credential whose value is already stored apart.
+     *
+     * Nothing is written if the value did not change. Otherwise only the reference counts of chunks that
+     * were added to or dropped from the manifest change, and only chunks no credential holds yet are written.
+     *
+     * @param stub            the stub of the transaction
+     * @param credentialID    the ID of the credential
+     * @param credentialValue the new value, which must not be empty
+     */
+    static void update(final ChaincodeStub stub, final String credentialID, final String credentialValue) {
+        write(stub, credentialID, credentialValue, stub.getState(key(credentialID)));
+    }
+
+    /**
+     * Writes the value of a credential to a private data collection and its hash to the world state.
+     *
+     * @param stub            the stub of the transaction
+     * @param credentialID    the ID of the credential
+     * @param collection      the private data collection the value is stored in
+     * @param credentialValue the value, which must not be empty
+     */
+    static void putPrivate(final ChaincodeStub stub, final String credentialID, final String collection, final String credentialValue) {
+        byte[] value = credentialValue.getBytes(StandardCharsets.UTF_8);
+        byte[] name = collection.getBytes(StandardCharsets.UTF_8);
+
+        ByteBuffer entry = ByteBuffer.allocate(1 + HASH_SIZE + Integer.BYTES + name.length);
+        entry.put(PRIVATE).put(sha256().digest(value)).putInt(value.length).put(name);
+
+        stub.putPrivateData(collection, credentialID, value);
+        stub.putState(key(credentialID), entry.array());
+    }
+
+    /**
+     * Returns the private data collection the value of a credential is stored in.
+     *
+     * @param stub         the stub of the transaction
+     * @param credentialID the ID of the credential
+     * @return the name of the collection, or null if the value is on the world state
+     */
+    static String getCollection(final ChaincodeStub stub, final String credentialID) {
+        return collection(stub.getState(key(credentialID)));
+    }
+
+    /**
+     * Returns the size of the value of a credential whose record has no value field, without reading
+     * its chunks or its private data.
+     *
+     * @param stub         the stub of the transaction
+     * @param credentialID the ID of the credential
+     * @return the length of the UTF-8 encoding of the value, or zero if the credential has none
+     */
+    static long size(final ChaincodeStub stub, final String credentialID) {
+        byte[] entry = stub.getState(key(credentialID));
+        if (entry == null || entry.length == 0) {
+            return 0;
+        }
+
+        if (entry[0] == INLINE) {
+            return entry.length - 1;
+        }
+        return ByteBuffer.wrap(entry).getInt(entry[0] == PRIVATE ? 1 + HASH_SIZE : 1);
+    }
+
+    /**
+     * Builds the name of the transient field that carries the value of one private credential, for
+     * transactions that handle several of them.
+     *
+     * @param credentialID the ID of the credential
+     * @return {@value #TRANSIENT_VALUE} followed by a slash and the credential ID
+     */
+    static String transientField(final String credentialID) {
+        return TRANSIENT_VALUE + "/" + credentialID;
+    }
+
+    /**
+     * Returns the value passed in a transient field.
+     *
+     * @param stub  the stub of the transaction
+     * @param field the name of the field
+     * @return the value, or null if none was passed
+     */
+    static String getTransient(final ChaincodeStub stub, final String field) {
+        Map<String, byte[]> transientData = stub.getTransient();
+        byte[] value = transientData == null ? null : transientData.get(field);
+        if (value == null || value.length == 0) {
+            return null;
+        }
+        return new String(value, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Reads the value of a credential whose record has no value field, reassembling it from its chunks
+     * if it is large.
+     *
+     * The value of a private credential is taken from the transient field of the credential or the
+     * {@value #TRANSIENT_VALUE} field if it matches the stored hash, and read from its collection otherwise.
+     *
+     * @param stub         the stub of the transaction
+     * @param credentialID the ID of the credential
+     * @return the value, or null if the credential has none
+     */
+    static String get(final ChaincodeStub stub, final String credentialID) {
+        byte[] entry = stub.getState(key(credentialID));
+        if (entry == null || entry.length == 0) {
+            return null;
+        }
+
+        if (entry[0] == INLINE) {
+            return new String(entry, 1, entry.length - 1, StandardCharsets.UTF_8);
+        }
+        if (entry[0] == PRIVATE) {
+            return getPrivate(stub, credentialID, entry);
+        }
+
+        ByteBuffer manifest = ByteBuffer.wrap(entry, 1, entry.length - 1);
+        byte[] value = new byte[manifest.getInt()];
+        byte[] hash = new byte[HASH_SIZE];
+        for (int offset = 0; offset < value.length; offset += CHUNK_SIZE) {
+            manifest.get(hash);
+            byte[] chunk = stub.getState(chunkKey(hex(hash)));
+            if (chunk == null || chunk.length != Math.min(CHUNK_SIZE, value.length - offset)) {
+                String errorMessage = String.format("Value of credential %s is missing chunk %s", credentialID, hex(hash));
+                throw new ChaincodeException(errorMessage);
+            }
+            System.arraycopy(chunk, 0, value, offset, chunk.length);
+        }
+        return new String(value, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Removes the value entry of a credential, releasing its chunks, and the value itself if it is kept in
+     * a collection.
+     *
+     * @param stub         the stub of the transaction
+     * @param credentialID the ID of the credential
+     */
+    static void delete(final ChaincodeStub stub, final String credentialID) {
+        byte[] entry = stub.getState(key(credentialID));
+        String collection = collection(entry);
+        if (collection != null) {
+            stub.delPrivateData(collection, credentialID);
+        }
+        release(stub, chunkHashes(entry));
+        stub.delState(key(credentialID));
+    }
+
+    private static String getPrivate(final ChaincodeStub stub, final String credentialID, final byte[] entry) {
+        byte[] hash = Arrays.copyOfRange(entry, 1, 1 + HASH_SIZE);
+
+        for (String field : new String[] {transientField(credentialID), TRANSIENT_VALUE}) {
+            String transientValue = getTransient(stub, field);
+            if (transientValue != null && Arrays.equals(hash, sha256().digest(transientValue.getBytes(StandardCharsets.UTF_8)))) {
+                return transientValue;
+            }
+        }
+
+        byte[] value = stub.getPrivateData(collection(entry), credentialID);
+        if (value == null || value.length == 0) {
+            return null;
+        }
+        if (!Arrays.equals(hash, sha256().digest(value))) {
+            String errorMessage = String.format("Private value of credential %s does not match its hash", credentialID);
+            throw new ChaincodeException(errorMessage);
+        }
+        return new String(value, StandardCharsets.UTF_8);
+    }
+
+    private static String collection(final byte[] entry) {
+        if (entry == null || entry.length == 0 || entry[0] != PRIVATE) {
+            return null;
+        }
+        int offset = 1 + HASH_SIZE + Integer.BYTES;
+        return new String(entry, offset, entry.length - offset, StandardCharsets.UTF_8);
+    }
+
+    private static void write(final ChaincodeStub stub, final String credentialID, final String credentialValue, final byte[] previous) {
+        byte[] value = credentialValue.getBytes(StandardCharsets.UTF_8);
+        Set<String> released = chunkHashes(previous);
+
+        if (value.length <= CHUNK_SIZE) {
+            byte[] entry = new byte[1 + value.length];
+            entry[0] = INLINE;
+            System.arraycopy(value, 0, entry, 1, value.length);
+            if (!Arrays.equals(entry, previous)) {
+                stub.putState(key(credentialID), entry);
+            }
+            release(stub, released);
+            return;
+        }
+
+        Set<String> hashes = new HashSet<String>();
+        int chunks = (value.length + CHUNK_SIZE - 1) / CHUNK_SIZE;
+        ByteBuffer manifest = ByteBuffer.allocate(1 + Integer.BYTES + chunks * HASH_SIZE);
+        manifest.put(MANIFEST).putInt(value.length);
+
+        MessageDigest digest = sha256();
+        for (int offset = 0; offset < value.length; offset += CHUNK_SIZE) {
+            byte[] chunk = Arrays.copyOfRange(value, offset, Math.min(offset + CHUNK_SIZE, value.length));
+            byte[] hash = digest.digest(chunk);
+            manifest.put(hash);
+            String chunkHash = hex(hash);
+            if (hashes.add(chunkHash) && !released.remove(chunkHash)) {
+                reference(stub, chunkHash, chunk);
+            }
+        }
+
+        if (!Arrays.equals(manifest.array(), previous)) {
+            stub.putState(key(credentialID), manifest.array());
+        }
+        release(stub, released);
+    }
+
+    /**
+     * Adds a reference to a chunk, writing the chunk if nothing referenced it yet.
+     */
+    private static void reference(final ChaincodeStub stub, final String hash, final byte[] chunk) {
+        long refs = refs(stub, hash);
+        if (refs == 0) {
+            stub.putState(chunkKey(hash), chunk);
+        }
+        stub.putState(chunkRefsKey(hash), ByteBuffer.allocate(Long.BYTES).putLong(refs + 1).array());
+    }
+
+    /**
+     * Drops a reference to each of the given chunks, deleting those that nothing references any more.
+     */
+    private static void release(final ChaincodeStub stub, final Set<String> hashes) {
+        for (String hash : hashes) {
+            long refs = refs(stub, hash);
+            if (refs > 1) {
+                stub.putState(chunkRefsKey(hash), ByteBuffer.allocate(Long.BYTES).putLong(refs - 1).array());
+            } else {
+                stub.delState(chunkKey(hash));
+                stub.delState(chunkRefsKey(hash));
+            }
+        }
+    }
+
+    private static long refs(final ChaincodeStub stub, final String hash) {
+        byte[] refs = stub.getState(chunkRefsKey(hash));
+        return refs == null || refs.length != Long.BYTES ? 0 : ByteBuffer.wrap(refs).getLong();
+    }
+
+    private static Set<String> chunkHashes(final byte[] entry) {
+        Set<String> hashes = new HashSet<String>();
+        if (entry == null || entry.length == 0 || entry[0] != MANIFEST) {
+            return hashes;
+        }
+
+        ByteBuffer manifest = ByteBuffer.wrap(entry, 1 + Integer.BYTES, entry.length - 1 - Integer.BYTES);
+        byte[] hash = new byte[HASH_SIZE];
+        while (manifest.remaining() >= HASH_SIZE) {
+            manifest.get(hash);
+            hashes.add(hex(hash));
+        }
+        return hashes;
+    }
+
+    private static MessageDigest sha256() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 is not available", e);
+        }
+    }
+
+    private static String hex(final byte[] bytes) {
+        StringBuilder hex = new StringBuilder(bytes.length * 2);
+        for (byte b : bytes) {
+            hex.append(Character.forDigit((b >> 4) & 0xf, 16)).append(Character.forDigit(b & 0xf, 16));
+        }
+        return hex.toString();
+    }
+}
@@ -3,6 +3,11 @@ package org.example.Enums;
 public enum CredentialTransferError {
     CREDENTIAL_ALREADY_EXISTS,
     CREDENTIAL_NOT_FOUND,
-    CREDENTIAL_NOT_OWNED_BY_INITIATOR
+    CREDENTIAL_NOT_OWNED_BY_INITIATOR,
+    INVALID_PAGE_SIZE,
+    INVALID_CREDENTIAL_BATCH,
+    CREDENTIAL_VALUE_MISSING,
+    CREDENTIAL_VERSION_MISMATCH,
+    INVALID_ARGUMENT
 
 }
@@ -0,0 +1,119 @@
+package org.example;
+
+import org.example.Enums.CredentialTransferError;
+import org.hyperledger.fabric.shim.ChaincodeException;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * Reads the lines of a base64 encoded, gzip-compressed import payload.
+ *
+ * The payload is decompressed as lines are read, and both the decompressed size and the length of a
+ * line are capped in bytes, so a payload that inflates far beyond its compressed size, or a single
+ * huge line, is rejected after at most the cap has been read instead of exhausting the heap.
+ */
+final class ImportPayloadReader implements Closeable {
+
+    private final InputStream in;
+
+    private final long maxBytes;
+
+    private final int maxLineBytes;
+
+    private final ByteArrayOutputStream line = new ByteArrayOutputStream();
+
+    private long bytesRead;
+
+    /**
+     * Opens a payload.
+     *
+     * @param payload      base64 encoding of the gzip-compressed payload
+     * @param maxBytes     the maximum number of bytes the payload may decompress to
+     * @param maxLineBytes the maximum number of bytes of a line, without its line break
+     * @throws IOException if the payload does not start with a gzip header
+     */
+    ImportPayloadReader(final String payload, final long maxBytes, final int maxLineBytes) throws IOException {
+        this.in = new BufferedInputStream(new GZIPInputStream(
+                Base64.getDecoder().wrap(new ByteArrayInputStream(payload.getBytes(StandardCharsets.US_ASCII)))));
+        this.maxBytes = maxBytes;
+        this.maxLineBytes = maxLineBytes;
+    }
+
+    /**
+     * Reads the next line, without its line break.
+     *
+     * @return the line, or null at the end of the payload
+     * @throws IOException if the payload is not valid base64 encoded gzip data
+     */
+    String readLine() throws IOException {
+        line.reset();
+        int b = read();
+        if (b == -1) {
+            return null;
+        }
+        while (b != -1 && b != '\n') {
+            if (line.size() == maxLineBytes) {
+                String errorMessage = String.format("Line is longer than %d bytes", maxLineBytes);
+                throw new ChaincodeException(errorMessage, CredentialTransferError.INVALID_CREDENTIAL_BATCH.toString());
+            }
+            line.write(b);
+            b = read();
+        }
+
+        byte[] bytes = line.toByteArray();
+        int length = bytes.length > 0 && bytes[bytes.length - 1] == '\r' ? bytes.length - 1 : bytes.length;
+        return new String(bytes, 0, length, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Skips blank lines and tells whether a line with content follows, without consuming it.
+     *
+     * @return true if a line that is not blank is left
+     * @throws IOException if the payload is not valid base64 encoded gzip data
+     */
+    boolean hasMoreLines() throws IOException {
+        while (true) {
+            in.mark(1);
+            int b = read();
+            if (b == -1) {
+                return false;
+            }
+            if (b > ' ') {
+                in.reset();
+                bytesRead--;
+                return true;
+            }
+        }
+    }
+
+    /**
+     * Returns the number of decompressed bytes read so far.
+     *
+     * @return the number of bytes
+     */
+    long getBytesRead() {
+        return bytesRead;
+    }
+
+    @Override
+    public void close() throws IOException {
+        in.close();
+    }
+
+    private int read() throws IOException {
+        int b = in.read();
+        if (b != -1 && ++bytesRead > maxBytes) {
+            String errorMessage = String.format("Payload is larger than %d bytes when decompressed", maxBytes);
+            throw new ChaincodeException(errorMessage, CredentialTransferError.INVALID_CREDENTIAL_BATCH.toString());
+        }
+        return b;
+    }
+}
@@ -0,0 +1,120 @@
+package org.example;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Growing UTF-8 buffer for assembling JSON responses from already encoded fragments.
+ *
+ * Listing transactions copy stored credential JSON into the buffer as it is read from the ledger,
+ * so a response never exists both as a list of objects and as its serialized form.
+ */
+final class JsonBuffer {
+
+    private static final int INITIAL_CAPACITY = 1024;
+
+    private static final char[] HEX_DIGITS = "0123456789abcdef".toCharArray();
+
+    private final ByteArrayOutputStream out = new ByteArrayOutputStream(INITIAL_CAPACITY);
+
+    /**
+     * Appends JSON text that is already encoded, such as structural characters or a stored record.
+     *
+     * @param json the encoded JSON text
+     * @return this buffer
+     */
+    JsonBuffer raw(final String json) {
+        return raw(json.getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Appends UTF-8 encoded JSON without copying it into an intermediate string.
+     *
+     * @param json the encoded JSON bytes
+     * @return this buffer
+     */
+    JsonBuffer raw(final byte[] json) {
+        out.write(json, 0, json.length);
+        return this;
+    }
+
+    /**
+     * Appends a number.
+     *
+     * @param value the number
+     * @return this buffer
+     */
+    JsonBuffer number(final long value) {
+        return raw(Long.toString(value));
+    }
+
+    /**
+     * Appends a quoted string, escaped the same way Genson escapes it, or null.
+     *
+     * @param value the string
+     * @return this buffer
+     */
+    JsonBuffer string(final String value) {
+        if (value == null) {
+            return raw("null");
+        }
+
+        StringBuilder quoted = new StringBuilder(value.length() + 2).append('"');
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            switch (c) {
+                case '"':
+                    quoted.append("\\\"");
+                    break;
+                case '\\':
+                    quoted.append("\\\\");
+                    break;
+                case '\b':
+                    quoted.append("\\b");
+                    break;
+                case '\f':
+                    quoted.append("\\f");
+                    break;
+                case '\n':
+                    quoted.append("\\n");
+                    break;
+                case '\r':
+                    quoted.append("\\r");
+                    break;
+                case '\t':
+                    quoted.append("\\t");
+                    break;
+                default:
+                    if (c < 0x20) {
+                        quoted.append("\\u00").append(HEX_DIGITS[c >> 4]).append(HEX_DIGITS[c & 0xF]);
+                    } else {
+                        quoted.append(c);
+                    }
+            }
+        }
+        return raw(quoted.append('"').toString());
+    }
+
+    /**
+     * Returns the number of bytes written so far.
+     *
+     * @return the size of the buffer
+     */
+    int size() {
+        return out.size();
+    }
+
+    /**
+     * Returns the UTF-8 bytes written so far.
+     *
+     * @return a copy of the buffer
+     */
+    byte[] toByteArray() {
+        return out.toByteArray();
+    }
+
+    @Override
+    public String toString() {
+        return out.toString(StandardCharsets.UTF_8);
+    }
+}
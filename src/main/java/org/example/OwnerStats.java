@@ -0,0 +1,111 @@
+package org.example;
+
+import org.hyperledger.fabric.shim.ChaincodeStub;
+import org.hyperledger.fabric.shim.ledger.CompositeKey;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Number of credentials and bytes of credential values held by each owner, kept as deltas.
+ *
+ * A single counter per owner would be read and written by every transaction that changes one of the
+ * owner's credentials, so concurrent transactions of the same owner would fail MVCC validation. Instead,
+ * each transaction writes the net change per owner under a key of its own, built from the owner and the
+ * transaction ID, and never reads the deltas of other transactions. The statistics of an owner are the
+ * sum of its deltas, which compaction folds into a single entry from time to time.
+ *
+ * A delta entry holds the change in the number of credentials followed by the change in value bytes,
+ * each as a big-endian long.
+ *
+ * Records written since the statistics were introduced are marked as counted (see
+ * {@link CredentialCodec#isCounted}). Older records are added once, when {@code MigrateCredentials}
+ * marks them, and updates and deletes take a record out of the statistics only if it was counted, so the
+ * totals never go below zero while the migration runs.
+ */
+final class OwnerStats {
+
+    /**
+     * Object type of the composite keys the deltas are stored under.
+     */
+    static final String STAT_KEY_TYPE = "owner~stat";
+
+    private static final int ENTRY_SIZE = 2 * Long.BYTES;
+
+    private final Map<String, long[]> deltas = new TreeMap<String, long[]>();
+
+    /**
+     * Builds the key under which a transaction stores its delta for an owner.
+     *
+     * @param credentialOwner the owner
+     * @param txID            the ID of the transaction
+     * @return the composite key of the delta
+     */
+    static String key(final String credentialOwner, final String txID) {
+        return new CompositeKey(STAT_KEY_TYPE, credentialOwner, txID).toString();
+    }
+
+    /**
+     * Encodes a delta entry.
+     *
+     * @param credentials the change in the number of credentials
+     * @param bytes       the change in value bytes
+     * @return the entry
+     */
+    static byte[] encode(final long credentials, final long bytes) {
+        return ByteBuffer.allocate(ENTRY_SIZE).putLong(credentials).putLong(bytes).array();
+    }
+
+    /**
+     * Decodes a delta entry.
+     *
+     * @param entry the entry
+     * @return the change in the number of credentials and in value bytes
+     */
+    static long[] decode(final byte[] entry) {
+        ByteBuffer buffer = ByteBuffer.wrap(entry);
+        return new long[] {buffer.getLong(), buffer.getLong()};
+    }
+
+    /**
+     * Returns the size a value is counted with.
+     *
+     * @param credentialValue the value, or null
+     * @return the length of its UTF-8 encoding
+     */
+    static long valueBytes(final String credentialValue) {
+        return credentialValue == null ? 0 : credentialValue.getBytes(StandardCharsets.UTF_8).length;
+    }
+
+    /**
+     * Adds a change to the delta of an owner.
+     *
+     * @param credentialOwner the owner, or null for records without one
+     * @param credentials     the change in the number of credentials
+     * @param bytes           the change in value bytes
+     */
+    void add(final String credentialOwner, final long credentials, final long bytes) {
+        if (credentialOwner == null) {
+            return;
+        }
+        long[] delta = deltas.computeIfAbsent(credentialOwner, owner -> new long[2]);
+        delta[0] += credentials;
+        delta[1] += bytes;
+    }
+
+    /**
+     * Writes one delta entry per owner whose statistics changed in the transaction.
+     *
+     * @param stub the stub of the transaction
+     */
+    void write(final ChaincodeStub stub) {
+        for (Map.Entry<String, long[]> delta : deltas.entrySet()) {
+            long[] change = delta.getValue();
+            if (change[0] != 0 || change[1] != 0) {
+                stub.putState(key(delta.getKey(), stub.getTxId()), encode(change[0], change[1]));
+            }
+        }
+    }
+}
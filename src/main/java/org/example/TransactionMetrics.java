@@ -0,0 +1,121 @@
+package org.example;
+
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Latency, peer call, serialization and result size statistics per transaction name.
+ *
+ * Recording is switched on by the {@code CHAINCODE_METRICS_ENABLED} environment variable, the same one
+ * that enables the metrics of the chaincode shim, or when {@link CredentialMetricsProvider} is loaded.
+ */
+final class TransactionMetrics {
+
+    static final String ENABLED_VARIABLE = "CHAINCODE_METRICS_ENABLED";
+
+    private static final TransactionMetrics INSTANCE = new TransactionMetrics();
+
+    private static volatile boolean enabled = Boolean.parseBoolean(System.getenv(ENABLED_VARIABLE));
+
+    private final ConcurrentMap<String, Stats> transactions = new ConcurrentHashMap<String, Stats>();
+
+    static TransactionMetrics getInstance() {
+        return INSTANCE;
+    }
+
+    static boolean isEnabled() {
+        return enabled;
+    }
+
+    static void setEnabled(final boolean value) {
+        enabled = value;
+    }
+
+    /**
+     * Records a completed transaction.
+     *
+     * @param transaction the name of the transaction function
+     * @param timer       the timer of the transaction
+     * @param resultSize  the size of the result in characters
+     */
+    void record(final String transaction, final TransactionTimer timer, final long resultSize) {
+        Stats stats = transactions.computeIfAbsent(String.valueOf(transaction), name -> new Stats());
+        stats.latency.record(timer.getElapsedNanos());
+        stats.stub.record(timer.getStubNanos());
+        stats.serialization.record(timer.getSerializationNanos());
+        stats.stubCalls.add(timer.getStubCalls());
+        stats.resultSize.add(resultSize);
+    }
+
+    /**
+     * Returns the statistics of a transaction.
+     *
+     * @param transaction the name of the transaction function
+     * @return the statistics, or null if the transaction has not completed yet
+     */
+    Stats get(final String transaction) {
+        return transactions.get(transaction);
+    }
+
+    /**
+     * Returns one line per transaction, sorted by name.
+     *
+     * @return the summary
+     */
+    String summary() {
+        StringBuilder summary = new StringBuilder();
+        for (Map.Entry<String, Stats> entry : new TreeMap<String, Stats>(transactions).entrySet()) {
+            if (summary.length() > 0) {
+                summary.append(System.lineSeparator());
+            }
+            summary.append(entry.getKey()).append(' ').append(entry.getValue());
+        }
+        return summary.toString();
+    }
+
+    /**
+     * Statistics of one transaction function.
+     */
+    static final class Stats {
+
+        private final LatencyHistogram latency = new LatencyHistogram();
+
+        private final LatencyHistogram stub = new LatencyHistogram();
+
+        private final LatencyHistogram serialization = new LatencyHistogram();
+
+        private final LongAdder stubCalls = new LongAdder();
+
+        private final LongAdder resultSize = new LongAdder();
+
+        LatencyHistogram getLatency() {
+            return latency;
+        }
+
+        LatencyHistogram getStub() {
+            return stub;
+        }
+
+        LatencyHistogram getSerialization() {
+            return serialization;
+        }
+
+        long getStubCalls() {
+            return stubCalls.sum();
+        }
+
+        long getResultSize() {
+            return resultSize.sum();
+        }
+
+        @Override
+        public String toString() {
+            long count = latency.getCount();
+            return String.format("count=%d latency[%s] stub[%s] calls/tx=%d serialization[%s] result/tx=%dB",
+                    count, latency, stub, count == 0 ? 0 : stubCalls.sum() / count, serialization, count == 0 ? 0 : resultSize.sum() / count);
+        }
+    }
+}
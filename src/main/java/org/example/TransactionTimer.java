@@ -0,0 +1,92 @@
+package org.example;
+
+/**
+ * Accumulates where the time of the transaction running on the current thread goes.
+ *
+ * The contract starts a timer before each transaction when metrics are enabled. Code on the hot path
+ * reports stub calls and serialization through the static methods, which do nothing when no timer is
+ * running, so the cost with metrics disabled is a thread-local lookup.
+ */
+final class TransactionTimer {
+
+    private static final ThreadLocal<TransactionTimer> CURRENT = new ThreadLocal<TransactionTimer>();
+
+    private final long startNanos = System.nanoTime();
+
+    private long stubNanos;
+
+    private int stubCalls;
+
+    private long serializationNanos;
+
+    private TransactionTimer() {
+    }
+
+    /**
+     * Starts timing a transaction on the current thread, discarding the timer of a failed previous one.
+     */
+    static void start() {
+        CURRENT.set(new TransactionTimer());
+    }
+
+    /**
+     * Stops timing the transaction on the current thread.
+     *
+     * @return the timer of the transaction, or null if none was started
+     */
+    static TransactionTimer stop() {
+        TransactionTimer timer = CURRENT.get();
+        CURRENT.remove();
+        return timer;
+    }
+
+    /**
+     * Returns the start time of a measured section.
+     *
+     * @return the current time, or zero if no transaction is being timed
+     */
+    static long begin() {
+        return CURRENT.get() == null ? 0 : System.nanoTime();
+    }
+
+    /**
+     * Records a call to the peer that started at the given time.
+     *
+     * @param start the value returned by {@link #begin()}
+     */
+    static void stubCall(final long start) {
+        TransactionTimer timer = CURRENT.get();
+        if (timer != null && start != 0) {
+            timer.stubNanos += System.nanoTime() - start;
+            timer.stubCalls++;
+        }
+    }
+
+    /**
+     * Records encoding or decoding work that started at the given time.
+     *
+     * @param start the value returned by {@link #begin()}
+     */
+    static void serialization(final long start) {
+        TransactionTimer timer = CURRENT.get();
+        if (timer != null && start != 0) {
+            timer.serializationNanos += System.nanoTime() - start;
+        }
+    }
+
+    long getElapsedNanos() {
+        return System.nanoTime() - startNanos;
+    }
+
+    long getStubNanos() {
+        return stubNanos;
+    }
+
+    int getStubCalls() {
+        return stubCalls;
+    }
+
+    long getSerializationNanos() {
+        return serializationNanos;
+    }
+}
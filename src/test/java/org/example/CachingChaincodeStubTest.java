@@ -0,0 +1,117 @@
+package org.example;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import org.hyperledger.fabric.shim.ChaincodeStub;
+import org.hyperledger.fabric.shim.ledger.KeyValue;
+import org.hyperledger.fabric.shim.ledger.QueryResultsIterator;
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+
+public final class CachingChaincodeStubTest {
+
+    @Test
+    public void readsEachKeyFromThePeerOnce() {
+        ChaincodeStub peer = mock(ChaincodeStub.class);
+        when(peer.getState("credential1")).thenReturn("value".getBytes());
+        CachingChaincodeStub stub = new CachingChaincodeStub(peer);
+
+        assertThat(stub.getState("credential1")).isEqualTo("value".getBytes());
+        assertThat(stub.getStringState("credential1")).isEqualTo("value");
+
+        verify(peer, times(1)).getState("credential1");
+    }
+
+    @Test
+    public void cachesMissingKeys() {
+        ChaincodeStub peer = mock(ChaincodeStub.class);
+        CachingChaincodeStub stub = new CachingChaincodeStub(peer);
+
+        assertThat(stub.getState("credential1")).isNull();
+        assertThat(stub.getState("credential1")).isNull();
+
+        verify(peer, times(1)).getState("credential1");
+    }
+
+    @Test
+    public void readsItsOwnWrites() {
+        ChaincodeStub peer = mock(ChaincodeStub.class);
+        CachingChaincodeStub stub = new CachingChaincodeStub(peer);
+
+        stub.putState("credential1", "value".getBytes());
+
+        assertThat(stub.getState("credential1")).isEqualTo("value".getBytes());
+        verify(peer).putState("credential1", "value".getBytes());
+        verify(peer, never()).getState(anyString());
+    }
+
+    @Test
+    public void readsItsOwnDeletes() {
+        ChaincodeStub peer = mock(ChaincodeStub.class);
+        when(peer.getState("credential1")).thenReturn("value".getBytes());
+        CachingChaincodeStub stub = new CachingChaincodeStub(peer);
+
+        stub.getState("credential1");
+        stub.delState("credential1");
+
+        assertThat(stub.getState("credential1")).isNull();
+        verify(peer).delState("credential1");
+        verify(peer, times(1)).getState("credential1");
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void keepsReadsDuringAScanOnlyForTheCurrentEntry() throws Exception {
+        ChaincodeStub peer = mock(ChaincodeStub.class);
+        QueryResultsIterator<KeyValue> results = mock(QueryResultsIterator.class);
+        when(results.iterator()).thenReturn(Arrays.asList(mock(KeyValue.class), mock(KeyValue.class)).iterator());
+        when(peer.getStateByRange("", "")).thenReturn(results);
+        when(peer.getState("credential1")).thenReturn("value".getBytes());
+        CachingChaincodeStub stub = new CachingChaincodeStub(peer);
+
+        try (QueryResultsIterator<KeyValue> scan = stub.getStateByRange("", "")) {
+            for (KeyValue entry : scan) {
+                stub.getState("credential1");
+                stub.getState("credential1");
+            }
+        }
+        stub.getState("credential1");
+        stub.getState("credential1");
+
+        verify(peer, times(3)).getState("credential1");
+        verify(results).close();
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void keepsWritesMadeDuringAScan() throws Exception {
+        ChaincodeStub peer = mock(ChaincodeStub.class);
+        QueryResultsIterator<KeyValue> results = mock(QueryResultsIterator.class);
+        when(peer.getStateByRange("", "")).thenReturn(results);
+        CachingChaincodeStub stub = new CachingChaincodeStub(peer);
+
+        try (QueryResultsIterator<KeyValue> scan = stub.getStateByRange("", "")) {
+            stub.putState("credential1", "value".getBytes());
+        }
+
+        assertThat(stub.getState("credential1")).isEqualTo("value".getBytes());
+        verify(peer, never()).getState(anyString());
+    }
+
+    @Test
+    public void delegatesEverythingElse() {
+        ChaincodeStub peer = mock(ChaincodeStub.class);
+        when(peer.getTxId()).thenReturn("tx1");
+        CachingChaincodeStub stub = new CachingChaincodeStub(peer);
+
+        assertThat(stub.getTxId()).isEqualTo("tx1");
+        assertThat(stub.getDelegate()).isSameAs(peer);
+    }
+}
@@ -0,0 +1,175 @@
+package org.example;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.ThrowableAssert.catchThrowable;
+
+import org.hyperledger.fabric.shim.ChaincodeServerProperties;
+import org.junit.jupiter.api.Nested;
+import org.junit.jupiter.api.Test;
+
+import java.net.InetSocketAddress;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+
+public final class ChaincodeServerSettingsTest {
+
+    private final Map<String, String> env = new HashMap<String, String>();
+
+    private ChaincodeServerSettings settings() {
+        env.putIfAbsent(ChaincodeServerSettings.CHAINCODE_ID_VARIABLE, "credentials:1");
+        return new ChaincodeServerSettings(env);
+    }
+
+    @Nested
+    class ServerSettings {
+
+        @Test
+        public void listensOnTheDefaultAddress() {
+            ChaincodeServerProperties properties = settings().toServerProperties();
+
+            assertThat(properties.getServerAddress()).isEqualTo(new InetSocketAddress("0.0.0.0", 9999));
+            assertThat(properties.isTlsEnabled()).isFalse();
+        }
+
+        @Test
+        public void readsTheGrpcSettings() {
+            env.put(ChaincodeServerSettings.SERVER_ADDRESS_VARIABLE, "127.0.0.1:7052");
+            env.put(ChaincodeServerSettings.MAX_INBOUND_MESSAGE_SIZE_VARIABLE, "1048576");
+            env.put(ChaincodeServerSettings.KEEPALIVE_TIMEOUT_VARIABLE, "30");
+            env.put(ChaincodeServerSettings.PERMIT_KEEPALIVE_WITHOUT_CALLS_VARIABLE, "false");
+
+            ChaincodeServerProperties properties = settings().toServerProperties();
+
+            assertThat(properties.getServerAddress()).isEqualTo(new InetSocketAddress("127.0.0.1", 7052));
+            assertThat(properties.getMaxInboundMessageSize()).isEqualTo(1048576);
+            assertThat(properties.getKeepAliveTimeoutSeconds()).isEqualTo(30);
+            assertThat(properties.getPermitKeepAliveWithoutCalls()).isFalse();
+        }
+
+        @Test
+        public void enablesTlsWithAKeyAndCertificate() {
+            env.put(ChaincodeServerSettings.TLS_KEY_FILE_VARIABLE, "/certs/key.pem");
+            env.put(ChaincodeServerSettings.TLS_CERT_FILE_VARIABLE, "/certs/cert.pem");
+
+            ChaincodeServerProperties properties = settings().toServerProperties();
+
+            assertThat(properties.isTlsEnabled()).isTrue();
+            assertThat(properties.getKeyFile()).isEqualTo("/certs/key.pem");
+            assertThat(properties.getKeyCertChainFile()).isEqualTo("/certs/cert.pem");
+        }
+
+        @Test
+        public void rejectsAKeyWithoutACertificate() {
+            env.put(ChaincodeServerSettings.TLS_KEY_FILE_VARIABLE, "/certs/key.pem");
+
+            Throwable thrown = catchThrowable(() -> settings().toServerProperties());
+
+            assertThat(thrown).isInstanceOf(IllegalArgumentException.class)
+                    .hasMessage("CHAINCODE_TLS_KEY_FILE and CHAINCODE_TLS_CERT_FILE must be set together");
+        }
+
+        @Test
+        public void fallsBackToThePeerChaincodeId() {
+            env.put(ChaincodeServerSettings.PEER_CHAINCODE_ID_VARIABLE, "credentials:2");
+
+            ChaincodeServerSettings settings = new ChaincodeServerSettings(env);
+
+            assertThat(settings.getChaincodeId()).isEqualTo("credentials:2");
+        }
+
+        @Test
+        public void requiresAChaincodeId() {
+            Throwable thrown = catchThrowable(() -> new ChaincodeServerSettings(env));
+
+            assertThat(thrown).isInstanceOf(IllegalArgumentException.class).hasMessage("CHAINCODE_ID is required");
+        }
+
+        @Test
+        public void rejectsAnAddressWithoutPort() {
+            env.put(ChaincodeServerSettings.SERVER_ADDRESS_VARIABLE, "localhost");
+
+            Throwable thrown = catchThrowable(() -> settings());
+
+            assertThat(thrown).isInstanceOf(IllegalArgumentException.class)
+                    .hasMessage("CHAINCODE_SERVER_ADDRESS is not a host:port address: localhost");
+        }
+    }
+
+    @Nested
+    class ExecutorSettings {
+
+        @Test
+        public void boundsTheQueueByThePoolSize() {
+            env.put(ChaincodeServerSettings.CORE_POOL_SIZE_VARIABLE, "16");
+
+            ChaincodeServerSettings settings = settings();
+
+            assertThat(settings.getCorePoolSize()).isEqualTo(16);
+            assertThat(settings.getMaxPoolSize()).isEqualTo(16);
+            assertThat(settings.getQueueSize()).isEqualTo(128);
+        }
+
+        @Test
+        public void passesTheSizingToTheShim() {
+            env.put(ChaincodeServerSettings.CORE_POOL_SIZE_VARIABLE, "4");
+            env.put(ChaincodeServerSettings.MAX_POOL_SIZE_VARIABLE, "8");
+            env.put(ChaincodeServerSettings.QUEUE_SIZE_VARIABLE, "100");
+            Properties config = new Properties();
+
+            settings().applyExecutorSettings(config);
+
+            assertThat(config.getProperty("TP_CORE_POOL_SIZE")).isEqualTo("4");
+            assertThat(config.getProperty("TP_MAX_POOL_SIZE")).isEqualTo("8");
+            assertThat(config.getProperty("TP_QUEUE_SIZE")).isEqualTo("100");
+            assertThat(config.getProperty("TP_KEEP_ALIVE_MS")).isEqualTo("5000");
+        }
+
+        @Test
+        public void rejectsAMaximumBelowTheCoreSize() {
+            env.put(ChaincodeServerSettings.CORE_POOL_SIZE_VARIABLE, "8");
+            env.put(ChaincodeServerSettings.MAX_POOL_SIZE_VARIABLE, "4");
+
+            Throwable thrown = catchThrowable(() -> settings());
+
+            assertThat(thrown).isInstanceOf(IllegalArgumentException.class).hasMessage("TP_MAX_POOL_SIZE must be at least 8: 4");
+        }
+
+        @Test
+        public void rejectsMalformedNumbers() {
+            env.put(ChaincodeServerSettings.QUEUE_SIZE_VARIABLE, "lots");
+
+            Throwable thrown = catchThrowable(() -> settings());
+
+            assertThat(thrown).isInstanceOf(IllegalArgumentException.class).hasMessage("TP_QUEUE_SIZE is not a number: lots");
+        }
+
+        @Test
+        public void rejectsTransactionsOnceTheQueueIsFull() {
+            env.put(ChaincodeServerSettings.CORE_POOL_SIZE_VARIABLE, "1");
+            env.put(ChaincodeServerSettings.MAX_POOL_SIZE_VARIABLE, "1");
+            env.put(ChaincodeServerSettings.QUEUE_SIZE_VARIABLE, "1");
+            ThreadPoolExecutor executor = settings().newExecutor(Thread::new);
+            Object lock = new Object();
+
+            try {
+                synchronized (lock) {
+                    executor.execute(() -> {
+                        synchronized (lock) {
+                            return;
+                        }
+                    });
+                    executor.execute(() -> { });
+
+                    Throwable thrown = catchThrowable(() -> executor.execute(() -> { }));
+
+                    assertThat(thrown).isInstanceOf(RejectedExecutionException.class);
+                }
+            } finally {
+                executor.shutdown();
+            }
+        }
+    }
+}
@@ -0,0 +1,171 @@
+package org.example;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.ThrowableAssert.catchThrowable;
+
+import com.owlike.genson.Genson;
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+
+public final class CredentialCodecTest {
+
+    private final Genson genson = new Genson();
+
+    @Test
+    public void roundTripsBinaryRecords() {
+        Credential credential = new Credential("credential1", "credential-name-1", "owner1", "value \u00e9\u4e2d \"quoted\"");
+
+        byte[] record = CredentialCodec.encode(credential);
+
+        assertThat(CredentialCodec.isBinary(record)).isTrue();
+        assertThat(CredentialCodec.decode(record)).isEqualTo(credential);
+        assertThat(CredentialCodec.decode(record).getCredentialValue()).isEqualTo(credential.getCredentialValue());
+    }
+
+    @Test
+    public void keepsNullFields() {
+        Credential credential = new Credential("credential1", null, "owner1", null);
+
+        Credential decoded = CredentialCodec.decode(CredentialCodec.encode(credential));
+
+        assertThat(decoded.getCredentialName()).isNull();
+        assertThat(decoded.getCredentialValue()).isNull();
+    }
+
+    @Test
+    public void decodesLegacyJsonRecords() {
+        byte[] record = "{\"credentialID\":\"credential1\",\"credentialName\":\"credential-name-1\",\"credentialOwner\":\"owner1\",\"credentialValue\":\"credential-value-1\"}"
+                .getBytes(StandardCharsets.UTF_8);
+
+        assertThat(CredentialCodec.isBinary(record)).isFalse();
+        assertThat(CredentialCodec.decode(record)).isEqualTo(new Credential("credential1", "credential-name-1", "owner1", "credential-value-1"));
+    }
+
+    @Test
+    public void decodesEmptyRecordsAsMissing() {
+        assertThat(CredentialCodec.decode(null)).isNull();
+        assertThat(CredentialCodec.decode(new byte[0])).isNull();
+    }
+
+    @Test
+    public void isSmallerThanJson() {
+        Credential credential = new Credential("credential1", "credential-name-1", "owner1", "credential-value-1");
+
+        assertThat(CredentialCodec.encode(credential).length).isLessThan(genson.serialize(credential).length());
+    }
+
+    @Test
+    public void skipsUnknownFields() {
+        byte[] known = CredentialCodec.encode(new Credential("credential1", "credential-name-1", "owner1", "credential-value-1"));
+        byte[] record = new byte[known.length + 7];
+        System.arraycopy(known, 0, record, 0, known.length);
+        record[known.length] = 99;
+        record[known.length + 4] = 2;
+
+        assertThat(CredentialCodec.decode(record)).isEqualTo(CredentialCodec.decode(known));
+    }
+
+    @Test
+    public void rejectsTruncatedRecords() {
+        byte[] known = CredentialCodec.encode(new Credential("credential1", "credential-name-1", "owner1", "credential-value-1"));
+        byte[] record = new byte[known.length - 3];
+        System.arraycopy(known, 0, record, 0, record.length);
+
+        Throwable thrown = catchThrowable(() -> {
+            CredentialCodec.decode(record);
+        });
+
+        assertThat(thrown).isInstanceOf(IllegalArgumentException.class).hasMessage("Truncated credential record");
+    }
+
+    @Test
+    public void marksWrittenRecordsAsCounted() {
+        Credential credential = new Credential("credential1", "credential-name-1", "owner1", "credential-value-1");
+
+        assertThat(CredentialCodec.isCounted(CredentialCodec.encode(credential))).isTrue();
+        assertThat(CredentialCodec.isCounted(CredentialCodec.encodeMetadata(credential))).isTrue();
+        assertThat(CredentialCodec.isCounted(genson.serialize(credential).getBytes(StandardCharsets.UTF_8))).isFalse();
+    }
+
+    @Test
+    public void writesBinaryRecordsAsGensonJson() {
+        Credential credential = new Credential("credential1", null, "owner1", "line\nbreak", 1700000000000L, 3);
+        JsonBuffer json = new JsonBuffer();
+
+        CredentialCodec.appendJson(CredentialCodec.encode(credential), json);
+
+        assertThat(json.toString()).isEqualTo(genson.serialize(credential));
+    }
+
+    @Test
+    public void writesPlainRecordsAsGensonJson() {
+        Credential credential = new Credential("credential1", "credential-name-1", "owner1", "credential-value-1");
+        JsonBuffer json = new JsonBuffer();
+
+        CredentialCodec.appendJson(CredentialCodec.encode(credential), json);
+
+        assertThat(CredentialCodec.getExpiresAt(CredentialCodec.encode(credential))).isEqualTo(0L);
+        assertThat(json.toString()).isEqualTo(genson.serialize(credential));
+        assertThat(json.toString()).endsWith(",\"expiresAt\":0,\"version\":0}");
+    }
+
+    @Test
+    public void writesLegacyRecordsAsGensonJson() {
+        Credential credential = new Credential("credential1", "credential-name-1", "owner1", "credential-value-1");
+        JsonBuffer json = new JsonBuffer();
+
+        CredentialCodec.appendJson(" {\"credentialID\":\"credential1\",\"credentialName\":\"credential-name-1\",\"credentialOwner\":\"owner1\",\"credentialValue\":\"credential-value-1\"}"
+                .getBytes(StandardCharsets.UTF_8), json);
+
+        assertThat(json.toString()).isEqualTo(genson.serialize(credential));
+    }
+
+    @Test
+    public void roundTripsExpiry() {
+        Credential credential = new Credential("credential1", "credential-name-1", "owner1", "credential-value-1", 1700000000000L);
+
+        byte[] record = CredentialCodec.encode(credential);
+
+        assertThat(CredentialCodec.decode(record)).isEqualTo(credential);
+        assertThat(CredentialCodec.decode(record).getExpiresAt()).isEqualTo(1700000000000L);
+        assertThat(CredentialCodec.getExpiresAt(record)).isEqualTo(1700000000000L);
+        assertThat(CredentialCodec.getExpiresAt(CredentialCodec.encodeMetadata(credential))).isEqualTo(1700000000000L);
+        assertThat(CredentialCodec.getExpiresAt(genson.serialize(credential).getBytes(StandardCharsets.UTF_8))).isEqualTo(0L);
+    }
+
+    @Test
+    public void roundTripsVersion() {
+        Credential credential = new Credential("credential1", "credential-name-1", "owner1", "credential-value-1", 0, 7);
+
+        assertThat(CredentialCodec.decode(CredentialCodec.encode(credential)).getVersion()).isEqualTo(7L);
+        assertThat(CredentialCodec.decode(CredentialCodec.encodeMetadata(credential)).getVersion()).isEqualTo(7L);
+        assertThat(CredentialCodec.decode(CredentialCodec.encode(new Credential("credential1", "credential-name-1", "owner1", "v"))).getVersion()).isEqualTo(0L);
+    }
+
+    @Test
+    public void leavesValueOutOfMetadataRecords() {
+        Credential credential = new Credential("credential1", "credential-name-1", "owner1", "credential-value-1");
+
+        byte[] record = CredentialCodec.encodeMetadata(credential);
+
+        assertThat(CredentialCodec.hasValue(record)).isFalse();
+        assertThat(CredentialCodec.hasValue(CredentialCodec.encode(credential))).isTrue();
+        assertThat(CredentialCodec.hasValue("{\"credentialID\":\"credential1\"}".getBytes(StandardCharsets.UTF_8))).isTrue();
+        assertThat(CredentialCodec.decode(record).getCredentialValue()).isNull();
+        assertThat(new String(record, StandardCharsets.UTF_8)).doesNotContain("credential-value-1");
+    }
+
+    @Test
+    public void writesSummariesWithoutValues() {
+        Credential credential = new Credential("credential1", null, "owner1", "credential-value-1");
+        JsonBuffer binary = new JsonBuffer();
+        JsonBuffer legacy = new JsonBuffer();
+
+        CredentialCodec.appendSummaryJson(CredentialCodec.encode(credential), binary);
+        CredentialCodec.appendSummaryJson(genson.serialize(credential).getBytes(StandardCharsets.UTF_8), legacy);
+
+        assertThat(binary.toString()).isEqualTo("{\"credentialID\":\"credential1\",\"credentialName\":null,\"credentialOwner\":\"owner1\"}");
+        assertThat(legacy.toString()).isEqualTo(binary.toString());
+    }
+}
@@ -44,6 +44,23 @@ public final class CredentialTest {
             assertThat(credentialA).isNotEqualTo(credentialB);
         }
 
+        @Test
+        public void comparesExpiry() {
+            Credential credentialA = new Credential("credential1", "credential-name-1", "owner1", "credential-value-test");
+            Credential credentialB = new Credential("credential1", "credential-name-1", "owner1", "credential-value-test", 1700000000000L);
+
+            assertThat(credentialA).isNotEqualTo(credentialB);
+            assertThat(credentialB).isEqualTo(new Credential("credential1", "credential-name-1", "owner1", "credential-value-test", 1700000000000L));
+        }
+
+        @Test
+        public void ignoresVersion() {
+            Credential credentialA = new Credential("credential1", "credential-name-1", "owner1", "credential-value-test", 0, 1);
+            Credential credentialB = new Credential("credential1", "credential-name-1", "owner1", "credential-value-test", 0, 2);
+
+            assertThat(credentialA).isEqualTo(credentialB);
+        }
+
         @Test
         public void handlesOtherObjects() {
             Credential credentialA = new Credential("credential1", "credential-name-1", "owner1", "credential-value-test");
@@ -1,24 +1,48 @@
 package org.example;
 
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.ThrowableAssert.catchThrowable;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.inOrder;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.verifyZeroInteractions;
+import static org.mockito.Mockito.when;
+
+import com.owlike.genson.Genson;
 import org.hyperledger.fabric.contract.Context;
+import org.hyperledger.fabric.protos.peer.ChaincodeShim.QueryResponseMetadata;
 import org.hyperledger.fabric.shim.ChaincodeException;
 import org.hyperledger.fabric.shim.ChaincodeStub;
+import org.hyperledger.fabric.shim.ledger.CompositeKey;
+import org.hyperledger.fabric.shim.ledger.KeyModification;
 import org.hyperledger.fabric.shim.ledger.KeyValue;
 import org.hyperledger.fabric.shim.ledger.QueryResultsIterator;
+import org.hyperledger.fabric.shim.ledger.QueryResultsIteratorWithMetadata;
+import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Nested;
 import org.junit.jupiter.api.Test;
 import org.mockito.InOrder;
 
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.Iterator;
 import java.util.List;
-
-import static org.assertj.core.api.Assertions.assertThat;
-import static org.assertj.core.api.ThrowableAssert.catchThrowable;
-import static org.mockito.Mockito.inOrder;
-import static org.mockito.Mockito.mock;
-import static org.mockito.Mockito.verifyZeroInteractions;
-import static org.mockito.Mockito.when;
+import java.util.Map;
+import java.util.zip.GZIPOutputStream;
 
 public final class CredentialTransferTest {
 
@@ -53,24 +77,48 @@ public final class CredentialTransferTest {
     private final class MockCredentialResultsIterator implements QueryResultsIterator<KeyValue> {
 
         private final List<KeyValue> credentialList;
+        private boolean closed;
+
+        MockCredentialResultsIterator(final KeyValue... entries) {
+            super();
+
+            credentialList = new ArrayList<KeyValue>(Arrays.asList(entries));
+        }
+
+        boolean isClosed() {
+            return closed;
+        }
+
+        @Override
+        public Iterator<KeyValue> iterator() {
+            return credentialList.iterator();
+        }
+
+        @Override
+        public void close() throws Exception {
+            closed = true;
+        }
+
+    }
+
+    private final class MockPaginatedResultsIterator implements QueryResultsIteratorWithMetadata<KeyValue> {
+
+        private final List<KeyValue> credentialList;
+        private final String bookmark;
 
-        MockCredentialResultsIterator() {
+        MockPaginatedResultsIterator(final String bookmark, final KeyValue... entries) {
             super();
 
-            credentialList = new ArrayList<KeyValue>();
+            this.credentialList = new ArrayList<KeyValue>(Arrays.asList(entries));
+            this.bookmark = bookmark;
+        }
 
-            credentialList.add(new MockKeyValue("credential1",
-                    "{ \"credentialID\": \"credential1\", \"credentialName\": \"credential-name-1\", \"credentialOwner\": \"owner1\", \"credentialValue\": \"credential-value-1\" }"));
-            credentialList.add(new MockKeyValue("credential2",
-                    "{ \"credentialID\": \"credential2\", \"credentialName\": \"credential-name-2\", \"credentialOwner\": \"owner2\", \"credentialValue\": \"credential-value-2\" }"));
-            credentialList.add(new MockKeyValue("credential3",
-                    "{ \"credentialID\": \"credential3\", \"credentialName\": \"credential-name-3\", \"credentialOwner\": \"owner3\", \"credentialValue\": \"credential-value-3\" }"));
-            credentialList.add(new MockKeyValue("credential4",
-                    "{ \"credentialID\": \"credential4\", \"credentialName\": \"credential-name-4\", \"credentialOwner\": \"owner4\", \"credentialValue\": \"credential-value-4\" }"));
-            credentialList.add(new MockKeyValue("credential5",
-                    "{ \"credentialID\": \"credential5\", \"credentialName\": \"credential-name-5\", \"credentialOwner\": \"owner5\", \"credentialValue\": \"credential-value-5\" }"));
-            credentialList.add(new MockKeyValue("credential6",
-                    "{ \"credentialID\": \"credential6\", \"credentialName\": \"credential-name-6\", \"credentialOwner\": \"owner6\", \"credentialValue\": \"credential-value-6\" }"));
+        @Override
+        public QueryResponseMetadata getMetadata() {
+            return QueryResponseMetadata.newBuilder()
+                    .setFetchedRecordsCount(credentialList.size())
+                    .setBookmark(bookmark)
+                    .build();
         }
 
         @Override
@@ -85,6 +133,32 @@ public final class CredentialTransferTest {
 
     }
 
+    /**
+     * Mocks a stub with a transaction ID, which the owner statistics delta of every write is keyed by.
+     */
+    private ChaincodeStub mockStub() {
+        ChaincodeStub stub = mock(ChaincodeStub.class);
+        when(stub.getTxId()).thenReturn("tx1");
+        return stub;
+    }
+
+    /**
+     * Mocks a stub of a ledger whose owner index {@code MigrateCredentials} has completed.
+     */
+    private ChaincodeStub mockIndexedStub() {
+        ChaincodeStub stub = mockStub();
+        when(stub.getState(CredentialTransfer.OWNER_INDEX_COMPLETE_KEY)).thenReturn(new byte[] {0x00});
+        return stub;
+    }
+
+    private KeyValue ownerIndexEntry(final String owner, final String credentialID) {
+        return new MockKeyValue(CredentialTransfer.ownerIndexKey(owner, credentialID), "\u0000");
+    }
+
+    private byte[] valueEntry(final String credentialValue) {
+        return ("\u0000" + credentialValue).getBytes(StandardCharsets.UTF_8);
+    }
+
     @Test
     public void invokeUnknownTransaction() {
         CredentialTransfer contract = new CredentialTransfer();
@@ -108,23 +182,39 @@ public final class CredentialTransferTest {
         public void whenCredentialExists() {
             CredentialTransfer contract = new CredentialTransfer();
             Context ctx = mock(Context.class);
-            ChaincodeStub stub = mock(ChaincodeStub.class);
+            ChaincodeStub stub = mockStub();
             when(ctx.getStub()).thenReturn(stub);
-            when(stub.getStringState("credential1"))
-                    .thenReturn("{ \"credentialID\": \"credential1\", \"credentialName\": \"credential-name-1\", \"credentialOwner\": \"owner1\", \"credentialValue\": \"credential-value-1\" }");
+            when(stub.getState("credential1"))
+                    .thenReturn("{ \"credentialID\": \"credential1\", \"credentialName\": \"credential-name-1\", \"credentialOwner\": \"owner1\", \"credentialValue\": \"credential-value-1\" }".getBytes());
 
             Credential credential = contract.ReadCredential(ctx, "credential1", "owner1");
 
             assertThat(credential).isEqualTo(new Credential("credential1", "credential-name-1", "owner1", "credential-value-1"));
+            verify(stub, never()).getState(CredentialValues.key("credential1"));
+        }
+
+        @Test
+        public void whenValueIsStoredSeparately() {
+            CredentialTransfer contract = new CredentialTransfer();
+            Context ctx = mock(Context.class);
+            ChaincodeStub stub = mockStub();
+            when(ctx.getStub()).thenReturn(stub);
+            when(stub.getState("credential1"))
+                    .thenReturn(CredentialCodec.encodeMetadata(new Credential("credential1", "credential-name-1", "owner1", "credential-value-1")));
+            when(stub.getState(CredentialValues.key("credential1"))).thenReturn(valueEntry("credential-value-1"));
+
+            Credential credential = contract.ReadCredential(ctx, "credential1", "owner1");
+
+            assertThat(credential.getCredentialValue()).isEqualTo("credential-value-1");
         }
 
         @Test
         public void whenCredentialDoesNotExist() {
             CredentialTransfer contract = new CredentialTransfer();
             Context ctx = mock(Context.class);
-            ChaincodeStub stub = mock(ChaincodeStub.class);
+            ChaincodeStub stub = mockStub();
             when(ctx.getStub()).thenReturn(stub);
-            when(stub.getStringState("credential1")).thenReturn("");
+            when(stub.getState("credential1")).thenReturn("".getBytes());
 
             Throwable thrown = catchThrowable(() -> {
                 contract.ReadCredential(ctx, "credential1", "owner1");
@@ -137,23 +227,69 @@ public final class CredentialTransferTest {
         }
     }
 
+    @Nested
+    class InvokeReadCredentialsTransaction {
+
+        @Test
+        public void whenSomeCredentialsAreMissing() {
+            CredentialTransfer contract = new CredentialTransfer();
+            Context ctx = mock(Context.class);
+            ChaincodeStub stub = mockStub();
+            when(ctx.getStub()).thenReturn(stub);
+            when(stub.getState("credential1"))
+                    .thenReturn("{\"credentialID\":\"credential1\",\"credentialName\":\"credential-name-1\",\"credentialOwner\":\"owner1\",\"credentialValue\":\"credential-value-1\"}".getBytes());
+            when(stub.getState("credential3"))
+                    .thenReturn(CredentialCodec.encodeMetadata(new Credential("credential3", "credential-name-3", "owner3", "credential-value-3")));
+            when(stub.getState(CredentialValues.key("credential3"))).thenReturn(valueEntry("credential-value-3"));
+
+            String result = contract.ReadCredentials(ctx, "[\"credential3\",\"credential2\",\"credential1\"]");
+
+            assertThat(result).isEqualTo("{\"credentials\":["
+                    + "{\"credentialID\":\"credential3\",\"credentialName\":\"credential-name-3\",\"credentialOwner\":\"owner3\",\"credentialValue\":\"credential-value-3\",\"expiresAt\":0,\"version\":0},"
+                    + "{\"credentialID\":\"credential1\",\"credentialName\":\"credential-name-1\",\"credentialOwner\":\"owner1\",\"credentialValue\":\"credential-value-1\",\"expiresAt\":0,\"version\":0}],"
+                    + "\"missing\":[\"credential2\"]}");
+        }
+
+        @Test
+        public void whenIDsRepeat() {
+            CredentialTransfer contract = new CredentialTransfer();
+            Context ctx = mock(Context.class);
+            ChaincodeStub stub = mockStub();
+            when(ctx.getStub()).thenReturn(stub);
+
+            Throwable thrown = catchThrowable(() -> {
+                contract.ReadCredentials(ctx, "[\"credential1\",\"credential1\"]");
+            });
+
+            assertThat(thrown).isInstanceOf(ChaincodeException.class).hasNoCause()
+                    .hasMessage("Entry 1: Credential credential1 appears more than once");
+            assertThat(((ChaincodeException) thrown).getPayload()).isEqualTo("INVALID_CREDENTIAL_BATCH".getBytes());
+        }
+    }
+
     @Test
     void invokeInitLedgerTransaction() {
         CredentialTransfer contract = new CredentialTransfer();
         Context ctx = mock(Context.class);
-        ChaincodeStub stub = mock(ChaincodeStub.class);
+        ChaincodeStub stub = mockStub();
         when(ctx.getStub()).thenReturn(stub);
 
         contract.InitLedger(ctx);
 
         InOrder inOrder = inOrder(stub);
 
-        inOrder.verify(stub).putStringState("credential1", "{\"credentialID\":\"credential1\",\"credentialName\":\"credential-name-1\",\"credentialOwner\":\"owner1\",\"credentialValue\":\"credential-value-1\"}");
-        inOrder.verify(stub).putStringState("credential2", "{\"credentialID\":\"credential2\",\"credentialName\":\"credential-name-2\",\"credentialOwner\":\"owner2\",\"credentialValue\":\"credential-value-2\"}");
-        inOrder.verify(stub).putStringState("credential3", "{\"credentialID\":\"credential3\",\"credentialName\":\"credential-name-3\",\"credentialOwner\":\"owner3\",\"credentialValue\":\"credential-value-3\"}");
-        inOrder.verify(stub).putStringState("credential4", "{\"credentialID\":\"credential4\",\"credentialName\":\"credential-name-4\",\"credentialOwner\":\"owner4\",\"credentialValue\":\"credential-value-4\"}");
-        inOrder.verify(stub).putStringState("credential5", "{\"credentialID\":\"credential5\",\"credentialName\":\"credential-name-5\",\"credentialOwner\":\"owner5\",\"credentialValue\":\"credential-value-5\"}");
-        inOrder.verify(stub).putStringState("credential6", "{\"credentialID\":\"credential6\",\"credentialName\":\"credential-name-6\",\"credentialOwner\":\"owner6\",\"credentialValue\":\"credential-value-6\"}");
+        inOrder.verify(stub).putState("credential1", CredentialCodec.encodeMetadata(new Credential("credential1", "credential-name-1", "owner1", "credential-value-1", 0, 1)));
+        inOrder.verify(stub).putState(CredentialValues.key("credential1"), valueEntry("credential-value-1"));
+        inOrder.verify(stub).putState("credential2", CredentialCodec.encodeMetadata(new Credential("credential2", "credential-name-2", "owner2", "credential-value-2", 0, 1)));
+        inOrder.verify(stub).putState(CredentialValues.key("credential2"), valueEntry("credential-value-2"));
+        inOrder.verify(stub).putState("credential3", CredentialCodec.encodeMetadata(new Credential("credential3", "credential-name-3", "owner3", "credential-value-3", 0, 1)));
+        inOrder.verify(stub).putState(CredentialValues.key("credential3"), valueEntry("credential-value-3"));
+        inOrder.verify(stub).putState("credential4", CredentialCodec.encodeMetadata(new Credential("credential4", "credential-name-4", "owner4", "credential-value-4", 0, 1)));
+        inOrder.verify(stub).putState(CredentialValues.key("credential4"), valueEntry("credential-value-4"));
+        inOrder.verify(stub).putState("credential5", CredentialCodec.encodeMetadata(new Credential("credential5", "credential-name-5", "owner5", "credential-value-5", 0, 1)));
+        inOrder.verify(stub).putState(CredentialValues.key("credential5"), valueEntry("credential-value-5"));
+        inOrder.verify(stub).putState("credential6", CredentialCodec.encodeMetadata(new Credential("credential6", "credential-name-6", "owner6", "credential-value-6", 0, 1)));
+        inOrder.verify(stub).putState(CredentialValues.key("credential6"), valueEntry("credential-value-6"));
     }
 
     @Nested
@@ -163,10 +299,10 @@ public final class CredentialTransferTest {
         public void whenCredentialExists() {
             CredentialTransfer contract = new CredentialTransfer();
             Context ctx = mock(Context.class);
-            ChaincodeStub stub = mock(ChaincodeStub.class);
+            ChaincodeStub stub = mockStub();
             when(ctx.getStub()).thenReturn(stub);
-            when(stub.getStringState("credential1"))
-                    .thenReturn("{\"credentialID\":\"credential1\",\"owner\":\"owner1\",\"credentialValue\":\"credential-value-1\"}");
+            when(stub.getState("credential1"))
+                    .thenReturn("{\"credentialID\":\"credential1\",\"owner\":\"owner1\",\"credentialValue\":\"credential-value-1\"}".getBytes());
 
             Throwable thrown = catchThrowable(() -> {
                 contract.CreateCredential(ctx, "credential1", "credential-name-1", "owner1", "credential-value-1");
@@ -182,69 +318,1262 @@ public final class CredentialTransferTest {
         public void whenCredentialDoesNotExist() {
             CredentialTransfer contract = new CredentialTransfer();
             Context ctx = mock(Context.class);
-            ChaincodeStub stub = mock(ChaincodeStub.class);
+            ChaincodeStub stub = mockStub();
             when(ctx.getStub()).thenReturn(stub);
-            when(stub.getStringState("credential1")).thenReturn("");
+            when(stub.getState("credential1")).thenReturn("".getBytes());
 
             Credential credential = contract.CreateCredential(ctx, "credential1", "owner1", "credential-name-1", "credential-value-1");
 
             assertThat(credential).isEqualTo(new Credential("credential1", "credential-name-1", "owner1", "credential-value-1"));
+            verify(stub).putState(CredentialTransfer.ownerIndexKey("owner1", "credential1"), new byte[] {0x00});
+            verify(stub).putState(CredentialValues.key("credential1"), valueEntry("credential-value-1"));
+        }
+
+        @Test
+        public void whenValueIsEmpty() {
+            CredentialTransfer contract = new CredentialTransfer();
+            Context ctx = mock(Context.class);
+            ChaincodeStub stub = mockStub();
+            when(ctx.getStub()).thenReturn(stub);
+
+            contract.CreateCredential(ctx, "credential1", "owner1", "credential-name-1", "");
+
+            verify(stub).putState("credential1", CredentialCodec.encode(new Credential("credential1", "credential-name-1", "owner1", "", 0, 1)));
+            verify(stub, never()).putState(eq(CredentialValues.key("credential1")), any());
         }
     }
 
-    @Test
-    void invokeGetAllCredentialsTransaction() {
-        CredentialTransfer contract = new CredentialTransfer();
-        Context ctx = mock(Context.class);
-        ChaincodeStub stub = mock(ChaincodeStub.class);
-        when(ctx.getStub()).thenReturn(stub);
-        when(stub.getStateByRange("", "")).thenReturn(new MockCredentialResultsIterator());
+    @Nested
+    class InvokeGetAllCredentialsTransaction {
+
+        @Test
+        public void whenOwnerHasCredentials() {
+            CredentialTransfer contract = new CredentialTransfer();
+            Context ctx = mock(Context.class);
+            ChaincodeStub stub = mockIndexedStub();
+            when(ctx.getStub()).thenReturn(stub);
+            MockCredentialResultsIterator indexEntries = new MockCredentialResultsIterator(ownerIndexEntry("owner1", "credential1"));
+            when(stub.getStateByPartialCompositeKey(CredentialTransfer.OWNER_INDEX, "owner1")).thenReturn(indexEntries);
+            when(stub.getState("credential1"))
+                    .thenReturn("{\"credentialID\":\"credential1\",\"credentialName\":\"credential-name-1\",\"credentialOwner\":\"owner1\",\"credentialValue\":\"credential-value-1\"}".getBytes());
 
-        String owner = "owner1";
-        String credentials = contract.GetAllCredentials(ctx, owner);
+            String owner = "owner1";
+            String credentials = contract.GetAllCredentials(ctx, owner);
 
-        assertThat(credentials).isEqualTo(
-                "[{\"credentialID\":\"credential1\",\"credentialName\":\"credential-name-1\",\"credentialOwner\":\"owner1\",\"credentialValue\":\"credential-value-1\"}]"
-        );
+            assertThat(credentials).isEqualTo(
+                    "[{\"credentialID\":\"credential1\",\"credentialName\":\"credential-name-1\",\"credentialOwner\":\"owner1\",\"credentialValue\":\"credential-value-1\",\"expiresAt\":0,\"version\":0}]"
+            );
+            assertThat(indexEntries.isClosed()).isTrue();
+            verify(stub, never()).getStateByRange(anyString(), anyString());
+        }
+
+        @Test
+        public void whenOwnerHasNoCredentials() {
+            CredentialTransfer contract = new CredentialTransfer();
+            Context ctx = mock(Context.class);
+            ChaincodeStub stub = mockIndexedStub();
+            when(ctx.getStub()).thenReturn(stub);
+            when(stub.getStateByPartialCompositeKey(CredentialTransfer.OWNER_INDEX, "owner1")).thenReturn(new MockCredentialResultsIterator());
+
+            assertThat(contract.GetAllCredentials(ctx, "owner1")).isEqualTo("[]");
+        }
+
+        @Test
+        public void isByteIdenticalToSerializedList() {
+            CredentialTransfer contract = new CredentialTransfer();
+            Context ctx = mock(Context.class);
+            ChaincodeStub stub = mockIndexedStub();
+            when(ctx.getStub()).thenReturn(stub);
+            Genson genson = new Genson();
+            List<Credential> credentials = Arrays.asList(
+                    new Credential("credential1", "credential-name-1", "owner1", "credential-value-1"),
+                    new Credential("credential2", "name with \"quotes\" and \\", "owner1", "line\nbreak\ttab \u00e9\u4e2d\u0001"),
+                    new Credential("credential3", null, "owner1", ""));
+            List<KeyValue> indexEntries = new ArrayList<KeyValue>();
+            for (Credential credential : credentials) {
+                indexEntries.add(ownerIndexEntry("owner1", credential.getCredentialID()));
+                when(stub.getState(credential.getCredentialID())).thenReturn(CredentialCodec.encode(credential));
+            }
+            when(stub.getState("credential1")).thenReturn(genson.serialize(credentials.get(0)).getBytes(StandardCharsets.UTF_8));
+            when(stub.getStateByPartialCompositeKey(CredentialTransfer.OWNER_INDEX, "owner1"))
+                    .thenReturn(new MockCredentialResultsIterator(indexEntries.toArray(new KeyValue[0])));
+
+            assertThat(contract.GetAllCredentials(ctx, "owner1")).isEqualTo(genson.serialize(credentials));
+        }
+
+        @Test
+        public void whenValueIsStoredSeparately() {
+            CredentialTransfer contract = new CredentialTransfer();
+            Context ctx = mock(Context.class);
+            ChaincodeStub stub = mockIndexedStub();
+            when(ctx.getStub()).thenReturn(stub);
+            when(stub.getStateByPartialCompositeKey(CredentialTransfer.OWNER_INDEX, "owner1"))
+                    .thenReturn(new MockCredentialResultsIterator(ownerIndexEntry("owner1", "credential1")));
+            when(stub.getState("credential1"))
+                    .thenReturn(CredentialCodec.encodeMetadata(new Credential("credential1", "credential-name-1", "owner1", "credential-value-1")));
+            when(stub.getState(CredentialValues.key("credential1"))).thenReturn(valueEntry("credential-value-1"));
+
+            assertThat(contract.GetAllCredentials(ctx, "owner1")).isEqualTo(
+                    "[{\"credentialID\":\"credential1\",\"credentialName\":\"credential-name-1\",\"credentialOwner\":\"owner1\",\"credentialValue\":\"credential-value-1\",\"expiresAt\":0,\"version\":0}]");
+        }
     }
 
     @Nested
-    class UpdateCredentialTransaction {
+    class InvokeGetCredentialSummariesTransaction {
 
         @Test
-        public void whenCredentialExists() {
+        public void whenOwnerHasCredentials() {
             CredentialTransfer contract = new CredentialTransfer();
             Context ctx = mock(Context.class);
-            ChaincodeStub stub = mock(ChaincodeStub.class);
+            ChaincodeStub stub = mockIndexedStub();
             when(ctx.getStub()).thenReturn(stub);
-            when(stub.getStringState("credential1"))
-                    .thenReturn("{ \"credentialID\": \"credential1\", \"owner\": \"owner1\", \"credentialValue\": \"credential-value-1\" }");
+            MockCredentialResultsIterator indexEntries = new MockCredentialResultsIterator(
+                    ownerIndexEntry("owner1", "credential1"), ownerIndexEntry("owner1", "credential2"));
+            when(stub.getStateByPartialCompositeKey(CredentialTransfer.OWNER_INDEX, "owner1")).thenReturn(indexEntries);
+            when(stub.getState("credential1"))
+                    .thenReturn("{\"credentialID\":\"credential1\",\"credentialName\":\"credential-name-1\",\"credentialOwner\":\"owner1\",\"credentialValue\":\"credential-value-1\"}".getBytes());
+            when(stub.getState("credential2"))
+                    .thenReturn(CredentialCodec.encodeMetadata(new Credential("credential2", "credential-name-2", "owner1", "credential-value-2")));
 
-            Credential credential = contract.UpdateCredential(ctx, "credential1", "owner1", "credential-name-1", "credential-value-New");
+            String summaries = contract.GetCredentialSummaries(ctx, "owner1");
 
-            assertThat(credential).isEqualTo(new Credential("credential1", "credential-name-1", "owner1", "credential-value-New"));
+            assertThat(summaries).isEqualTo(
+                    "[{\"credentialID\":\"credential1\",\"credentialName\":\"credential-name-1\",\"credentialOwner\":\"owner1\"},"
+                            + "{\"credentialID\":\"credential2\",\"credentialName\":\"credential-name-2\",\"credentialOwner\":\"owner1\"}]");
+            assertThat(indexEntries.isClosed()).isTrue();
+            verify(stub, never()).getState(CredentialValues.key("credential2"));
+        }
+
+        @Test
+        public void whenOwnerHasNoCredentials() {
+            CredentialTransfer contract = new CredentialTransfer();
+            Context ctx = mock(Context.class);
+            ChaincodeStub stub = mockIndexedStub();
+            when(ctx.getStub()).thenReturn(stub);
+            when(stub.getStateByPartialCompositeKey(CredentialTransfer.OWNER_INDEX, "owner1")).thenReturn(new MockCredentialResultsIterator());
+
+            assertThat(contract.GetCredentialSummaries(ctx, "owner1")).isEqualTo("[]");
         }
     }
 
     @Nested
-    class DeleteCredentialTransaction {
+    class InvokeGetAllCredentialsWithPaginationTransaction {
 
         @Test
-        public void whenCredentialDoesNotExist() {
+        public void whenPageIsFull() {
+            CredentialTransfer contract = new CredentialTransfer();
+            Context ctx = mock(Context.class);
+            ChaincodeStub stub = mockStub();
+            when(ctx.getStub()).thenReturn(stub);
+            when(stub.getStateByPartialCompositeKeyWithPagination(any(CompositeKey.class), eq(1), eq("")))
+                    .thenReturn(new MockPaginatedResultsIterator("bookmark-2", ownerIndexEntry("owner1", "credential1")));
+            when(stub.getState("credential1"))
+                    .thenReturn("{\"credentialID\":\"credential1\",\"credentialName\":\"credential-name-1\",\"credentialOwner\":\"owner1\",\"credentialValue\":\"credential-value-1\"}".getBytes());
+
+            String page = contract.GetAllCredentialsWithPagination(ctx, "owner1", 1, "");
+
+            assertThat(page).isEqualTo(
+                    "{\"records\":[{\"credentialID\":\"credential1\",\"credentialName\":\"credential-name-1\",\"credentialOwner\":\"owner1\",\"credentialValue\":\"credential-value-1\",\"expiresAt\":0,\"version\":0}],"
+                            + "\"fetchedRecordsCount\":1,\"bookmark\":\"bookmark-2\"}"
+            );
+        }
+
+        @Test
+        public void whenPageSizeIsTooLarge() {
             CredentialTransfer contract = new CredentialTransfer();
             Context ctx = mock(Context.class);
-            ChaincodeStub stub = mock(ChaincodeStub.class);
+            ChaincodeStub stub = mockStub();
             when(ctx.getStub()).thenReturn(stub);
-            when(stub.getStringState("credential1")).thenReturn("");
 
             Throwable thrown = catchThrowable(() -> {
-                contract.DeleteCredential(ctx, "credential1", "");
+                contract.GetAllCredentialsWithPagination(ctx, "owner1", CredentialTransfer.MAX_PAGE_SIZE + 1, "");
             });
 
             assertThat(thrown).isInstanceOf(ChaincodeException.class).hasNoCause()
-                    .hasMessage("Credential credential1 does not exist");
+                    .hasMessage("Page size 501 is not between 1 and 500");
+            assertThat(((ChaincodeException) thrown).getPayload()).isEqualTo("INVALID_PAGE_SIZE".getBytes());
+            verifyZeroInteractions(stub);
+        }
+    }
 
-            assertThat(((ChaincodeException) thrown).getPayload()).isEqualTo("CREDENTIAL_NOT_FOUND".getBytes());
+    @Nested
+    class ChangeEvents {
+
+        private final CredentialTransfer contract = new CredentialTransfer();
+
+        private final InMemoryChaincodeStub store = new InMemoryChaincodeStub();
+
+        private final SimulatedContext ctx = new SimulatedContext(store);
+
+        private String eventPayload() {
+            assertThat(store.getEvent().getEventName()).isEqualTo(CredentialChanges.EVENT_NAME);
+            return store.getEvent().getPayload().toStringUtf8();
+        }
+
+        @Test
+        public void createEmitsCompactEvent() {
+            contract.CreateCredential(ctx.begin(store), "credential1", "owner1", "credential-name-1", "credential-value-1");
+
+            assertThat(eventPayload())
+                    .isEqualTo("[{\"op\":\"CREATE\",\"id\":\"credential1\",\"owner\":\"owner1\",\"version\":1}]")
+                    .doesNotContain("credential-value-1");
+        }
+
+        @Test
+        public void updateCarriesTheNewVersion() {
+            contract.CreateCredential(ctx.begin(store), "credential1", "owner1", "credential-name-1", "credential-value-1");
+
+            contract.UpdateCredential(ctx.begin(store), "credential1", "owner2", "credential-name-1", "credential-value-2");
+
+            assertThat(eventPayload()).isEqualTo("[{\"op\":\"UPDATE\",\"id\":\"credential1\",\"owner\":\"owner2\",\"version\":2}]");
+        }
+
+        @Test
+        public void batchEmitsOneAggregatedEvent() {
+            contract.CreateCredential(ctx.begin(store), "credential1", "owner1", "credential-name-1", "credential-value-1");
+            contract.CreateCredential(ctx.begin(store), "credential2", "owner2", "credential-name-2", "credential-value-2");
+
+            contract.DeleteCredentials(ctx.begin(store), "[\"credential1\",\"credential2\"]");
+
+            assertThat(eventPayload()).isEqualTo("[{\"op\":\"DELETE\",\"id\":\"credential1\",\"owner\":\"owner1\",\"version\":null},"
+                    + "{\"op\":\"DELETE\",\"id\":\"credential2\",\"owner\":\"owner2\",\"version\":null}]");
+        }
+
+        @Test
+        public void initLedgerEmitsAllCredentials() {
+            contract.InitLedger(ctx.begin(store));
+
+            assertThat(eventPayload().split("\"op\":\"CREATE\"")).hasSize(7);
+        }
+    }
+
+    @Nested
+    class OwnerStatistics {
+
+        private final CredentialTransfer contract = new CredentialTransfer();
+
+        private final InMemoryChaincodeStub store = new InMemoryChaincodeStub();
+
+        private final SimulatedContext ctx = new SimulatedContext(store);
+
+        private SimulatedContext tx(final String txId) {
+            store.setTxId(txId);
+            return ctx.begin(store);
+        }
+
+        @Test
+        public void eachTransactionWritesItsOwnDelta() {
+            contract.CreateCredential(tx("tx1"), "credential1", "owner1", "name", "abc");
+            contract.CreateCredential(tx("tx2"), "credential2", "owner1", "name", "\u00e9");
+
+            assertThat(store.getState(OwnerStats.key("owner1", "tx1"))).isEqualTo(OwnerStats.encode(1, 3));
+            assertThat(store.getState(OwnerStats.key("owner1", "tx2"))).isEqualTo(OwnerStats.encode(1, 2));
+            assertThat(contract.GetOwnerStats(tx("query"), "owner1"))
+                    .isEqualTo("{\"owner\":\"owner1\",\"credentials\":2,\"bytes\":5,\"deltas\":2}");
+        }
+
+        @Test
+        public void updatesAndDeletesAdjustTheOwners() {
+            contract.CreateCredential(tx("tx1"), "credential1", "owner1", "name", "abc");
+            contract.CreateCredential(tx("tx2"), "credential2", "owner1", "name", "de");
+            contract.UpdateCredential(tx("tx3"), "credential1", "owner2", "name", "abcd");
+            contract.DeleteCredential(tx("tx4"), "credential2", "owner1");
+
+            assertThat(contract.GetOwnerStats(tx("query"), "owner1"))
+                    .isEqualTo("{\"owner\":\"owner1\",\"credentials\":0,\"bytes\":0,\"deltas\":4}");
+            assertThat(contract.GetOwnerStats(tx("query"), "owner2"))
+                    .isEqualTo("{\"owner\":\"owner2\",\"credentials\":1,\"bytes\":4,\"deltas\":1}");
+        }
+
+        @Test
+        public void unchangedSizeWritesNoDelta() {
+            contract.CreateCredential(tx("tx1"), "credential1", "owner1", "name", "abc");
+            contract.UpdateCredential(tx("tx2"), "credential1", "owner1", "new-name", "xyz");
+
+            assertThat(store.getState(OwnerStats.key("owner1", "tx2"))).isEmpty();
+        }
+
+        @Test
+        public void chunkedValuesAreSizedFromTheirManifest() {
+            String value = String.join("", Collections.nCopies(2 * CredentialValues.CHUNK_SIZE + 1, "x"));
+            contract.CreateCredential(tx("tx1"), "credential1", "owner1", "name", value);
+            contract.DeleteCredential(tx("tx2"), "credential1", "owner1");
+
+            assertThat(store.getState(OwnerStats.key("owner1", "tx2"))).isEqualTo(OwnerStats.encode(-1, -value.length()));
+        }
+
+        @Test
+        public void compactionFoldsDeltas() {
+            contract.CreateCredential(tx("tx1"), "credential1", "owner1", "name", "abc");
+            contract.CreateCredential(tx("tx2"), "credential2", "owner1", "name", "de");
+            contract.CreateCredential(tx("tx3"), "credential3", "owner2", "name", "f");
+
+            assertThat(contract.CompactOwnerStats(tx("compact"), "owner1")).isEqualTo("{\"folded\":2,\"done\":true}");
+
+            assertThat(store.getState(OwnerStats.key("owner1", "tx1"))).isEmpty();
+            assertThat(store.getState(OwnerStats.key("owner1", "compact"))).isEqualTo(OwnerStats.encode(2, 5));
+            assertThat(store.getState(OwnerStats.key("owner2", "tx3"))).isEqualTo(OwnerStats.encode(1, 1));
+            assertThat(contract.GetOwnerStats(tx("query"), "owner1"))
+                    .isEqualTo("{\"owner\":\"owner1\",\"credentials\":2,\"bytes\":5,\"deltas\":1}");
+        }
+
+        @Test
+        public void deletingAnUncountedCredentialLeavesTheStatsAlone() {
+            store.putState("legacy", "{\"credentialID\":\"legacy\",\"credentialName\":\"name\",\"credentialOwner\":\"owner1\",\"credentialValue\":\"abc\"}"
+                    .getBytes(StandardCharsets.UTF_8));
+
+            contract.DeleteCredential(tx("tx1"), "legacy", "owner1");
+
+            assertThat(store.getState(OwnerStats.key("owner1", "tx1"))).isEmpty();
+            assertThat(contract.GetOwnerStats(tx("query"), "owner1"))
+                    .isEqualTo("{\"owner\":\"owner1\",\"credentials\":0,\"bytes\":0,\"deltas\":0}");
+        }
+
+        @Test
+        public void migrationCountsExistingCredentialsOnce() {
+            store.putState("legacy", "{\"credentialID\":\"legacy\",\"credentialName\":\"name\",\"credentialOwner\":\"owner1\",\"credentialValue\":\"abc\"}"
+                    .getBytes(StandardCharsets.UTF_8));
+
+            contract.MigrateCredentials(tx("migrate1"), 10, "");
+            contract.MigrateCredentials(tx("migrate2"), 10, "");
+            contract.DeleteCredential(tx("tx1"), "legacy", "owner1");
+
+            assertThat(store.getState(OwnerStats.key("owner1", "migrate1"))).isEqualTo(OwnerStats.encode(1, 3));
+            assertThat(store.getState(OwnerStats.key("owner1", "migrate2"))).isEmpty();
+            assertThat(contract.GetOwnerStats(tx("query"), "owner1"))
+                    .isEqualTo("{\"owner\":\"owner1\",\"credentials\":0,\"bytes\":0,\"deltas\":2}");
+        }
+
+        @Test
+        public void compactionOfASingleDeltaWritesNothing() {
+            contract.CreateCredential(tx("tx1"), "credential1", "owner1", "name", "abc");
+
+            assertThat(contract.CompactOwnerStats(tx("compact"), "owner1")).isEqualTo("{\"folded\":0,\"done\":true}");
+            assertThat(store.getState(OwnerStats.key("owner1", "tx1"))).isEqualTo(OwnerStats.encode(1, 3));
+        }
+    }
+
+    @Nested
+    class ExpiringCredentials {
+
+        private static final long HOUR = CredentialTransfer.EXPIRY_BUCKET_MILLIS;
+
+        private final CredentialTransfer contract = new CredentialTransfer();
+
+        private final InMemoryChaincodeStub store = new InMemoryChaincodeStub();
+
+        private final SimulatedContext ctx = new SimulatedContext(store);
+
+        private SimulatedContext at(final long millis) {
+            store.setTxTimestamp(Instant.ofEpochMilli(millis));
+            return ctx.begin(store);
+        }
+
+        @BeforeEach
+        public void seed() {
+            contract.CreateExpiringCredential(at(0), "token1", "owner1", "name", "value1", HOUR + 10);
+            contract.CreateExpiringCredential(at(0), "token2", "owner1", "name", "value2", 3 * HOUR);
+            contract.CreateCredential(at(0), "credential1", "owner1", "name", "value3");
+        }
+
+        @Test
+        public void areIndexedByBucket() {
+            assertThat(store.getState(CredentialTransfer.expiryIndexKey(HOUR + 10, "token1"))).isNotEmpty();
+            assertThat(CredentialTransfer.expiryIndexKey(HOUR + 10, "token1")).isEqualTo(CredentialTransfer.expiryIndexKey(HOUR, "token1"));
+            assertThat(CredentialTransfer.expiryIndexKey(9 * HOUR, "token1").compareTo(CredentialTransfer.expiryIndexKey(10 * HOUR, "token1"))).isNegative();
+        }
+
+        @Test
+        public void areHiddenOnceExpired() {
+            assertThat(contract.ReadCredential(at(HOUR), "token1", "owner1").getExpiresAt()).isEqualTo(HOUR + 10);
+
+            assertThat(contract.CredentialExists(at(HOUR + 10), "token1", "owner1")).isFalse();
+            assertThat(contract.ReadCredentials(at(HOUR + 10), "[\"token1\"]")).isEqualTo("{\"credentials\":[],\"missing\":[\"token1\"]}");
+            assertThat(contract.GetAllCredentials(at(HOUR + 10), "owner1")).isEqualTo("["
+                    + "{\"credentialID\":\"credential1\",\"credentialName\":\"name\",\"credentialOwner\":\"owner1\",\"credentialValue\":\"value3\",\"expiresAt\":0,\"version\":1},"
+                    + "{\"credentialID\":\"token2\",\"credentialName\":\"name\",\"credentialOwner\":\"owner1\",\"credentialValue\":\"value2\",\"expiresAt\":" + 3 * HOUR + ",\"version\":1}]");
+
+            Throwable thrown = catchThrowable(() -> contract.ReadCredential(at(HOUR + 10), "token1", "owner1"));
+            assertThat(thrown).isInstanceOf(ChaincodeException.class).hasNoCause().hasMessage("Credential token1 does not exist");
+        }
+
+        @Test
+        public void areNotCountedInPages() {
+            store.setTxId("tx-page");
+            String page = contract.GetAllCredentialsWithPagination(at(2 * HOUR), "owner1", 3, "");
+
+            assertThat(page).doesNotContain("token1");
+            assertThat(page).contains("\"fetchedRecordsCount\":2,");
+        }
+
+        @Test
+        public void purgeDeletesOnlyExpiredCredentials() {
+            assertThat(contract.PurgeExpired(at(2 * HOUR), 2 * HOUR, 10)).isEqualTo("{\"scanned\":1,\"purged\":1,\"done\":true}");
+
+            assertThat(store.getState("token1")).isEmpty();
+            assertThat(store.getState(CredentialTransfer.expiryIndexKey(HOUR + 10, "token1"))).isEmpty();
+            assertThat(store.getState(CredentialTransfer.ownerIndexKey("owner1", "token1"))).isEmpty();
+            assertThat(store.getState("token2")).isNotEmpty();
+            assertThat(store.getEvent().getPayload().toStringUtf8()).startsWith("[{\"op\":\"DELETE\",\"id\":\"token1\"");
+        }
+
+        @Test
+        public void purgeDoesNotGoPastTheTransactionTime() {
+            assertThat(contract.PurgeExpired(at(HOUR), 10 * HOUR, 10)).isEqualTo("{\"scanned\":1,\"purged\":0,\"done\":true}");
+
+            assertThat(store.getState("token1")).isNotEmpty();
+        }
+
+        @Test
+        public void purgeIsBounded() {
+            assertThat(contract.PurgeExpired(at(4 * HOUR), 4 * HOUR, 1)).isEqualTo("{\"scanned\":1,\"purged\":1,\"done\":false}");
+            assertThat(contract.PurgeExpired(at(4 * HOUR), 4 * HOUR, 1)).isEqualTo("{\"scanned\":1,\"purged\":1,\"done\":true}");
+
+            assertThat(store.getState("token2")).isEmpty();
+            assertThat(store.getState("credential1")).isNotEmpty();
+        }
+
+        @Test
+        public void purgeRejectsInvalidBounds() {
+            Throwable thrown = catchThrowable(() -> contract.PurgeExpired(at(0), 0, 0));
+
+            assertThat(thrown).isInstanceOf(ChaincodeException.class).hasNoCause()
+                    .hasMessage("Max items 0 is not between 1 and " + CredentialTransfer.MAX_BATCH_SIZE);
+            assertThat(((ChaincodeException) thrown).getPayload()).isEqualTo("INVALID_PAGE_SIZE".getBytes());
+        }
+
+        @Test
+        public void updateKeepsOrMovesTheExpiry() {
+            contract.UpdateCredential(at(0), "token1", "owner1", "name", "new-value");
+
+            assertThat(contract.ReadCredential(at(0), "token1", "owner1").getExpiresAt()).isEqualTo(HOUR + 10);
+
+            contract.UpdateCredentials(at(0), "[{\"credentialID\":\"token1\",\"credentialOwner\":\"owner1\",\"credentialValue\":\"v\",\"expiresAt\":" + 5 * HOUR + "}]");
+
+            assertThat(store.getState(CredentialTransfer.expiryIndexKey(HOUR + 10, "token1"))).isEmpty();
+            assertThat(store.getState(CredentialTransfer.expiryIndexKey(5 * HOUR, "token1"))).isNotEmpty();
+        }
+
+        @Test
+        public void expiredIDsCanBeReused() {
+            contract.CreateCredential(at(2 * HOUR), "token1", "owner2", "name", "fresh");
+
+            assertThat(contract.ReadCredential(at(2 * HOUR), "token1", "owner2")).isEqualTo(new Credential("token1", "name", "owner2", "fresh"));
+            assertThat(contract.ReadCredential(at(2 * HOUR), "token1", "owner2").getVersion()).isEqualTo(2L);
+            assertThat(store.getState(CredentialTransfer.expiryIndexKey(HOUR + 10, "token1"))).isEmpty();
+            assertThat(store.getState(CredentialTransfer.ownerIndexKey("owner1", "token1"))).isEmpty();
+        }
+    }
+
+    @Nested
+    class InvokeGetCredentialHistoryTransaction {
+
+        private final CredentialTransfer contract = new CredentialTransfer();
+
+        private final InMemoryChaincodeStub store = new InMemoryChaincodeStub();
+
+        private final SimulatedContext ctx = new SimulatedContext(store);
+
+        private SimulatedContext transaction(final String txId, final long timestamp) {
+            store.setTxId(txId);
+            store.setTxTimestamp(Instant.ofEpochMilli(timestamp));
+            return ctx.begin(store);
+        }
+
+        private void recordHistory() {
+            contract.CreateCredential(transaction("tx1", 1000), "credential1", "owner1", "credential-name-1", "credential-value-1");
+            contract.UpdateCredential(transaction("tx2", 2000), "credential1", "owner2", "credential-name-2", "credential-value-2");
+            contract.DeleteCredential(transaction("tx3", 3000), "credential1", "owner2");
+        }
+
+        @Test
+        public void returnsChangesNewestFirst() {
+            recordHistory();
+
+            String history = contract.GetCredentialHistory(ctx.begin(store), "credential1", 0, 10);
+
+            assertThat(history).isEqualTo("["
+                    + "{\"txId\":\"tx3\",\"timestamp\":3000,\"isDeleted\":true,\"credential\":null},"
+                    + "{\"txId\":\"tx2\",\"timestamp\":2000,\"isDeleted\":false,"
+                    + "\"credential\":{\"credentialID\":\"credential1\",\"credentialName\":\"credential-name-2\",\"credentialOwner\":\"owner2\"}},"
+                    + "{\"txId\":\"tx1\",\"timestamp\":1000,\"isDeleted\":false,"
+                    + "\"credential\":{\"credentialID\":\"credential1\",\"credentialName\":\"credential-name-1\",\"credentialOwner\":\"owner1\"}}]");
+        }
+
+        @Test
+        public void stopsAtTimeBound() {
+            recordHistory();
+
+            String history = contract.GetCredentialHistory(ctx.begin(store), "credential1", 2000, 10);
+
+            assertThat(history).contains("\"tx2\"").doesNotContain("\"tx1\"");
+        }
+
+        @Test
+        @SuppressWarnings("unchecked")
+        public void stopsAtLimitAndClosesResults() throws Exception {
+            Context context = mock(Context.class);
+            ChaincodeStub stub = mockStub();
+            when(context.getStub()).thenReturn(stub);
+            recordHistory();
+            QueryResultsIterator<KeyModification> modifications = mock(QueryResultsIterator.class);
+            when(modifications.iterator()).thenReturn(store.getHistoryForKey("credential1").iterator());
+            when(stub.getHistoryForKey("credential1")).thenReturn(modifications);
+
+            String history = contract.GetCredentialHistory(context, "credential1", 0, 1);
+
+            assertThat(history).isEqualTo("[{\"txId\":\"tx3\",\"timestamp\":3000,\"isDeleted\":true,\"credential\":null}]");
+            verify(modifications).close();
+        }
+
+        @Test
+        public void whenLimitIsInvalid() {
+            Throwable thrown = catchThrowable(() -> {
+                contract.GetCredentialHistory(ctx.begin(store), "credential1", 0, 0);
+            });
+
+            assertThat(thrown).isInstanceOf(ChaincodeException.class).hasNoCause()
+                    .hasMessage("Limit 0 is not between 1 and 500");
+            assertThat(((ChaincodeException) thrown).getPayload()).isEqualTo("INVALID_PAGE_SIZE".getBytes());
+        }
+    }
+
+    @Nested
+    class InvokeMigrateCredentialsTransaction {
+
+        @Test
+        public void rewritesLegacyRecords() {
+            CredentialTransfer contract = new CredentialTransfer();
+            Context ctx = mock(Context.class);
+            ChaincodeStub stub = mockStub();
+            when(ctx.getStub()).thenReturn(stub);
+            MockCredentialResultsIterator records = new MockCredentialResultsIterator(
+                    new MockKeyValue("credential1", "{\"credentialID\":\"credential1\",\"credentialName\":\"credential-name-1\",\"credentialOwner\":\"owner1\",\"credentialValue\":\"credential-value-1\"}"),
+                    new MockKeyValue("credential2", "{\"credentialID\":\"credential2\",\"credentialName\":\"credential-name-2\",\"credentialOwner\":\"owner2\",\"credentialValue\":\"\"}"),
+                    new MockKeyValue("credential3", "{\"credentialID\":\"credential3\",\"credentialName\":\"credential-name-3\",\"credentialOwner\":\"owner3\",\"credentialValue\":\"\"}"));
+            when(stub.getStateByRange("", "")).thenReturn(records);
+
+            String progress = contract.MigrateCredentials(ctx, 2, "");
+
+            assertThat(progress).isEqualTo("{\"scanned\":2,\"migrated\":2,\"bookmark\":\"credential3\",\"done\":false}");
+            verify(stub).putState("credential1", CredentialCodec.encodeMetadata(new Credential("credential1", "credential-name-1", "owner1", "credential-value-1")));
+            verify(stub).putState(CredentialValues.key("credential1"), valueEntry("credential-value-1"));
+            verify(stub).putState(CredentialTransfer.ownerIndexKey("owner1", "credential1"), new byte[] {0x00});
+            verify(stub).putState("credential2", CredentialCodec.encode(new Credential("credential2", "credential-name-2", "owner2", "")));
+            verify(stub).putState(CredentialTransfer.ownerIndexKey("owner2", "credential2"), new byte[] {0x00});
+            verify(stub, never()).putState(eq("credential3"), any());
+            verify(stub, never()).getStateByRangeWithPagination(anyString(), anyString(), anyInt(), anyString());
+            assertThat(records.isClosed()).isTrue();
+        }
+
+        @Test
+        public void resumesFromBookmarkAndWritesWithoutPaginatedQueries() {
+            CredentialTransfer contract = new CredentialTransfer();
+            InMemoryChaincodeStub store = new InMemoryChaincodeStub();
+            SimulatedContext ctx = new SimulatedContext(store);
+            for (int i = 1; i <= 3; i++) {
+                store.putState("credential" + i, CredentialCodec.encode(new Credential("credential" + i, "name", "owner1", "value")));
+            }
+
+            store.setTxId("tx1");
+            String first = contract.MigrateCredentials(ctx.begin(store), 2, "");
+            store.setTxId("tx2");
+            String second = contract.MigrateCredentials(ctx.begin(store), 2, "credential3");
+
+            assertThat(first).isEqualTo("{\"scanned\":2,\"migrated\":2,\"bookmark\":\"credential3\",\"done\":false}");
+            assertThat(second).isEqualTo("{\"scanned\":1,\"migrated\":1,\"bookmark\":\"\",\"done\":true}");
+            assertThat(store.getState(CredentialValues.key("credential3"))).isNotEmpty();
+        }
+
+        @Test
+        public void listsAndIndexesLegacyRecordsUpdatedBeforeMigration() {
+            CredentialTransfer contract = new CredentialTransfer();
+            InMemoryChaincodeStub store = new InMemoryChaincodeStub();
+            SimulatedContext ctx = new SimulatedContext(store);
+            for (int i = 1; i <= 2; i++) {
+                store.putState("legacy" + i, String.format("{\"credentialID\":\"legacy%d\",\"credentialName\":\"name\",\"credentialOwner\":\"owner1\","
+                        + "\"credentialValue\":\"value\"}", i).getBytes(StandardCharsets.UTF_8));
+            }
+            String summaries = "[{\"credentialID\":\"legacy1\",\"credentialName\":\"name\",\"credentialOwner\":\"owner1\"},"
+                    + "{\"credentialID\":\"legacy2\",\"credentialName\":\"name\",\"credentialOwner\":\"owner1\"}]";
+
+            store.setTxId("tx1");
+            assertThat(contract.GetCredentialSummaries(ctx.begin(store), "owner1")).isEqualTo(summaries);
+            store.setTxId("tx2");
+            contract.UpdateCredential(ctx.begin(store), "legacy1", "owner1", "name", "updated");
+            store.setTxId("tx3");
+            String progress = contract.MigrateCredentials(ctx.begin(store), 10, "");
+
+            assertThat(progress).isEqualTo("{\"scanned\":2,\"migrated\":1,\"bookmark\":\"\",\"done\":true}");
+            assertThat(store.getState(CredentialTransfer.OWNER_INDEX_COMPLETE_KEY)).isNotEmpty();
+            store.setTxId("tx4");
+            assertThat(contract.GetCredentialSummaries(ctx.begin(store), "owner1")).isEqualTo(summaries);
+            store.setTxId("tx5");
+            assertThat(contract.GetOwnerStats(ctx.begin(store), "owner1")).isEqualTo("{\"owner\":\"owner1\",\"credentials\":2,\"bytes\":12,\"deltas\":2}");
+        }
+
+        @Test
+        public void indexesCurrentRecordsWithoutAnIndexEntry() {
+            CredentialTransfer contract = new CredentialTransfer();
+            InMemoryChaincodeStub store = new InMemoryChaincodeStub();
+            SimulatedContext ctx = new SimulatedContext(store);
+            store.putState("credential1", CredentialCodec.encode(new Credential("credential1", "name", "owner1", "")));
+
+            String progress = contract.MigrateCredentials(ctx.begin(store), 10, "");
+
+            assertThat(progress).isEqualTo("{\"scanned\":1,\"migrated\":1,\"bookmark\":\"\",\"done\":true}");
+            assertThat(store.getState(CredentialTransfer.ownerIndexKey("owner1", "credential1"))).isNotEmpty();
+        }
+
+        @Test
+        public void whenPageSizeIsInvalid() {
+            CredentialTransfer contract = new CredentialTransfer();
+            Context ctx = mock(Context.class);
+            ChaincodeStub stub = mockStub();
+            when(ctx.getStub()).thenReturn(stub);
+
+            Throwable thrown = catchThrowable(() -> {
+                contract.MigrateCredentials(ctx, 0, "");
+            });
+
+            assertThat(thrown).isInstanceOf(ChaincodeException.class).hasNoCause()
+                    .hasMessage("Page size 0 is not between 1 and 500");
+            verifyZeroInteractions(stub);
+        }
+    }
+
+    @Nested
+    class InvokeImportCredentialsTransaction {
+
+        private String payload(final int count) throws IOException {
+            return compress(ndjson(count));
+        }
+
+        private String ndjson(final int count) {
+            StringBuilder ndjson = new StringBuilder();
+            for (int i = 1; i <= count; i++) {
+                ndjson.append(String.format("{\"credentialID\":\"credential%d\",\"credentialName\":\"credential-name-%d\",\"credentialOwner\":\"owner1\",\"credentialValue\":\"credential-value-%d\"}\n\n", i, i, i));
+            }
+            return ndjson.toString();
+        }
+
+        private String linesAfter(final String ndjson, final int cursor) {
+            String[] lines = ndjson.split("\n", -1);
+            return String.join("\n", Arrays.copyOfRange(lines, cursor, lines.length));
+        }
+
+        private String compress(final CharSequence ndjson) throws IOException {
+            ByteArrayOutputStream compressed = new ByteArrayOutputStream();
+            try (Writer writer = new OutputStreamWriter(new GZIPOutputStream(compressed), StandardCharsets.UTF_8)) {
+                writer.append(ndjson);
+            }
+            return Base64.getEncoder().encodeToString(compressed.toByteArray());
+        }
+
+        @Test
+        public void importsWholePayload() throws IOException {
+            CredentialTransfer contract = new CredentialTransfer();
+            Context ctx = mock(Context.class);
+            ChaincodeStub stub = mockStub();
+            when(ctx.getStub()).thenReturn(stub);
+
+            String progress = contract.ImportCredentials(ctx, payload(2));
+
+            assertThat(progress).isEqualTo("{\"imported\":2,\"cursor\":4,\"done\":true}");
+            verify(stub).putState("credential2", CredentialCodec.encodeMetadata(new Credential("credential2", "credential-name-2", "owner1", "credential-value-2", 0, 1)));
+            verify(stub).putState(CredentialTransfer.ownerIndexKey("owner1", "credential1"), new byte[] {0x00});
+        }
+
+        @Test
+        public void stopsAfterTheRecordBudget() throws IOException {
+            CredentialTransfer contract = new CredentialTransfer();
+            Context ctx = mock(Context.class);
+            ChaincodeStub stub = mockStub();
+            when(ctx.getStub()).thenReturn(stub);
+
+            String progress = contract.ImportCredentials(ctx, payload(CredentialTransfer.MAX_BATCH_SIZE + 1));
+
+            assertThat(progress).isEqualTo("{\"imported\":1000,\"cursor\":1999,\"done\":false}");
+            verify(stub, never()).putState(eq("credential1001"), any());
+        }
+
+        @Test
+        public void stopsBeforeTheByteBudget() throws IOException {
+            CredentialTransfer contract = new CredentialTransfer();
+            Context ctx = mock(Context.class);
+            ChaincodeStub stub = mockStub();
+            when(ctx.getStub()).thenReturn(stub);
+            char[] value = new char[CredentialTransfer.MAX_IMPORT_LINE_BYTES / 2];
+            Arrays.fill(value, 'x');
+            StringBuilder ndjson = new StringBuilder();
+            for (int i = 1; i <= 10; i++) {
+                ndjson.append("{\"credentialID\":\"credential").append(i).append("\",\"credentialOwner\":\"owner1\",\"credentialValue\":\"")
+                        .append(value).append("\"}\n");
+            }
+
+            String progress = contract.ImportCredentials(ctx, compress(ndjson));
+
+            assertThat(progress).isEqualTo("{\"imported\":6,\"cursor\":6,\"done\":false}");
+        }
+
+        @Test
+        public void resumesFromTheCursor() throws IOException {
+            InMemoryChaincodeStub store = new InMemoryChaincodeStub();
+            SimulatedContext ctx = new SimulatedContext(store);
+            CredentialTransfer contract = new CredentialTransfer();
+            String ndjson = ndjson(CredentialTransfer.MAX_BATCH_SIZE + 1);
+
+            store.setTxId("import1");
+            String progress = contract.ImportCredentials(ctx.begin(store), compress(ndjson));
+            assertThat(progress).isEqualTo("{\"imported\":1000,\"cursor\":1999,\"done\":false}");
+
+            store.setTxId("import2");
+            progress = contract.ImportCredentials(ctx.begin(store), compress(linesAfter(ndjson, 1999)));
+
+            assertThat(progress).isEqualTo("{\"imported\":1,\"cursor\":3,\"done\":true}");
+            assertThat(contract.CredentialExists(ctx.begin(store), "credential1000", "owner1")).isTrue();
+            assertThat(contract.CredentialExists(ctx.begin(store), "credential1001", "owner1")).isTrue();
+        }
+
+        @Test
+        public void whenPayloadDecompressesBeyondTheCap() throws IOException {
+            CredentialTransfer contract = new CredentialTransfer();
+            Context ctx = mock(Context.class);
+            ChaincodeStub stub = mockStub();
+            when(ctx.getStub()).thenReturn(stub);
+            StringBuilder blankLines = new StringBuilder();
+            for (int i = 0; i <= CredentialTransfer.MAX_IMPORT_BYTES; i++) {
+                blankLines.append('\n');
+            }
+
+            Throwable thrown = catchThrowable(() -> {
+                contract.ImportCredentials(ctx, compress(blankLines));
+            });
+
+            assertThat(thrown).isInstanceOf(ChaincodeException.class).hasNoCause()
+                    .hasMessage("Payload is larger than 4194304 bytes when decompressed");
+            assertThat(((ChaincodeException) thrown).getPayload()).isEqualTo("INVALID_CREDENTIAL_BATCH".getBytes());
+        }
+
+        @Test
+        public void whenLineIsTooLong() throws IOException {
+            CredentialTransfer contract = new CredentialTransfer();
+            Context ctx = mock(Context.class);
+            ChaincodeStub stub = mockStub();
+            when(ctx.getStub()).thenReturn(stub);
+            char[] line = new char[CredentialTransfer.MAX_IMPORT_LINE_BYTES + 1];
+            Arrays.fill(line, ' ');
+
+            Throwable thrown = catchThrowable(() -> {
+                contract.ImportCredentials(ctx, compress(new String(line)));
+            });
+
+            assertThat(thrown).isInstanceOf(ChaincodeException.class).hasNoCause()
+                    .hasMessage("Line is longer than 1048576 bytes");
+            verify(stub, never()).putState(anyString(), any());
+        }
+
+        @Test
+        public void whenRecordAlreadyExists() throws IOException {
+            CredentialTransfer contract = new CredentialTransfer();
+            Context ctx = mock(Context.class);
+            ChaincodeStub stub = mockStub();
+            when(ctx.getStub()).thenReturn(stub);
+            when(stub.getState("credential2")).thenReturn(CredentialCodec.encodeMetadata(new Credential("credential2", "credential-name-2", "owner1", null)));
+
+            Throwable thrown = catchThrowable(() -> {
+                contract.ImportCredentials(ctx, payload(2));
+            });
+
+            assertThat(thrown).isInstanceOf(ChaincodeException.class).hasNoCause()
+                    .hasMessage("Line 3: Credential credential2 already exists");
+            assertThat(((ChaincodeException) thrown).getPayload()).isEqualTo("CREDENTIAL_ALREADY_EXISTS".getBytes());
+        }
+
+        @Test
+        public void whenPayloadIsNotCompressed() {
+            CredentialTransfer contract = new CredentialTransfer();
+            Context ctx = mock(Context.class);
+            ChaincodeStub stub = mockStub();
+            when(ctx.getStub()).thenReturn(stub);
+
+            Throwable thrown = catchThrowable(() -> {
+                contract.ImportCredentials(ctx, Base64.getEncoder().encodeToString("{}".getBytes(StandardCharsets.UTF_8)));
+            });
+
+            assertThat(thrown).isInstanceOf(ChaincodeException.class).hasNoCause();
+            assertThat(((ChaincodeException) thrown).getPayload()).isEqualTo("INVALID_CREDENTIAL_BATCH".getBytes());
+            verify(stub, never()).putState(anyString(), any());
+        }
+    }
+
+    @Nested
+    class InvokeBatchTransactions {
+
+        private static final String BATCH = "[{\"credentialID\":\"credential1\",\"credentialName\":\"credential-name-1\",\"credentialOwner\":\"owner1\",\"credentialValue\":\"credential-value-1\"},"
+                + "{\"credentialID\":\"credential2\",\"credentialName\":\"credential-name-2\",\"credentialOwner\":\"owner2\",\"credentialValue\":\"credential-value-2\"}]";
+
+        @Test
+        public void createCredentialsWhenNoneExist() {
+            CredentialTransfer contract = new CredentialTransfer();
+            Context ctx = mock(Context.class);
+            ChaincodeStub stub = mockStub();
+            when(ctx.getStub()).thenReturn(stub);
+
+            String results = contract.CreateCredentials(ctx, BATCH);
+
+            assertThat(results).isEqualTo(
+                    "[{\"credentialID\":\"credential1\",\"status\":\"CREATED\"},{\"credentialID\":\"credential2\",\"status\":\"CREATED\"}]");
+            verify(stub).putState("credential1", CredentialCodec.encodeMetadata(new Credential("credential1", "credential-name-1", "owner1", "credential-value-1", 0, 1)));
+            verify(stub).putState(CredentialValues.key("credential1"), valueEntry("credential-value-1"));
+            verify(stub).putState("credential2", CredentialCodec.encodeMetadata(new Credential("credential2", "credential-name-2", "owner2", "credential-value-2", 0, 1)));
+            verify(stub).putState(CredentialValues.key("credential2"), valueEntry("credential-value-2"));
+        }
+
+        @Test
+        public void createCredentialsWhenOneExists() {
+            CredentialTransfer contract = new CredentialTransfer();
+            Context ctx = mock(Context.class);
+            ChaincodeStub stub = mockStub();
+            when(ctx.getStub()).thenReturn(stub);
+            when(stub.getState("credential2"))
+                    .thenReturn("{ \"credentialID\": \"credential2\", \"credentialName\": \"credential-name-2\", \"credentialOwner\": \"owner2\", \"credentialValue\": \"credential-value-2\" }".getBytes());
+
+            Throwable thrown = catchThrowable(() -> {
+                contract.CreateCredentials(ctx, BATCH);
+            });
+
+            assertThat(thrown).isInstanceOf(ChaincodeException.class).hasNoCause()
+                    .hasMessage("Entry 1: Credential credential2 already exists");
+            assertThat(((ChaincodeException) thrown).getPayload()).isEqualTo("CREDENTIAL_ALREADY_EXISTS".getBytes());
+        }
+
+        @Test
+        public void createCredentialsWithDuplicateIDs() {
+            CredentialTransfer contract = new CredentialTransfer();
+            Context ctx = mock(Context.class);
+            ChaincodeStub stub = mockStub();
+            when(ctx.getStub()).thenReturn(stub);
+
+            Throwable thrown = catchThrowable(() -> {
+                contract.CreateCredentials(ctx, BATCH.replace("credential2", "credential1"));
+            });
+
+            assertThat(thrown).isInstanceOf(ChaincodeException.class).hasNoCause()
+                    .hasMessage("Entry 1: Credential credential1 appears more than once");
+            assertThat(((ChaincodeException) thrown).getPayload()).isEqualTo("INVALID_CREDENTIAL_BATCH".getBytes());
+        }
+
+        @Test
+        public void updateCredentialsWhenOneDoesNotExist() {
+            CredentialTransfer contract = new CredentialTransfer();
+            Context ctx = mock(Context.class);
+            ChaincodeStub stub = mockStub();
+            when(ctx.getStub()).thenReturn(stub);
+
+            Throwable thrown = catchThrowable(() -> {
+                contract.UpdateCredentials(ctx, BATCH);
+            });
+
+            assertThat(thrown).isInstanceOf(ChaincodeException.class).hasNoCause()
+                    .hasMessage("Entry 0: Credential credential1 does not exist");
+            assertThat(((ChaincodeException) thrown).getPayload()).isEqualTo("CREDENTIAL_NOT_FOUND".getBytes());
+        }
+
+        @Test
+        public void deleteCredentialsWhenAllExist() {
+            CredentialTransfer contract = new CredentialTransfer();
+            Context ctx = mock(Context.class);
+            ChaincodeStub stub = mockStub();
+            when(ctx.getStub()).thenReturn(stub);
+            when(stub.getState("credential1"))
+                    .thenReturn("{ \"credentialID\": \"credential1\", \"credentialName\": \"credential-name-1\", \"credentialOwner\": \"owner1\", \"credentialValue\": \"credential-value-1\" }".getBytes());
+            when(stub.getState("credential2"))
+                    .thenReturn("{ \"credentialID\": \"credential2\", \"credentialName\": \"credential-name-2\", \"credentialOwner\": \"owner2\", \"credentialValue\": \"credential-value-2\" }".getBytes());
+
+            String results = contract.DeleteCredentials(ctx, "[\"credential1\",\"credential2\"]");
+
+            assertThat(results).isEqualTo(
+                    "[{\"credentialID\":\"credential1\",\"status\":\"DELETED\"},{\"credentialID\":\"credential2\",\"status\":\"DELETED\"}]");
+            verify(stub).delState("credential1");
+            verify(stub).delState(CredentialTransfer.ownerIndexKey("owner2", "credential2"));
+        }
+
+        @Test
+        public void whenBatchIsEmpty() {
+            CredentialTransfer contract = new CredentialTransfer();
+            Context ctx = mock(Context.class);
+            ChaincodeStub stub = mockStub();
+            when(ctx.getStub()).thenReturn(stub);
+
+            Throwable thrown = catchThrowable(() -> {
+                contract.DeleteCredentials(ctx, "[]");
+            });
+
+            assertThat(thrown).isInstanceOf(ChaincodeException.class).hasNoCause()
+                    .hasMessage("Batch must contain between 1 and 1000 entries");
+            assertThat(((ChaincodeException) thrown).getPayload()).isEqualTo("INVALID_CREDENTIAL_BATCH".getBytes());
+        }
+    }
+
+    @Nested
+    class UpdateCredentialTransaction {
+
+        @Test
+        public void whenCredentialExists() {
+            CredentialTransfer contract = new CredentialTransfer();
+            Context ctx = mock(Context.class);
+            ChaincodeStub stub = mockStub();
+            when(ctx.getStub()).thenReturn(stub);
+            when(stub.getState("credential1"))
+                    .thenReturn("{ \"credentialID\": \"credential1\", \"owner\": \"owner1\", \"credentialValue\": \"credential-value-1\" }".getBytes());
+
+            Credential credential = contract.UpdateCredential(ctx, "credential1", "owner1", "credential-name-1", "credential-value-New");
+
+            assertThat(credential).isEqualTo(new Credential("credential1", "credential-name-1", "owner1", "credential-value-New"));
+        }
+
+        @Test
+        public void whenOwnerChanges() {
+            CredentialTransfer contract = new CredentialTransfer();
+            Context ctx = mock(Context.class);
+            ChaincodeStub stub = mockStub();
+            when(ctx.getStub()).thenReturn(stub);
+            when(stub.getState("credential1"))
+                    .thenReturn("{ \"credentialID\": \"credential1\", \"credentialName\": \"credential-name-1\", \"credentialOwner\": \"owner1\", \"credentialValue\": \"credential-value-1\" }".getBytes());
+
+            contract.UpdateCredential(ctx, "credential1", "owner2", "credential-name-1", "credential-value-1");
+
+            verify(stub).delState(CredentialTransfer.ownerIndexKey("owner1", "credential1"));
+            verify(stub).putState(CredentialTransfer.ownerIndexKey("owner2", "credential1"), new byte[] {0x00});
+        }
+
+        @Test
+        public void whenOwnerIsUnchanged() {
+            CredentialTransfer contract = new CredentialTransfer();
+            Context ctx = mock(Context.class);
+            ChaincodeStub stub = mockStub();
+            when(ctx.getStub()).thenReturn(stub);
+            when(stub.getState("credential1"))
+                    .thenReturn("{ \"credentialID\": \"credential1\", \"credentialName\": \"credential-name-1\", \"credentialOwner\": \"owner1\", \"credentialValue\": \"credential-value-1\" }".getBytes());
+            when(stub.getState(CredentialTransfer.ownerIndexKey("owner1", "credential1"))).thenReturn(new byte[] {0x00});
+
+            contract.UpdateCredential(ctx, "credential1", "owner1", "credential-name-1", "credential-value-New");
+
+            verify(stub, never()).delState(anyString());
+            verify(stub, never()).putState(eq(CredentialTransfer.ownerIndexKey("owner1", "credential1")), any());
+        }
+    }
+
+    @Nested
+    class DeleteCredentialTransaction {
+
+        @Test
+        public void whenCredentialDoesNotExist() {
+            CredentialTransfer contract = new CredentialTransfer();
+            Context ctx = mock(Context.class);
+            ChaincodeStub stub = mockStub();
+            when(ctx.getStub()).thenReturn(stub);
+            when(stub.getState("credential1")).thenReturn("".getBytes());
+
+            Throwable thrown = catchThrowable(() -> {
+                contract.DeleteCredential(ctx, "credential1", "");
+            });
+
+            assertThat(thrown).isInstanceOf(ChaincodeException.class).hasNoCause()
+                    .hasMessage("Credential credential1 does not exist");
+
+            assertThat(((ChaincodeException) thrown).getPayload()).isEqualTo("CREDENTIAL_NOT_FOUND".getBytes());
+        }
+
+        @Test
+        public void whenCredentialExists() {
+            CredentialTransfer contract = new CredentialTransfer();
+            Context ctx = mock(Context.class);
+            ChaincodeStub stub = mockStub();
+            when(ctx.getStub()).thenReturn(stub);
+            when(stub.getState("credential1"))
+                    .thenReturn("{ \"credentialID\": \"credential1\", \"credentialName\": \"credential-name-1\", \"credentialOwner\": \"owner1\", \"credentialValue\": \"credential-value-1\" }".getBytes());
+
+            contract.DeleteCredential(ctx, "credential1", "owner1");
+
+            verify(stub).delState("credential1");
+            verify(stub).delState(CredentialTransfer.ownerIndexKey("owner1", "credential1"));
+            verify(stub, never()).delState(CredentialValues.key("credential1"));
+        }
+
+        @Test
+        public void whenValueIsStoredSeparately() {
+            CredentialTransfer contract = new CredentialTransfer();
+            Context ctx = mock(Context.class);
+            ChaincodeStub stub = mockStub();
+            when(ctx.getStub()).thenReturn(stub);
+            when(stub.getState("credential1"))
+                    .thenReturn(CredentialCodec.encodeMetadata(new Credential("credential1", "credential-name-1", "owner1", "credential-value-1")));
+
+            contract.DeleteCredential(ctx, "credential1", "owner1");
+
+            verify(stub).delState("credential1");
+            verify(stub).delState(CredentialValues.key("credential1"));
+        }
+    }
+
+    @Nested
+    class ConditionalWrites {
+
+        private final CredentialTransfer contract = new CredentialTransfer();
+
+        private final InMemoryChaincodeStub store = new InMemoryChaincodeStub();
+
+        private final SimulatedContext ctx = new SimulatedContext(store);
+
+        @BeforeEach
+        public void seed() {
+            contract.CreateCredential(ctx.begin(store), "credential1", "owner1", "credential-name-1", "credential-value-1");
+        }
+
+        @Test
+        public void versionsGrowWithEachWrite() {
+            assertThat(contract.ReadCredential(ctx.begin(store), "credential1", "owner1").getVersion()).isEqualTo(1L);
+
+            Credential updated = contract.UpdateCredential(ctx.begin(store), "credential1", "owner1", "credential-name-1", "credential-value-2");
+
+            assertThat(updated.getVersion()).isEqualTo(2L);
+            assertThat(contract.ReadCredential(ctx.begin(store), "credential1", "owner1").getVersion()).isEqualTo(2L);
+        }
+
+        @Test
+        public void updateIfVersionAppliesToTheExpectedVersion() {
+            Credential updated = contract.UpdateCredentialIfVersion(ctx.begin(store), "credential1", "owner2", "credential-name-1", "credential-value-2", 1);
+
+            assertThat(updated.getVersion()).isEqualTo(2L);
+            assertThat(contract.ReadCredential(ctx.begin(store), "credential1", "owner2").getCredentialValue()).isEqualTo("credential-value-2");
+        }
+
+        @Test
+        public void updateIfVersionRejectsStaleVersions() {
+            contract.UpdateCredential(ctx.begin(store), "credential1", "owner1", "credential-name-1", "credential-value-2");
+
+            Throwable thrown = catchThrowable(() -> {
+                contract.UpdateCredentialIfVersion(ctx.begin(store), "credential1", "owner1", "credential-name-1", "credential-value-3", 1);
+            });
+
+            assertThat(thrown).isInstanceOf(ChaincodeException.class).hasNoCause()
+                    .hasMessage("Credential credential1 is at version 2, not 1");
+            assertThat(((ChaincodeException) thrown).getPayload()).isEqualTo("CREDENTIAL_VERSION_MISMATCH".getBytes());
+            assertThat(contract.ReadCredential(ctx.begin(store), "credential1", "owner1").getCredentialValue()).isEqualTo("credential-value-2");
+        }
+
+        @Test
+        public void deleteIfVersionRejectsStaleVersions() {
+            Throwable thrown = catchThrowable(() -> {
+                contract.DeleteCredentialIfVersion(ctx.begin(store), "credential1", "owner1", 2);
+            });
+
+            assertThat(thrown).isInstanceOf(ChaincodeException.class).hasNoCause()
+                    .hasMessage("Credential credential1 is at version 1, not 2");
+            assertThat(contract.CredentialExists(ctx.begin(store), "credential1", "owner1")).isTrue();
+
+            contract.DeleteCredentialIfVersion(ctx.begin(store), "credential1", "owner1", 1);
+
+            assertThat(contract.CredentialExists(ctx.begin(store), "credential1", "owner1")).isFalse();
+        }
+
+        @Test
+        public void legacyRecordsAreAtVersionZero() {
+            store.putState("credential2", ("{\"credentialID\":\"credential2\",\"credentialName\":\"credential-name-2\",\"credentialOwner\":\"owner1\","
+                    + "\"credentialValue\":\"credential-value-2\"}").getBytes(StandardCharsets.UTF_8));
+
+            Credential updated = contract.UpdateCredentialIfVersion(ctx.begin(store), "credential2", "owner1", "credential-name-2", "credential-value-3", 0);
+
+            assertThat(updated.getVersion()).isEqualTo(1L);
+        }
+
+        @Test
+        public void whenExpectedVersionIsNegative() {
+            Throwable thrown = catchThrowable(() -> {
+                contract.DeleteCredentialIfVersion(ctx.begin(store), "credential1", "owner1", -1);
+            });
+
+            assertThat(thrown).isInstanceOf(ChaincodeException.class).hasNoCause()
+                    .hasMessage("Version -1 is negative");
+            assertThat(((ChaincodeException) thrown).getPayload()).isEqualTo("INVALID_ARGUMENT".getBytes());
+            assertThat(contract.CredentialExists(ctx.begin(store), "credential1", "owner1")).isTrue();
+        }
+
+        @Test
+        public void versionsCarryOnWhenAnIDIsReused() {
+            contract.UpdateCredential(ctx.begin(store), "credential1", "owner1", "credential-name-1", "credential-value-2");
+            contract.DeleteCredential(ctx.begin(store), "credential1", "owner1");
+
+            Credential created = contract.CreateCredential(ctx.begin(store), "credential1", "owner1", "credential-name-1", "credential-value-3");
+
+            assertThat(created.getVersion()).isEqualTo(3L);
+            assertThat(store.getState(CredentialTransfer.deletedVersionKey("credential1"))).isEmpty();
+            Throwable thrown = catchThrowable(() -> {
+                contract.DeleteCredentialIfVersion(ctx.begin(store), "credential1", "owner1", 1);
+            });
+            assertThat(thrown).isInstanceOf(ChaincodeException.class).hasMessage("Credential credential1 is at version 3, not 1");
+        }
+    }
+
+    @Nested
+    class PrivateCredentialTransactions {
+
+        private static final String SECRET = "private-value-1";
+
+        private final CredentialTransfer contract = new CredentialTransfer();
+
+        private final InMemoryChaincodeStub store = new InMemoryChaincodeStub();
+
+        private final SimulatedContext ctx = new SimulatedContext(store);
+
+        private void passValue(final String credentialValue) {
+            store.setTransient(Collections.singletonMap(CredentialValues.TRANSIENT_VALUE, credentialValue.getBytes(StandardCharsets.UTF_8)));
+        }
+
+        private void createPrivateCredential() {
+            createPrivateCredential("credential1", SECRET);
+        }
+
+        private void createPrivateCredential(final String credentialID, final String credentialValue) {
+            passValue(credentialValue);
+            contract.CreatePrivateCredential(ctx.begin(store), credentialID, "owner1", "credential-name-1", "collection1");
+            store.setTransient(Collections.emptyMap());
+        }
+
+        @Test
+        public void keepsValueOffTheWorldState() {
+            passValue(SECRET);
+
+            Credential credential = contract.CreatePrivateCredential(ctx.begin(store), "credential1", "owner1", "credential-name-1", "collection1");
+
+            assertThat(credential.getCredentialValue()).isNull();
+            assertThat(store.getPrivateData("collection1", "credential1")).isEqualTo(SECRET.getBytes(StandardCharsets.UTF_8));
+            assertThat(new String(store.getState("credential1"), StandardCharsets.UTF_8)).doesNotContain(SECRET);
+            assertThat(new String(store.getState(CredentialValues.key("credential1")), StandardCharsets.UTF_8)).doesNotContain(SECRET);
+        }
+
+        @Test
+        public void whenTransientValueIsMissing() {
+            Throwable thrown = catchThrowable(() -> {
+                contract.CreatePrivateCredential(ctx.begin(store), "credential1", "owner1", "credential-name-1", "collection1");
+            });
+
+            assertThat(thrown).isInstanceOf(ChaincodeException.class).hasNoCause()
+                    .hasMessage("Transient field credentialValue is required");
+            assertThat(((ChaincodeException) thrown).getPayload()).isEqualTo("CREDENTIAL_VALUE_MISSING".getBytes());
+        }
+
+        @Test
+        public void readsValueFromCollection() {
+            createPrivateCredential();
+
+            Credential credential = contract.ReadCredential(ctx.begin(store), "credential1", "owner1");
+
+            assertThat(credential.getCredentialValue()).isEqualTo(SECRET);
+        }
+
+        @Test
+        public void readsMatchingValueFromTransientData() {
+            createPrivateCredential();
+            store.delPrivateData("collection1", "credential1");
+            passValue(SECRET);
+
+            Credential credential = contract.ReadCredential(ctx.begin(store), "credential1", "owner1");
+
+            assertThat(credential.getCredentialValue()).isEqualTo(SECRET);
+        }
+
+        @Test
+        public void ignoresTransientValueWithAnotherHash() {
+            createPrivateCredential();
+            passValue("guessed-value");
+
+            Credential credential = contract.ReadCredential(ctx.begin(store), "credential1", "owner1");
+
+            assertThat(credential.getCredentialValue()).isEqualTo(SECRET);
+        }
+
+        @Test
+        public void updateRequiresTransientValue() {
+            createPrivateCredential();
+
+            Throwable thrown = catchThrowable(() -> {
+                contract.UpdateCredential(ctx.begin(store), "credential1", "owner1", "credential-name-2", "");
+            });
+
+            assertThat(thrown).isInstanceOf(ChaincodeException.class).hasNoCause()
+                    .hasMessage("Transient field credentialValue is required");
+            assertThat(((ChaincodeException) thrown).getPayload()).isEqualTo("CREDENTIAL_VALUE_MISSING".getBytes());
+        }
+
+        @Test
+        public void updateRejectsValuePassedInTheProposal() {
+            createPrivateCredential();
+            passValue("private-value-2");
+
+            Throwable thrown = catchThrowable(() -> {
+                contract.UpdateCredential(ctx.begin(store), "credential1", "owner1", "credential-name-1", "private-value-2");
+            });
+
+            assertThat(thrown).isInstanceOf(ChaincodeException.class).hasNoCause()
+                    .hasMessage("Credential credential1 is private, its value must be passed in transient field credentialValue");
+            assertThat(((ChaincodeException) thrown).getPayload()).isEqualTo("INVALID_ARGUMENT".getBytes());
+            assertThat(store.getPrivateData("collection1", "credential1")).isEqualTo(SECRET.getBytes(StandardCharsets.UTF_8));
+        }
+
+        @Test
+        public void updateReplacesValueFromTransientData() {
+            createPrivateCredential();
+            passValue("private-value-2");
+
+            Credential updated = contract.UpdateCredential(ctx.begin(store), "credential1", "owner1", "credential-name-1", "");
+
+            assertThat(updated.getCredentialValue()).isNull();
+            assertThat(store.getPrivateData("collection1", "credential1")).isEqualTo("private-value-2".getBytes(StandardCharsets.UTF_8));
+        }
+
+        @Test
+        public void batchUpdateTakesEachValueFromItsOwnField() {
+            createPrivateCredential("credential1", SECRET);
+            createPrivateCredential("credential2", "private-value-2");
+            Map<String, byte[]> transientData = new HashMap<String, byte[]>();
+            transientData.put(CredentialValues.transientField("credential1"), "private-value-3".getBytes(StandardCharsets.UTF_8));
+            transientData.put(CredentialValues.transientField("credential2"), "private-value-4".getBytes(StandardCharsets.UTF_8));
+            store.setTransient(transientData);
+
+            contract.UpdateCredentials(ctx.begin(store), "[{\"credentialID\":\"credential1\",\"credentialName\":\"name\",\"credentialOwner\":\"owner1\"},"
+                    + "{\"credentialID\":\"credential2\",\"credentialName\":\"name\",\"credentialOwner\":\"owner1\"}]");
+
+            assertThat(store.getPrivateData("collection1", "credential1")).isEqualTo("private-value-3".getBytes(StandardCharsets.UTF_8));
+            assertThat(store.getPrivateData("collection1", "credential2")).isEqualTo("private-value-4".getBytes(StandardCharsets.UTF_8));
+        }
+
+        @Test
+        public void batchUpdateDoesNotShareTheSingleValueField() {
+            createPrivateCredential("credential1", SECRET);
+            createPrivateCredential("credential2", "private-value-2");
+            passValue("private-value-3");
+
+            Throwable thrown = catchThrowable(() -> {
+                contract.UpdateCredentials(ctx.begin(store), "[{\"credentialID\":\"credential1\",\"credentialName\":\"name\",\"credentialOwner\":\"owner1\"},"
+                        + "{\"credentialID\":\"credential2\",\"credentialName\":\"name\",\"credentialOwner\":\"owner1\"}]");
+            });
+
+            assertThat(thrown).isInstanceOf(ChaincodeException.class).hasNoCause()
+                    .hasMessage("Entry 0: Transient field credentialValue/credential1 is required");
+            assertThat(store.getPrivateData("collection1", "credential2")).isEqualTo("private-value-2".getBytes(StandardCharsets.UTF_8));
+        }
+
+        @Test
+        public void deleteRemovesValueFromCollection() {
+            createPrivateCredential();
+
+            contract.DeleteCredential(ctx.begin(store), "credential1", "owner1");
+
+            assertThat(store.getPrivateData("collection1", "credential1")).isEmpty();
+            assertThat(store.getState(CredentialValues.key("credential1"))).isEmpty();
         }
     }
 }
@@ -0,0 +1,138 @@
+package org.example;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import org.junit.jupiter.api.Test;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+public final class CredentialValuesTest {
+
+    private final InMemoryChaincodeStub store = new InMemoryChaincodeStub();
+
+    private final LedgerAccessRecorder recorder = new LedgerAccessRecorder(store);
+
+    private static String value(final int chunks, final char fill) {
+        StringBuilder value = new StringBuilder();
+        for (int i = 0; i < chunks * CredentialValues.CHUNK_SIZE; i++) {
+            value.append(fill);
+        }
+        return value.toString();
+    }
+
+    private static String hash(final String chunk) throws NoSuchAlgorithmException {
+        byte[] hash = MessageDigest.getInstance("SHA-256").digest(chunk.getBytes(StandardCharsets.UTF_8));
+        StringBuilder hex = new StringBuilder();
+        for (byte b : hash) {
+            hex.append(String.format("%02x", b));
+        }
+        return hex.toString();
+    }
+
+    private static byte[] refs(final long count) {
+        return ByteBuffer.allocate(Long.BYTES).putLong(count).array();
+    }
+
+    @Test
+    public void keepsSmallValuesInline() {
+        CredentialValues.put(recorder.getStub(), "credential1", "credential-value-1");
+
+        assertThat(recorder.getWrites()).isEqualTo(1);
+        assertThat(CredentialValues.get(store, "credential1")).isEqualTo("credential-value-1");
+    }
+
+    @Test
+    public void reassemblesChunkedValues() {
+        String value = value(1, 'a').substring(1) + "\u00e9" + value(1, 'b') + "\u4e2d";
+
+        CredentialValues.put(recorder.getStub(), "credential1", value);
+
+        assertThat(recorder.getWrites()).isEqualTo(7);
+        assertThat(CredentialValues.get(store, "credential1")).isEqualTo(value);
+    }
+
+    @Test
+    public void storesIdenticalChunksOfAValueOnce() {
+        CredentialValues.put(recorder.getStub(), "credential1", value(2, 'a'));
+
+        assertThat(recorder.getWrites()).isEqualTo(3);
+        assertThat(store.size()).isEqualTo(3);
+    }
+
+    @Test
+    public void sharesIdenticalChunksAcrossCredentials() {
+        CredentialValues.put(store, "credential1", value(2, 'a'));
+        recorder.reset();
+
+        CredentialValues.put(recorder.getStub(), "credential2", value(1, 'a') + "tail");
+
+        assertThat(recorder.getWrites()).isEqualTo(4);
+        assertThat(recorder.getBytesWritten()).isLessThan(CredentialValues.CHUNK_SIZE);
+        assertThat(CredentialValues.get(store, "credential2")).isEqualTo(value(1, 'a') + "tail");
+    }
+
+    @Test
+    public void keepsSharedChunksUntilTheLastReferenceIsDeleted() {
+        CredentialValues.put(store, "credential1", value(2, 'a'));
+        CredentialValues.put(store, "credential2", value(1, 'a') + "tail");
+
+        CredentialValues.delete(store, "credential1");
+
+        assertThat(CredentialValues.get(store, "credential2")).isEqualTo(value(1, 'a') + "tail");
+
+        CredentialValues.delete(store, "credential2");
+
+        assertThat(store.size()).isZero();
+    }
+
+    @Test
+    public void deletesChunksWithTheValue() throws NoSuchAlgorithmException {
+        CredentialValues.put(store, "credential1", value(2, 'a') + value(1, 'b'));
+        CredentialValues.put(store, "credential2", value(1, 'b') + "c");
+        int entries = store.size();
+
+        CredentialValues.delete(store, "credential1");
+
+        assertThat(store.size()).isEqualTo(entries - 3);
+        assertThat(store.getState(CredentialValues.chunkRefsKey(hash(value(1, 'b'))))).isEqualTo(refs(1));
+        assertThat(CredentialValues.get(store, "credential2")).isEqualTo(value(1, 'b') + "c");
+    }
+
+    @Test
+    public void deletesChunksThatAreNoLongerReferenced() {
+        CredentialValues.put(store, "credential1", value(2, 'a'));
+
+        CredentialValues.update(store, "credential1", "credential-value-1");
+
+        assertThat(store.size()).isEqualTo(1);
+        assertThat(CredentialValues.get(store, "credential1")).isEqualTo("credential-value-1");
+    }
+
+    @Test
+    public void writesOnlyChangedChunks() {
+        CredentialValues.put(store, "credential1", value(3, 'a') + value(1, 'b'));
+        recorder.reset();
+
+        CredentialValues.update(recorder.getStub(), "credential1", value(3, 'a') + value(1, 'c'));
+
+        assertThat(recorder.getKeysWritten()).hasSize(5);
+        assertThat(recorder.getBytesWritten()).isLessThan(2L * CredentialValues.CHUNK_SIZE);
+        assertThat(store.size()).isEqualTo(5);
+        assertThat(CredentialValues.get(store, "credential1")).isEqualTo(value(3, 'a') + value(1, 'c'));
+    }
+
+    @Test
+    public void writesNothingWhenValueIsUnchanged() {
+        CredentialValues.put(store, "credential1", value(2, 'a'));
+        CredentialValues.put(store, "credential2", "credential-value-2");
+        recorder.reset();
+
+        CredentialValues.update(recorder.getStub(), "credential1", value(2, 'a'));
+        CredentialValues.update(recorder.getStub(), "credential2", "credential-value-2");
+
+        assertThat(recorder.getWrites()).isEqualTo(0);
+    }
+}
@@ -0,0 +1,73 @@
+package org.example;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.ThrowableAssert.catchThrowable;
+
+import org.hyperledger.fabric.shim.ChaincodeException;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.zip.GZIPOutputStream;
+
+public final class ImportPayloadReaderTest {
+
+    private static String compress(final byte[] ndjson) throws IOException {
+        ByteArrayOutputStream compressed = new ByteArrayOutputStream();
+        try (GZIPOutputStream out = new GZIPOutputStream(compressed)) {
+            out.write(ndjson);
+        }
+        return Base64.getEncoder().encodeToString(compressed.toByteArray());
+    }
+
+    @Test
+    public void readsLinesWithoutLineBreaks() throws IOException {
+        try (ImportPayloadReader reader = new ImportPayloadReader(compress("a\r\n\u00e9\n\nlast".getBytes(StandardCharsets.UTF_8)), 100, 10)) {
+            assertThat(reader.readLine()).isEqualTo("a");
+            assertThat(reader.readLine()).isEqualTo("\u00e9");
+            assertThat(reader.readLine()).isEqualTo("");
+            assertThat(reader.readLine()).isEqualTo("last");
+            assertThat(reader.readLine()).isNull();
+        }
+    }
+
+    @Test
+    public void peeksPastBlankLines() throws IOException {
+        try (ImportPayloadReader reader = new ImportPayloadReader(compress("a\n\n \nb\n".getBytes(StandardCharsets.UTF_8)), 100, 10)) {
+            assertThat(reader.readLine()).isEqualTo("a");
+            assertThat(reader.hasMoreLines()).isTrue();
+            assertThat(reader.readLine()).isEqualTo("b");
+            assertThat(reader.hasMoreLines()).isFalse();
+            assertThat(reader.getBytesRead()).isEqualTo(7);
+        }
+    }
+
+    @Test
+    public void countsLineLengthInBytes() throws IOException {
+        try (ImportPayloadReader reader = new ImportPayloadReader(compress("\u00e9\u00e9\u00e9\n".getBytes(StandardCharsets.UTF_8)), 100, 5)) {
+            Throwable thrown = catchThrowable(reader::readLine);
+
+            assertThat(thrown).isInstanceOf(ChaincodeException.class).hasMessage("Line is longer than 5 bytes");
+        }
+    }
+
+    @Test
+    public void stopsDecompressingAtTheCap() throws IOException {
+        byte[] blankLines = new byte[1024 * 1024];
+        Arrays.fill(blankLines, (byte) '\n');
+
+        try (ImportPayloadReader reader = new ImportPayloadReader(compress(blankLines), 1000, 10)) {
+            Throwable thrown = catchThrowable(() -> {
+                String line = reader.readLine();
+                while (line != null) {
+                    line = reader.readLine();
+                }
+            });
+
+            assertThat(thrown).isInstanceOf(ChaincodeException.class).hasMessage("Payload is larger than 1000 bytes when decompressed");
+        }
+    }
+}
@@ -0,0 +1,560 @@
+package org.example;
+
+import com.google.protobuf.ByteString;
+import org.hyperledger.fabric.protos.msp.Identities.SerializedIdentity;
+import org.hyperledger.fabric.protos.peer.ChaincodeEventPackage.ChaincodeEvent;
+import org.hyperledger.fabric.protos.peer.ChaincodeShim.QueryResponseMetadata;
+import org.hyperledger.fabric.protos.peer.ProposalPackage.SignedProposal;
+import org.hyperledger.fabric.shim.Chaincode.Response;
+import org.hyperledger.fabric.shim.ChaincodeStub;
+import org.hyperledger.fabric.shim.ledger.CompositeKey;
+import org.hyperledger.fabric.shim.ledger.KeyModification;
+import org.hyperledger.fabric.shim.ledger.KeyValue;
+import org.hyperledger.fabric.shim.ledger.QueryResultsIterator;
+import org.hyperledger.fabric.shim.ledger.QueryResultsIteratorWithMetadata;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.TreeMap;
+
+/**
+ * Chaincode stub backed by sorted in-memory maps, for exercising the contract without a peer.
+ *
+ * Writes are applied immediately, range and composite key queries iterate over a snapshot taken when
+ * the query starts, and simple key ranges skip the composite key namespace the same way the peer does.
+ * Every write and delete is added to the history of its key under the current transaction ID and
+ * timestamp, and history queries return it newest first like the peer. Like the peer, the stub rejects
+ * paginated queries in a transaction that writes, and writes in one that ran a paginated query; setting
+ * the transaction ID starts a new transaction.
+ * Rich queries and chaincode-to-chaincode calls are not supported.
+ */
+public final class InMemoryChaincodeStub implements ChaincodeStub {
+
+    /**
+     * Self-signed client certificate of User1@org1.example.com, so that contexts can build a client identity.
+     */
+    private static final String CREATOR_CERTIFICATE = "-----BEGIN CERTIFICATE-----\n"
+            + "MIICDDCCAbGgAwIBAgIUKJQQICvVHoITtCRh6qnGTfTqT3YwCgYIKoZIzj0EAwIw\n"
+            + "WjELMAkGA1UEBhMCVVMxGTAXBgNVBAoMEG9yZzEuZXhhbXBsZS5jb20xDzANBgNV\n"
+            + "BAsMBmNsaWVudDEfMB0GA1UEAwwWVXNlcjFAb3JnMS5leGFtcGxlLmNvbTAgFw0y\n"
+            + "NjEwMTcyMDIwMTVaGA8yMTI2MDkyMzIwMjAxNVowWjELMAkGA1UEBhMCVVMxGTAX\n"
+            + "BgNVBAoMEG9yZzEuZXhhbXBsZS5jb20xDzANBgNVBAsMBmNsaWVudDEfMB0GA1UE\n"
+            + "AwwWVXNlcjFAb3JnMS5leGFtcGxlLmNvbTBZMBMGByqGSM49AgEGCCqGSM49AwEH\n"
+            + "A0IABMaujCTpqpUch0omCD42Bih1ZzbMWtZzbCFkjCIKd7JXn3rgZTecm15Y6LCt\n"
+            + "emZ/QZ441zcKYCBQWrPJKpuKzJOjUzBRMB0GA1UdDgQWBBRm+YP5l3F3JNdo8U+4\n"
+            + "CIXSNqeybTAfBgNVHSMEGDAWgBRm+YP5l3F3JNdo8U+4CIXSNqeybTAPBgNVHRMB\n"
+            + "Af8EBTADAQH/MAoGCCqGSM49BAMCA0kAMEYCIQDRs27GLgCKr12Um4GmFzfKQqfL\n"
+            + "jh0LxbSmTFPA51LcMgIhAJ2B4itg7CzltyFSA+befV7pbCRCBrfGauJki5LAfYxx\n"
+            + "-----END CERTIFICATE-----\n";
+
+    private static final String MSP_ID = "Org1MSP";
+
+    /**
+     * First key of an unbounded simple key range; composite keys start with U+0000 and sort before it.
+     */
+    private static final String UNSPECIFIED_START_KEY = "\u0001";
+
+    private static final byte[] CREATOR = SerializedIdentity.newBuilder()
+            .setMspid(MSP_ID)
+            .setIdBytes(ByteString.copyFromUtf8(CREATOR_CERTIFICATE))
+            .build()
+            .toByteArray();
+
+    private final TreeMap<String, byte[]> state = new TreeMap<String, byte[]>();
+
+    private final Map<String, List<KeyModification>> history = new HashMap<String, List<KeyModification>>();
+
+    private boolean historyEnabled = true;
+
+    private final Map<String, TreeMap<String, byte[]>> privateData = new HashMap<String, TreeMap<String, byte[]>>();
+
+    private Map<String, byte[]> transientData = Collections.emptyMap();
+
+    private String txId = "tx0";
+
+    private Instant txTimestamp = Instant.EPOCH;
+
+    private ChaincodeEvent event;
+
+    private List<String> args = Collections.emptyList();
+
+    private boolean writePerformed;
+
+    private boolean paginatedQueryPerformed;
+
+    /**
+     * Returns the number of keys in the world state.
+     *
+     * @return the number of keys
+     */
+    public int size() {
+        return state.size();
+    }
+
+    /**
+     * Sets the ID of the transaction being simulated, which starts a new transaction.
+     *
+     * @param newTxId the transaction ID
+     */
+    public void setTxId(final String newTxId) {
+        this.txId = newTxId;
+        this.writePerformed = false;
+        this.paginatedQueryPerformed = false;
+    }
+
+    /**
+     * Sets the timestamp of the transaction being simulated.
+     *
+     * @param newTxTimestamp the transaction timestamp
+     */
+    public void setTxTimestamp(final Instant newTxTimestamp) {
+        this.txTimestamp = newTxTimestamp;
+    }
+
+    /**
+     * Sets the arguments of the transaction being simulated, for transactions dispatched by a router.
+     *
+     * @param newArgs the function name followed by its parameters
+     */
+    public void setArgs(final String... newArgs) {
+        this.args = Arrays.asList(newArgs);
+    }
+
+    /**
+     * Turns the recording of key history on or off, for simulations too large to keep every version.
+     *
+     * @param enabled whether writes are added to the history
+     */
+    public void setHistoryEnabled(final boolean enabled) {
+        this.historyEnabled = enabled;
+    }
+
+    /**
+     * Sets the transient data of the transaction being simulated.
+     *
+     * @param newTransientData the transient data
+     */
+    public void setTransient(final Map<String, byte[]> newTransientData) {
+        this.transientData = newTransientData;
+    }
+
+    @Override
+    public byte[] getState(final String key) {
+        byte[] value = state.get(key);
+        return value == null ? new byte[0] : value;
+    }
+
+    @Override
+    public void putState(final String key, final byte[] value) {
+        if (value == null || value.length == 0) {
+            delState(key);
+            return;
+        }
+        checkWrite();
+        state.put(key, value);
+        recordHistory(key, value);
+    }
+
+    @Override
+    public void delState(final String key) {
+        checkWrite();
+        state.remove(key);
+        recordHistory(key, null);
+    }
+
+    @Override
+    public QueryResultsIterator<KeyValue> getStateByRange(final String startKey, final String endKey) {
+        return new Results(snapshot(simpleRange(state, startKey, endKey), Integer.MAX_VALUE), null);
+    }
+
+    @Override
+    public QueryResultsIteratorWithMetadata<KeyValue> getStateByRangeWithPagination(final String startKey, final String endKey, final int pageSize,
+                                                                                    final String bookmark) {
+        checkPaginatedQuery();
+        String start = bookmark == null || bookmark.isEmpty() ? startKey : bookmark;
+        return page(simpleRange(state, start, endKey), pageSize);
+    }
+
+    @Override
+    public QueryResultsIterator<KeyValue> getStateByPartialCompositeKey(final String compositeKey) {
+        return new Results(snapshot(prefixRange(state, compositeKey, null), Integer.MAX_VALUE), null);
+    }
+
+    @Override
+    public QueryResultsIterator<KeyValue> getStateByPartialCompositeKey(final String objectType, final String... attributes) {
+        return getStateByPartialCompositeKey(new CompositeKey(objectType, attributes));
+    }
+
+    @Override
+    public QueryResultsIterator<KeyValue> getStateByPartialCompositeKey(final CompositeKey compositeKey) {
+        return getStateByPartialCompositeKey(compositeKey.toString());
+    }
+
+    @Override
+    public QueryResultsIteratorWithMetadata<KeyValue> getStateByPartialCompositeKeyWithPagination(final CompositeKey compositeKey, final int pageSize,
+                                                                                                  final String bookmark) {
+        checkPaginatedQuery();
+        return page(prefixRange(state, compositeKey.toString(), bookmark), pageSize);
+    }
+
+    @Override
+    public CompositeKey createCompositeKey(final String objectType, final String... attributes) {
+        return new CompositeKey(objectType, attributes);
+    }
+
+    @Override
+    public CompositeKey splitCompositeKey(final String compositeKey) {
+        return CompositeKey.parseCompositeKey(compositeKey);
+    }
+
+    @Override
+    public QueryResultsIterator<KeyValue> getQueryResult(final String query) {
+        throw new UnsupportedOperationException("Rich queries are not supported");
+    }
+
+    @Override
+    public QueryResultsIteratorWithMetadata<KeyValue> getQueryResultWithPagination(final String query, final int pageSize, final String bookmark) {
+        throw new UnsupportedOperationException("Rich queries are not supported");
+    }
+
+    @Override
+    public QueryResultsIterator<KeyModification> getHistoryForKey(final String key) {
+        List<KeyModification> modifications = new ArrayList<KeyModification>(history.getOrDefault(key, Collections.emptyList()));
+        Collections.reverse(modifications);
+        return new QueryResultsIterator<KeyModification>() {
+            @Override
+            public Iterator<KeyModification> iterator() {
+                return modifications.iterator();
+            }
+
+            @Override
+            public void close() {
+                // nothing to release
+            }
+        };
+    }
+
+    @Override
+    public byte[] getPrivateData(final String collection, final String key) {
+        byte[] value = collection(collection).get(key);
+        return value == null ? new byte[0] : value;
+    }
+
+    @Override
+    public byte[] getPrivateDataHash(final String collection, final String key) {
+        byte[] value = collection(collection).get(key);
+        return value == null ? new byte[0] : sha256(value);
+    }
+
+    @Override
+    public void putPrivateData(final String collection, final String key, final byte[] value) {
+        checkWrite();
+        collection(collection).put(key, value);
+    }
+
+    @Override
+    public void delPrivateData(final String collection, final String key) {
+        checkWrite();
+        collection(collection).remove(key);
+    }
+
+    @Override
+    public QueryResultsIterator<KeyValue> getPrivateDataByRange(final String collection, final String startKey, final String endKey) {
+        return new Results(snapshot(simpleRange(collection(collection), startKey, endKey), Integer.MAX_VALUE), null);
+    }
+
+    @Override
+    public QueryResultsIterator<KeyValue> getPrivateDataByPartialCompositeKey(final String collection, final String compositeKey) {
+        return new Results(snapshot(prefixRange(collection(collection), compositeKey, null), Integer.MAX_VALUE), null);
+    }
+
+    @Override
+    public QueryResultsIterator<KeyValue> getPrivateDataByPartialCompositeKey(final String collection, final CompositeKey compositeKey) {
+        return getPrivateDataByPartialCompositeKey(collection, compositeKey.toString());
+    }
+
+    @Override
+    public QueryResultsIterator<KeyValue> getPrivateDataByPartialCompositeKey(final String collection, final String objectType, final String... attributes) {
+        return getPrivateDataByPartialCompositeKey(collection, new CompositeKey(objectType, attributes));
+    }
+
+    @Override
+    public QueryResultsIterator<KeyValue> getPrivateDataQueryResult(final String collection, final String query) {
+        throw new UnsupportedOperationException("Rich queries are not supported");
+    }
+
+    @Override
+    public byte[] getStateValidationParameter(final String key) {
+        return new byte[0];
+    }
+
+    @Override
+    public void setStateValidationParameter(final String key, final byte[] value) {
+        throw new UnsupportedOperationException("Key level endorsement is not supported");
+    }
+
+    @Override
+    public byte[] getPrivateDataValidationParameter(final String collection, final String key) {
+        return new byte[0];
+    }
+
+    @Override
+    public void setPrivateDataValidationParameter(final String collection, final String key, final byte[] value) {
+        throw new UnsupportedOperationException("Key level endorsement is not supported");
+    }
+
+    @Override
+    public void setEvent(final String name, final byte[] payload) {
+        event = ChaincodeEvent.newBuilder()
+                .setEventName(name)
+                .setTxId(txId)
+                .setPayload(ByteString.copyFrom(payload))
+                .build();
+    }
+
+    @Override
+    public ChaincodeEvent getEvent() {
+        return event;
+    }
+
+    @Override
+    public Response invokeChaincode(final String chaincodeName, final List<byte[]> chaincodeArgs, final String channel) {
+        throw new UnsupportedOperationException("Chaincode to chaincode calls are not supported");
+    }
+
+    @Override
+    public List<byte[]> getArgs() {
+        List<byte[]> bytes = new ArrayList<byte[]>(args.size());
+        for (String arg : args) {
+            bytes.add(arg.getBytes(StandardCharsets.UTF_8));
+        }
+        return bytes;
+    }
+
+    @Override
+    public List<String> getStringArgs() {
+        return args;
+    }
+
+    @Override
+    public String getFunction() {
+        return args.isEmpty() ? null : args.get(0);
+    }
+
+    @Override
+    public List<String> getParameters() {
+        return args.isEmpty() ? args : args.subList(1, args.size());
+    }
+
+    @Override
+    public String getTxId() {
+        return txId;
+    }
+
+    @Override
+    public String getChannelId() {
+        return "mychannel";
+    }
+
+    @Override
+    public SignedProposal getSignedProposal() {
+        return null;
+    }
+
+    @Override
+    public Instant getTxTimestamp() {
+        return txTimestamp;
+    }
+
+    @Override
+    public byte[] getCreator() {
+        return CREATOR.clone();
+    }
+
+    @Override
+    public Map<String, byte[]> getTransient() {
+        return transientData;
+    }
+
+    @Override
+    public byte[] getBinding() {
+        return new byte[0];
+    }
+
+    @Override
+    public String getMspId() {
+        return MSP_ID;
+    }
+
+    private void checkWrite() {
+        if (paginatedQueryPerformed) {
+            throw new UnsupportedOperationException("Transaction has already performed a paginated query. Writes are not allowed");
+        }
+        writePerformed = true;
+    }
+
+    private void checkPaginatedQuery() {
+        if (writePerformed) {
+            throw new UnsupportedOperationException("Paginated queries are not supported in a transaction that writes");
+        }
+        paginatedQueryPerformed = true;
+    }
+
+    private void recordHistory(final String key, final byte[] value) {
+        if (historyEnabled) {
+            history.computeIfAbsent(key, k -> new ArrayList<KeyModification>()).add(new Modification(txId, txTimestamp, value));
+        }
+    }
+
+    private TreeMap<String, byte[]> collection(final String collection) {
+        return privateData.computeIfAbsent(collection, name -> new TreeMap<String, byte[]>());
+    }
+
+    private static NavigableMap<String, byte[]> simpleRange(final NavigableMap<String, byte[]> keys, final String startKey, final String endKey) {
+        String start = startKey == null || startKey.isEmpty() ? UNSPECIFIED_START_KEY : startKey;
+        if (endKey == null || endKey.isEmpty()) {
+            return keys.tailMap(start, true);
+        }
+        return keys.subMap(start, true, endKey, false);
+    }
+
+    private static NavigableMap<String, byte[]> prefixRange(final NavigableMap<String, byte[]> keys, final String prefix, final String bookmark) {
+        String start = bookmark == null || bookmark.isEmpty() ? prefix : bookmark;
+        NavigableMap<String, byte[]> tail = keys.tailMap(start, true);
+        String end = keys.ceilingKey(prefix + Character.MAX_VALUE);
+        return end == null ? tail : tail.headMap(end, false);
+    }
+
+    private static List<KeyValue> snapshot(final NavigableMap<String, byte[]> range, final int limit) {
+        List<KeyValue> entries = new ArrayList<KeyValue>();
+        for (Map.Entry<String, byte[]> entry : range.entrySet()) {
+            if (entries.size() == limit) {
+                break;
+            }
+            entries.add(new Entry(entry.getKey(), entry.getValue()));
+        }
+        return entries;
+    }
+
+    private static Results page(final NavigableMap<String, byte[]> range, final int pageSize) {
+        List<KeyValue> entries = snapshot(range, pageSize);
+        String bookmark = "";
+        if (!entries.isEmpty()) {
+            String next = range.higherKey(entries.get(entries.size() - 1).getKey());
+            bookmark = next == null ? "" : next;
+        }
+        QueryResponseMetadata metadata = QueryResponseMetadata.newBuilder()
+                .setFetchedRecordsCount(entries.size())
+                .setBookmark(bookmark)
+                .build();
+        return new Results(entries, metadata);
+    }
+
+    private static byte[] sha256(final byte[] value) {
+        try {
+            return MessageDigest.getInstance("SHA-256").digest(value);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static final class Entry implements KeyValue {
+
+        private final String key;
+        private final byte[] value;
+
+        Entry(final String key, final byte[] value) {
+            this.key = key;
+            this.value = value;
+        }
+
+        @Override
+        public String getKey() {
+            return key;
+        }
+
+        @Override
+        public byte[] getValue() {
+            return value;
+        }
+
+        @Override
+        public String getStringValue() {
+            return new String(value, StandardCharsets.UTF_8);
+        }
+    }
+
+    private static final class Modification implements KeyModification {
+
+        private final String txId;
+        private final Instant timestamp;
+        private final byte[] value;
+
+        Modification(final String txId, final Instant timestamp, final byte[] value) {
+            this.txId = txId;
+            this.timestamp = timestamp;
+            this.value = value;
+        }
+
+        @Override
+        public String getTxId() {
+            return txId;
+        }
+
+        @Override
+        public byte[] getValue() {
+            return value == null ? new byte[0] : value;
+        }
+
+        @Override
+        public String getStringValue() {
+            return new String(getValue(), StandardCharsets.UTF_8);
+        }
+
+        @Override
+        public Instant getTimestamp() {
+            return timestamp;
+        }
+
+        @Override
+        public boolean isDeleted() {
+            return value == null;
+        }
+    }
+
+    private static final class Results implements QueryResultsIterator<KeyValue>, QueryResultsIteratorWithMetadata<KeyValue> {
+
+        private final List<KeyValue> entries;
+        private final QueryResponseMetadata metadata;
+
+        Results(final List<KeyValue> entries, final QueryResponseMetadata metadata) {
+            this.entries = entries;
+            this.metadata = metadata;
+        }
+
+        @Override
+        public QueryResponseMetadata getMetadata() {
+            return metadata;
+        }
+
+        @Override
+        public Iterator<KeyValue> iterator() {
+            return entries.iterator();
+        }
+
+        @Override
+        public void close() {
+            // nothing to release
+        }
+    }
+}
@@ -0,0 +1,31 @@
+package org.example;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import com.owlike.genson.Genson;
+import org.junit.jupiter.api.Test;
+
+public final class JsonBufferTest {
+
+    private final Genson genson = new Genson();
+
+    @Test
+    public void escapesStringsLikeGenson() {
+        String value = "quote \" backslash \\ controls \b\f\n\r\t\u0000\u001f unicode \u00e9\u4e2d";
+
+        assertThat(new JsonBuffer().string(value).toString()).isEqualTo(genson.serialize(value));
+    }
+
+    @Test
+    public void writesNullStrings() {
+        assertThat(new JsonBuffer().string(null).toString()).isEqualTo("null");
+    }
+
+    @Test
+    public void appendsRawFragmentsInOrder() {
+        JsonBuffer json = new JsonBuffer().raw("{\"count\":").number(42).raw(",\"items\":").raw("[1,2]".getBytes()).raw("}");
+
+        assertThat(json.toString()).isEqualTo("{\"count\":42,\"items\":[1,2]}");
+        assertThat(json.size()).isEqualTo(json.toString().length());
+    }
+}
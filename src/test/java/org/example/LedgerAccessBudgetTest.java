@@ -0,0 +1,304 @@
+package org.example;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Nested;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.util.Base64;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Ledger access budgets of the contract's transactions.
+ *
+ * Each test seeds an in-memory world state, runs one transaction through the per-transaction cache and
+ * checks the calls that would reach the peer. A change that adds a scan or a redundant read fails here.
+ */
+public final class LedgerAccessBudgetTest {
+
+    private static final int OWNERS = 20;
+
+    private static final int CREDENTIALS_PER_OWNER = 5;
+
+    private static final long HOUR = CredentialTransfer.EXPIRY_BUCKET_MILLIS;
+
+    private final CredentialTransfer contract = new CredentialTransfer();
+
+    private InMemoryChaincodeStub store;
+
+    private LedgerAccessRecorder recorder;
+
+    private SimulatedContext ctx;
+
+    @BeforeEach
+    public void seed() {
+        store = new InMemoryChaincodeStub();
+        recorder = new LedgerAccessRecorder(store);
+        ctx = new SimulatedContext(store);
+
+        for (int owner = 0; owner < OWNERS; owner++) {
+            for (int i = 0; i < CREDENTIALS_PER_OWNER; i++) {
+                String id = "credential" + owner + "-" + i;
+                store.setTxId("seed-" + id);
+                contract.CreateCredential(ctx.begin(store), id, "owner" + owner, "name-" + id, "value-" + id);
+            }
+        }
+        store.setTxId("seed-migration");
+        contract.MigrateCredentials(ctx.begin(store), CredentialTransfer.MAX_PAGE_SIZE, "");
+        recorder.reset();
+    }
+
+    private SimulatedContext recorded() {
+        store.setTxId("tx-under-test");
+        return ctx.begin(recorder.getStub());
+    }
+
+    private static String compress(final String ndjson) throws IOException {
+        ByteArrayOutputStream compressed = new ByteArrayOutputStream();
+        try (GZIPOutputStream out = new GZIPOutputStream(compressed)) {
+            out.write(ndjson.getBytes(StandardCharsets.UTF_8));
+        }
+        return Base64.getEncoder().encodeToString(compressed.toByteArray());
+    }
+
+    @Nested
+    class Reads {
+
+        @Test
+        public void readCredential() {
+            Credential credential = contract.ReadCredential(recorded(), "credential3-1", "owner3");
+
+            assertThat(credential.getCredentialOwner()).isEqualTo("owner3");
+            assertThat(recorder.getReads()).isEqualTo(2);
+            assertThat(recorder.getWrites()).isEqualTo(0);
+            assertThat(recorder.getQueries()).isEqualTo(0);
+            assertThat(recorder.getBytesRead())
+                    .isEqualTo(CredentialCodec.encodeMetadata(credential).length + store.getState(CredentialValues.key("credential3-1")).length);
+        }
+
+        @Test
+        public void readCredentials() {
+            String result = contract.ReadCredentials(recorded(), "[\"credential3-1\",\"missing\",\"credential4-2\"]");
+
+            assertThat(result).endsWith("\"missing\":[\"missing\"]}");
+            assertThat(recorder.getReads()).isEqualTo(5);
+            assertThat(recorder.getWrites()).isEqualTo(0);
+            assertThat(recorder.getQueries()).isEqualTo(0);
+        }
+
+        @Test
+        public void credentialExists() {
+            contract.CredentialExists(recorded(), "credential3-1", "owner3");
+
+            assertThat(recorder.getReads()).isEqualTo(1);
+            assertThat(recorder.getWrites()).isEqualTo(0);
+            assertThat(recorder.getQueries()).isEqualTo(0);
+        }
+
+        @Test
+        public void getAllCredentialsTouchesOnlyTheOwnersRecords() {
+            contract.GetAllCredentials(recorded(), "owner7");
+
+            assertThat(recorder.getQueries()).isEqualTo(1);
+            assertThat(recorder.getQueryEntries()).isEqualTo(CREDENTIALS_PER_OWNER);
+            assertThat(recorder.getReads() + recorder.getQueries()).isLessThanOrEqualTo(2 * CREDENTIALS_PER_OWNER + 2);
+            assertThat(recorder.getWrites()).isEqualTo(0);
+        }
+
+        @Test
+        public void getCredentialSummariesReadsNoValues() {
+            contract.GetCredentialSummaries(recorded(), "owner7");
+
+            assertThat(recorder.getQueries()).isEqualTo(1);
+            assertThat(recorder.getReads()).isEqualTo(CREDENTIALS_PER_OWNER + 1);
+            assertThat(recorder.getKeysRead()).noneMatch(key -> key.startsWith(CredentialValues.key("")));
+            assertThat(recorder.getWrites()).isEqualTo(0);
+        }
+
+        @Test
+        public void getAllCredentialsWithPaginationTouchesOnlyOnePage() {
+            contract.GetAllCredentialsWithPagination(recorded(), "owner7", 2, "");
+
+            assertThat(recorder.getQueries()).isEqualTo(1);
+            assertThat(recorder.getQueryEntries()).isEqualTo(2);
+            assertThat(recorder.getReads()).isLessThanOrEqualTo(4);
+            assertThat(recorder.getWrites()).isEqualTo(0);
+        }
+
+        @Test
+        public void getCredentialHistoryReadsOnlyTheHistory() {
+            store.setTxId("update");
+            contract.UpdateCredential(ctx.begin(store), "credential3-1", "owner3", "name", "new-value");
+
+            contract.GetCredentialHistory(recorded(), "credential3-1", 0, 10);
+
+            assertThat(recorder.getQueries()).isEqualTo(1);
+            assertThat(recorder.getQueryEntries()).isEqualTo(2);
+            assertThat(recorder.getReads()).isEqualTo(0);
+            assertThat(recorder.getWrites()).isEqualTo(0);
+        }
+
+        @Test
+        public void getOwnerStatsTouchesOnlyTheOwnersDeltas() {
+            contract.GetOwnerStats(recorded(), "owner7");
+
+            assertThat(recorder.getQueries()).isEqualTo(1);
+            assertThat(recorder.getQueryEntries()).isEqualTo(CREDENTIALS_PER_OWNER);
+            assertThat(recorder.getReads()).isEqualTo(0);
+            assertThat(recorder.getWrites()).isEqualTo(0);
+        }
+    }
+
+    @Nested
+    class Writes {
+
+        @Test
+        public void createCredential() {
+            contract.CreateCredential(recorded(), "new-credential", "owner1", "name", "value");
+
+            assertThat(recorder.getReads()).isEqualTo(2);
+            assertThat(recorder.getWrites()).isEqualTo(4);
+            assertThat(recorder.getQueries()).isEqualTo(0);
+        }
+
+        @Test
+        public void updateCredential() {
+            contract.UpdateCredential(recorded(), "credential1-1", "owner1", "name", "new-value");
+
+            assertThat(recorder.getReads()).isEqualTo(2);
+            assertThat(recorder.getWrites()).isEqualTo(3);
+            assertThat(recorder.getQueries()).isEqualTo(0);
+        }
+
+        @Test
+        public void updateCredentialToAnotherOwner() {
+            contract.UpdateCredential(recorded(), "credential1-1", "owner2", "name", "new-value");
+
+            assertThat(recorder.getReads()).isEqualTo(2);
+            assertThat(recorder.getWrites()).isEqualTo(6);
+            assertThat(recorder.getQueries()).isEqualTo(0);
+        }
+
+        @Test
+        public void deleteCredential() {
+            contract.DeleteCredential(recorded(), "credential1-1", "owner1");
+
+            assertThat(recorder.getReads()).isEqualTo(2);
+            assertThat(recorder.getWrites()).isEqualTo(5);
+            assertThat(recorder.getQueries()).isEqualTo(0);
+        }
+
+        @Test
+        public void initLedger() {
+            contract.InitLedger(recorded());
+
+            assertThat(recorder.getReads()).isEqualTo(12);
+            assertThat(recorder.getWrites()).isEqualTo(24);
+            assertThat(recorder.getQueries()).isEqualTo(0);
+        }
+    }
+
+    @Nested
+    class Maintenance {
+
+        @Test
+        public void purgeExpiredTouchesOnlyDueBuckets() {
+            store.setTxId("tokens");
+            contract.CreateExpiringCredential(ctx.begin(store), "token1", "owner1", "name", "value1", HOUR + 10);
+            contract.CreateExpiringCredential(ctx.begin(store), "token2", "owner1", "name", "value2", 3 * HOUR);
+            store.setTxTimestamp(Instant.ofEpochMilli(2 * HOUR));
+
+            String progress = contract.PurgeExpired(recorded(), 2 * HOUR, 10);
+
+            assertThat(progress).isEqualTo("{\"scanned\":1,\"purged\":1,\"done\":true}");
+            assertThat(recorder.getQueries()).isEqualTo(1);
+            assertThat(recorder.getQueryEntries()).isEqualTo(2);
+            assertThat(recorder.getReads()).isEqualTo(2);
+            assertThat(recorder.getWrites()).isEqualTo(6);
+        }
+
+        @Test
+        public void compactOwnerStatsFoldsOnlyTheOwnersDeltas() {
+            contract.CompactOwnerStats(recorded(), "owner7");
+
+            assertThat(recorder.getQueries()).isEqualTo(1);
+            assertThat(recorder.getQueryEntries()).isEqualTo(CREDENTIALS_PER_OWNER);
+            assertThat(recorder.getReads()).isEqualTo(0);
+            assertThat(recorder.getWrites()).isEqualTo(CREDENTIALS_PER_OWNER + 1);
+        }
+    }
+
+    @Nested
+    class Migration {
+
+        @Test
+        public void migratedRecordsAreNotRewritten() {
+            String progress = contract.MigrateCredentials(recorded(), 50, "");
+
+            assertThat(progress).endsWith("\"done\":false}");
+            assertThat(recorder.getQueries()).isEqualTo(1);
+            assertThat(recorder.getQueryEntries()).isEqualTo(51);
+            assertThat(recorder.getReads()).isEqualTo(50);
+            assertThat(recorder.getWrites()).isEqualTo(0);
+        }
+
+        @Test
+        public void inlineRecordIsSplitOnce() {
+            store.putState("credential1-1", CredentialCodec.encode(new Credential("credential1-1", "name", "owner1", "value")));
+
+            contract.MigrateCredentials(recorded(), 10, "");
+
+            assertThat(recorder.getReads()).isEqualTo(10);
+            assertThat(recorder.getWrites()).isEqualTo(2);
+            assertThat(recorder.getQueries()).isEqualTo(1);
+        }
+    }
+
+    @Nested
+    class Batches {
+
+        @Test
+        public void createCredentials() {
+            contract.CreateCredentials(recorded(), "[{\"credentialID\":\"a\",\"credentialOwner\":\"owner1\",\"credentialValue\":\"1\"},"
+                    + "{\"credentialID\":\"b\",\"credentialOwner\":\"owner1\",\"credentialValue\":\"2\"}]");
+
+            assertThat(recorder.getReads()).isEqualTo(4);
+            assertThat(recorder.getWrites()).isEqualTo(7);
+            assertThat(recorder.getQueries()).isEqualTo(0);
+        }
+
+        @Test
+        public void updateCredentials() {
+            contract.UpdateCredentials(recorded(), "[{\"credentialID\":\"credential1-1\",\"credentialOwner\":\"owner1\",\"credentialValue\":\"1\"},"
+                    + "{\"credentialID\":\"credential1-2\",\"credentialOwner\":\"owner1\",\"credentialValue\":\"2\"}]");
+
+            assertThat(recorder.getReads()).isEqualTo(4);
+            assertThat(recorder.getWrites()).isEqualTo(5);
+            assertThat(recorder.getQueries()).isEqualTo(0);
+        }
+
+        @Test
+        public void importCredentials() throws IOException {
+            contract.ImportCredentials(recorded(), compress("{\"credentialID\":\"a\",\"credentialOwner\":\"owner1\",\"credentialValue\":\"1\"}\n"
+                    + "{\"credentialID\":\"b\",\"credentialOwner\":\"owner1\",\"credentialValue\":\"2\"}\n"));
+
+            assertThat(recorder.getReads()).isEqualTo(4);
+            assertThat(recorder.getWrites()).isEqualTo(7);
+            assertThat(recorder.getQueries()).isEqualTo(0);
+        }
+
+        @Test
+        public void deleteCredentials() {
+            contract.DeleteCredentials(recorded(), "[\"credential1-1\",\"credential1-2\"]");
+
+            assertThat(recorder.getReads()).isEqualTo(4);
+            assertThat(recorder.getWrites()).isEqualTo(9);
+            assertThat(recorder.getQueries()).isEqualTo(0);
+        }
+    }
+}
@@ -0,0 +1,184 @@
+package org.example;
+
+import org.hyperledger.fabric.shim.ChaincodeStub;
+import org.hyperledger.fabric.shim.ledger.KeyModification;
+import org.hyperledger.fabric.shim.ledger.KeyValue;
+
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.Set;
+
+/**
+ * Records how a transaction uses the ledger: point reads and writes, range queries, the entries they
+ * return and the number of bytes moved in each direction.
+ *
+ * The recorder wraps a stub and counts the calls that reach it, so when it sits below the
+ * per-transaction cache it sees exactly the calls that would be sent to the peer.
+ */
+public final class LedgerAccessRecorder {
+
+    private static final Set<String> READS = new HashSet<String>(Arrays.asList(
+            "getState", "getStringState", "getPrivateData", "getPrivateDataUTF8", "getPrivateDataHash"));
+
+    private static final Set<String> WRITES = new HashSet<String>(Arrays.asList(
+            "putState", "putStringState", "delState", "putPrivateData", "delPrivateData"));
+
+    private static final Set<String> QUERIES = new HashSet<String>(Arrays.asList(
+            "getStateByRange", "getStateByRangeWithPagination", "getStateByPartialCompositeKey", "getStateByPartialCompositeKeyWithPagination",
+            "getQueryResult", "getQueryResultWithPagination", "getHistoryForKey",
+            "getPrivateDataByRange", "getPrivateDataByPartialCompositeKey", "getPrivateDataQueryResult"));
+
+    private final ChaincodeStub stub;
+
+    private int reads;
+    private int writes;
+    private int queries;
+    private int queryEntries;
+    private long bytesRead;
+    private long bytesWritten;
+    private final Set<String> keysRead = new LinkedHashSet<String>();
+    private final Set<String> keysWritten = new LinkedHashSet<String>();
+
+    /**
+     * Creates a recorder for the calls made to the given stub.
+     *
+     * @param delegate the stub that serves the calls
+     */
+    public LedgerAccessRecorder(final ChaincodeStub delegate) {
+        this.stub = (ChaincodeStub) Proxy.newProxyInstance(ChaincodeStub.class.getClassLoader(), new Class<?>[] {ChaincodeStub.class},
+                (proxy, method, args) -> record(method, args, invoke(delegate, method, args)));
+    }
+
+    /**
+     * Returns the recording stub to hand to the contract.
+     *
+     * @return the recording stub
+     */
+    public ChaincodeStub getStub() {
+        return stub;
+    }
+
+    /**
+     * Forgets everything recorded so far, typically between the setup and the transaction under test.
+     */
+    public void reset() {
+        reads = 0;
+        writes = 0;
+        queries = 0;
+        queryEntries = 0;
+        bytesRead = 0;
+        bytesWritten = 0;
+        keysRead.clear();
+        keysWritten.clear();
+    }
+
+    public int getReads() {
+        return reads;
+    }
+
+    public int getWrites() {
+        return writes;
+    }
+
+    public int getQueries() {
+        return queries;
+    }
+
+    public int getQueryEntries() {
+        return queryEntries;
+    }
+
+    public long getBytesRead() {
+        return bytesRead;
+    }
+
+    public long getBytesWritten() {
+        return bytesWritten;
+    }
+
+    public Set<String> getKeysRead() {
+        return Collections.unmodifiableSet(keysRead);
+    }
+
+    public Set<String> getKeysWritten() {
+        return Collections.unmodifiableSet(keysWritten);
+    }
+
+    @Override
+    public String toString() {
+        return String.format("reads=%d writes=%d queries=%d queryEntries=%d bytesRead=%d bytesWritten=%d",
+                reads, writes, queries, queryEntries, bytesRead, bytesWritten);
+    }
+
+    private Object record(final Method method, final Object[] args, final Object result) {
+        String name = method.getName();
+
+        if (READS.contains(name)) {
+            reads++;
+            keysRead.add(String.valueOf(args[args.length - 1]));
+            bytesRead += size(result);
+        } else if (WRITES.contains(name)) {
+            writes++;
+            keysWritten.add(String.valueOf(args[name.startsWith("del") ? args.length - 1 : args.length - 2]));
+            bytesWritten += name.startsWith("del") ? 0 : size(args[args.length - 1]);
+        } else if (QUERIES.contains(name)) {
+            queries++;
+            return countingResults(method.getReturnType(), result);
+        }
+        return result;
+    }
+
+    private Object countingResults(final Class<?> type, final Object results) {
+        return Proxy.newProxyInstance(type.getClassLoader(), new Class<?>[] {type}, (proxy, method, args) -> {
+            Object result = invoke(results, method, args);
+            if (!"iterator".equals(method.getName())) {
+                return result;
+            }
+
+            Iterator<?> entries = (Iterator<?>) result;
+            return new Iterator<Object>() {
+                @Override
+                public boolean hasNext() {
+                    return entries.hasNext();
+                }
+
+                @Override
+                public Object next() {
+                    Object entry = entries.next();
+                    queryEntries++;
+                    if (entry instanceof KeyValue) {
+                        bytesRead += ((KeyValue) entry).getKey().length() + size(((KeyValue) entry).getValue());
+                    } else if (entry instanceof KeyModification) {
+                        bytesRead += size(((KeyModification) entry).getValue());
+                    }
+                    return entry;
+                }
+            };
+        });
+    }
+
+    private static Object invoke(final Object target, final Method method, final Object[] args) throws Throwable {
+        try {
+            return method.invoke(target, args);
+        } catch (InvocationTargetException e) {
+            throw e.getCause();
+        }
+    }
+
+    private static long size(final Object value) {
+        if (value instanceof byte[]) {
+            return ((byte[]) value).length;
+        }
+        if (value instanceof String) {
+            return ((String) value).getBytes(StandardCharsets.UTF_8).length;
+        }
+        return 0;
+    }
+}
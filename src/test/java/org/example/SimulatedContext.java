@@ -0,0 +1,34 @@
+package org.example;
+
+import org.hyperledger.fabric.contract.Context;
+import org.hyperledger.fabric.shim.ChaincodeStub;
+
+/**
+ * Context for driving many simulated transactions through the contract without a peer.
+ *
+ * Building a context parses the client certificate, which would dominate the cost of a simulated
+ * transaction. This context is built once and gets a fresh per-transaction cache on top of the given
+ * stub for every transaction, which is what {@link CredentialTransfer#createContext} provides on a peer.
+ */
+public final class SimulatedContext extends Context {
+
+    /**
+     * Creates a context for the given stub.
+     *
+     * @param stub the stub whose creator identifies the client
+     */
+    public SimulatedContext(final ChaincodeStub stub) {
+        super(stub);
+    }
+
+    /**
+     * Starts a new transaction against the given stub.
+     *
+     * @param peerStub the stub the transaction reads from and writes to
+     * @return this context
+     */
+    public SimulatedContext begin(final ChaincodeStub peerStub) {
+        this.stub = new CachingChaincodeStub(peerStub);
+        return this;
+    }
+}
@@ -0,0 +1,83 @@
+package org.example;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import org.hyperledger.fabric.contract.Context;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Nested;
+import org.junit.jupiter.api.Test;
+
+public final class TransactionMetricsTest {
+
+    @Nested
+    class LatencyHistogramTest {
+
+        @Test
+        public void reportsNothingWhenEmpty() {
+            LatencyHistogram histogram = new LatencyHistogram();
+
+            assertThat(histogram.getCount()).isZero();
+            assertThat(histogram.getPercentileMicros(99)).isZero();
+            assertThat(histogram.getMeanMicros()).isZero();
+        }
+
+        @Test
+        public void reportsPercentilesAsBucketUpperBounds() {
+            LatencyHistogram histogram = new LatencyHistogram();
+            for (int i = 0; i < 99; i++) {
+                histogram.record(3_000);
+            }
+            histogram.record(1_000_000);
+
+            assertThat(histogram.getCount()).isEqualTo(100);
+            assertThat(histogram.getPercentileMicros(50)).isEqualTo(4);
+            assertThat(histogram.getPercentileMicros(99)).isEqualTo(4);
+            assertThat(histogram.getPercentileMicros(100)).isEqualTo(1024);
+            assertThat(histogram.getMaxMicros()).isEqualTo(1000);
+        }
+    }
+
+    @Nested
+    class TransactionHooks {
+
+        @AfterEach
+        public void disableMetrics() {
+            TransactionMetrics.setEnabled(false);
+            TransactionTimer.stop();
+        }
+
+        @Test
+        public void recordsCompletedTransactions() {
+            TransactionMetrics.setEnabled(true);
+            CredentialTransfer contract = new CredentialTransfer();
+            InMemoryChaincodeStub store = new InMemoryChaincodeStub();
+            store.putState("credential1", CredentialCodec.encode(new Credential("credential1", "name", "owner", "value")));
+            store.setArgs("MetricsTestReadCredential");
+            Context ctx = contract.createContext(store);
+
+            contract.beforeTransaction(ctx);
+            Credential credential = contract.ReadCredential(ctx, "credential1", "owner");
+            contract.afterTransaction(ctx, credential);
+
+            TransactionMetrics.Stats stats = TransactionMetrics.getInstance().get("MetricsTestReadCredential");
+            assertThat(stats.getLatency().getCount()).isEqualTo(1);
+            assertThat(stats.getStubCalls()).isEqualTo(1);
+            assertThat(stats.getSerialization().getCount()).isEqualTo(1);
+            assertThat(stats.getResultSize()).isEqualTo("credential1nameownervalue".length());
+            assertThat(TransactionMetrics.getInstance().summary()).contains("MetricsTestReadCredential count=1");
+        }
+
+        @Test
+        public void recordsNothingWhenDisabled() {
+            CredentialTransfer contract = new CredentialTransfer();
+            InMemoryChaincodeStub store = new InMemoryChaincodeStub();
+            store.setArgs("MetricsTestDisabled");
+            Context ctx = contract.createContext(store);
+
+            contract.beforeTransaction(ctx);
+            contract.afterTransaction(ctx, "result");
+
+            assertThat(TransactionMetrics.getInstance().get("MetricsTestDisabled")).isNull();
+        }
+    }
+}
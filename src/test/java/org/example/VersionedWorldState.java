@@ -0,0 +1,421 @@
+package org.example;
+
+import org.hyperledger.fabric.shim.ChaincodeStub;
+import org.hyperledger.fabric.shim.ledger.KeyValue;
+
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Consumer;
+
+/**
+ * World state with key versions, for simulating concurrent endorsements and their validation at commit
+ * the way a Fabric peer does.
+ *
+ * An endorsement runs a transaction against the committed state without changing it and records its
+ * read-write set: the version of every key it read, the keys and versions every range or composite key
+ * query returned, and the values it wrote. Endorsements may run in parallel; like on the peer, they
+ * hold a shared lock that keeps commits out while they run. Committing a block validates its
+ * transactions in order: a transaction is invalid if a key it read has a different version by then,
+ * or if re-running one of its queries returns different keys or versions, and the writes of valid
+ * transactions are applied before the next one is validated. The version of a key is the block and
+ * transaction number of its last write.
+ *
+ * Like on the peer, an endorsement that runs a paginated query may not write, and one that writes may
+ * not run a paginated query: the peer cannot revalidate paginated results, so it fails such an
+ * endorsement and the transaction is never ordered.
+ *
+ * Private data, key level endorsement and chaincode-to-chaincode calls are not supported in
+ * endorsements, and events are discarded.
+ */
+public final class VersionedWorldState {
+
+    private static final Set<String> POINT_READS = new HashSet<String>(Arrays.asList("getState", "getStringState"));
+
+    private static final Set<String> QUERIES = new HashSet<String>(Arrays.asList(
+            "getStateByRange", "getStateByRangeWithPagination", "getStateByPartialCompositeKey", "getStateByPartialCompositeKeyWithPagination"));
+
+    private static final Set<String> PAGINATED_QUERIES = new HashSet<String>(Arrays.asList(
+            "getStateByRangeWithPagination", "getStateByPartialCompositeKeyWithPagination"));
+
+    private static final Set<String> UNSUPPORTED = new HashSet<String>(Arrays.asList(
+            "putStringState", "putPrivateData", "delPrivateData", "purgePrivateData",
+            "setStateValidationParameter", "setPrivateDataValidationParameter", "invokeChaincode"));
+
+    private final InMemoryChaincodeStub committed = new InMemoryChaincodeStub();
+
+    private final Map<String, Long> versions = new HashMap<String, Long>();
+
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+
+    private long height;
+
+    /**
+     * Creates an empty world state. History is not kept, so history queries return nothing.
+     */
+    public VersionedWorldState() {
+        committed.setHistoryEnabled(false);
+    }
+
+    /**
+     * Returns the committed state. It must not be changed directly.
+     *
+     * @return the stub that holds the committed state
+     */
+    public ChaincodeStub getCommitted() {
+        return committed;
+    }
+
+    /**
+     * Returns the number of committed blocks.
+     *
+     * @return the block height
+     */
+    public long getHeight() {
+        lock.readLock().lock();
+        try {
+            return height;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Returns the version of a committed key.
+     *
+     * @param key the key
+     * @return the version, or zero if the key does not exist
+     */
+    public long getVersion(final String key) {
+        lock.readLock().lock();
+        try {
+            return version(key);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Simulates a transaction against the committed state. A transaction that throws is recorded as
+     * failed, and would not be sent for ordering.
+     *
+     * @param txID        the ID of the transaction
+     * @param transaction the transaction, which gets a stub recording its read-write set
+     * @return the endorsement
+     */
+    public Endorsement endorse(final String txID, final Consumer<ChaincodeStub> transaction) {
+        Endorsement endorsement = new Endorsement(txID, Instant.now());
+        lock.readLock().lock();
+        try {
+            transaction.accept(endorsementStub(endorsement));
+        } catch (RuntimeException e) {
+            endorsement.failure = e;
+            endorsement.code = ValidationCode.ENDORSEMENT_FAILURE;
+        } finally {
+            lock.readLock().unlock();
+        }
+        return endorsement;
+    }
+
+    /**
+     * Validates the transactions of a block in order and applies the writes of the valid ones. Failed
+     * endorsements in the block are skipped.
+     *
+     * @param block the endorsements, in block order
+     */
+    public void commit(final List<Endorsement> block) {
+        lock.writeLock().lock();
+        try {
+            height++;
+            for (int txNumber = 0; txNumber < block.size(); txNumber++) {
+                Endorsement endorsement = block.get(txNumber);
+                if (endorsement.code == ValidationCode.ENDORSEMENT_FAILURE) {
+                    continue;
+                }
+                validate(endorsement);
+                if (endorsement.code == ValidationCode.VALID) {
+                    apply(endorsement, (height << 32) | (txNumber + 1));
+                }
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    private void validate(final Endorsement endorsement) {
+        for (Map.Entry<String, Long> read : endorsement.reads.entrySet()) {
+            if (version(read.getKey()) != read.getValue()) {
+                endorsement.invalidate(ValidationCode.MVCC_READ_CONFLICT, read.getKey());
+                return;
+            }
+        }
+
+        for (QueryRead query : endorsement.queries) {
+            String conflict = query.revalidate();
+            if (conflict != null) {
+                endorsement.invalidate(ValidationCode.PHANTOM_READ_CONFLICT, conflict);
+                return;
+            }
+        }
+        endorsement.code = ValidationCode.VALID;
+    }
+
+    private void apply(final Endorsement endorsement, final long version) {
+        committed.setTxId(endorsement.txID);
+        committed.setTxTimestamp(endorsement.timestamp);
+        for (Map.Entry<String, byte[]> write : endorsement.writes.entrySet()) {
+            if (write.getValue() == null) {
+                committed.delState(write.getKey());
+                versions.remove(write.getKey());
+            } else {
+                committed.putState(write.getKey(), write.getValue());
+                versions.put(write.getKey(), version);
+            }
+        }
+        // later endorsements and revalidations query the committed state in transactions of their own
+        committed.setTxId(endorsement.txID);
+    }
+
+    private long version(final String key) {
+        Long version = versions.get(key);
+        return version == null ? 0 : version;
+    }
+
+    private ChaincodeStub endorsementStub(final Endorsement endorsement) {
+        return (ChaincodeStub) Proxy.newProxyInstance(ChaincodeStub.class.getClassLoader(), new Class<?>[] {ChaincodeStub.class},
+            (proxy, method, args) -> {
+                String name = method.getName();
+                if (UNSUPPORTED.contains(name)) {
+                    throw new UnsupportedOperationException(name + " is not supported in simulated endorsements");
+                }
+                switch (name) {
+                    case "getTxId":
+                        return endorsement.txID;
+                    case "getTxTimestamp":
+                        return endorsement.timestamp;
+                    case "setEvent":
+                        return null;
+                    case "putState":
+                        endorsement.checkWrite();
+                        byte[] value = (byte[]) args[1];
+                        endorsement.writes.put((String) args[0], value == null || value.length == 0 ? null : value);
+                        return null;
+                    case "delState":
+                        endorsement.checkWrite();
+                        endorsement.writes.put((String) args[0], null);
+                        return null;
+                    default:
+                        break;
+                }
+
+                if (POINT_READS.contains(name)) {
+                    endorsement.reads.putIfAbsent((String) args[0], version((String) args[0]));
+                } else if (QUERIES.contains(name)) {
+                    if (PAGINATED_QUERIES.contains(name)) {
+                        endorsement.checkPaginatedQuery();
+                    }
+                    QueryRead query = new QueryRead(method, args);
+                    endorsement.queries.add(query);
+                    return query.record(invoke(method, args));
+                }
+                return invoke(method, args);
+            });
+    }
+
+    private Object invoke(final Method method, final Object[] args) throws Throwable {
+        try {
+            return method.invoke(committed, args);
+        } catch (InvocationTargetException e) {
+            throw e.getCause();
+        }
+    }
+
+    /**
+     * Outcome of a transaction.
+     */
+    public enum ValidationCode {
+        /** Endorsed and not committed yet. */
+        PENDING,
+        /** The transaction threw during endorsement. */
+        ENDORSEMENT_FAILURE,
+        /** Committed. */
+        VALID,
+        /** A key read during endorsement changed before the transaction was validated. */
+        MVCC_READ_CONFLICT,
+        /** A query run during endorsement returns different results when the transaction is validated. */
+        PHANTOM_READ_CONFLICT
+    }
+
+    /**
+     * Read-write set of a simulated transaction and its outcome.
+     */
+    public static final class Endorsement {
+
+        private final String txID;
+
+        private final Instant timestamp;
+
+        private final Map<String, Long> reads = new LinkedHashMap<String, Long>();
+
+        private final List<QueryRead> queries = new ArrayList<QueryRead>();
+
+        private final Map<String, byte[]> writes = new LinkedHashMap<String, byte[]>();
+
+        private ValidationCode code = ValidationCode.PENDING;
+
+        private boolean paginated;
+
+        private String conflictKey;
+
+        private RuntimeException failure;
+
+        private Endorsement(final String txID, final Instant timestamp) {
+            this.txID = txID;
+            this.timestamp = timestamp;
+        }
+
+        public String getTxID() {
+            return txID;
+        }
+
+        public ValidationCode getCode() {
+            return code;
+        }
+
+        /**
+         * Returns the key that invalidated the transaction: the key read at another version, or the first
+         * key where a re-run query differs, or the start of the query if it returns fewer entries.
+         *
+         * @return the key, or null if the transaction was not invalidated
+         */
+        public String getConflictKey() {
+            return conflictKey;
+        }
+
+        public RuntimeException getFailure() {
+            return failure;
+        }
+
+        public Set<String> getKeysRead() {
+            return Collections.unmodifiableSet(reads.keySet());
+        }
+
+        public Set<String> getKeysWritten() {
+            return Collections.unmodifiableSet(writes.keySet());
+        }
+
+        private void invalidate(final ValidationCode validationCode, final String key) {
+            this.code = validationCode;
+            this.conflictKey = key;
+        }
+
+        private void checkWrite() {
+            if (paginated) {
+                throw new UnsupportedOperationException("Transaction has already performed a paginated query. Writes are not allowed");
+            }
+        }
+
+        private void checkPaginatedQuery() {
+            if (!writes.isEmpty()) {
+                throw new UnsupportedOperationException("Paginated queries are not supported in a transaction that writes");
+            }
+            paginated = true;
+        }
+    }
+
+    /**
+     * A query run during endorsement, with the keys and versions of the entries the transaction consumed.
+     */
+    private final class QueryRead {
+
+        private final Method method;
+
+        private final Object[] args;
+
+        private final List<String> keys = new ArrayList<String>();
+
+        private final List<Long> keyVersions = new ArrayList<Long>();
+
+        private boolean exhausted;
+
+        QueryRead(final Method method, final Object[] args) {
+            this.method = method;
+            this.args = args;
+        }
+
+        Object record(final Object results) {
+            return Proxy.newProxyInstance(ChaincodeStub.class.getClassLoader(), new Class<?>[] {method.getReturnType()},
+                (proxy, resultsMethod, resultsArgs) -> {
+                    Object result = resultsMethod.invoke(results, resultsArgs);
+                    if (!"iterator".equals(resultsMethod.getName())) {
+                        return result;
+                    }
+
+                    @SuppressWarnings("unchecked")
+                    Iterator<KeyValue> iterator = (Iterator<KeyValue>) result;
+                    return new Iterator<KeyValue>() {
+                        @Override
+                        public boolean hasNext() {
+                            boolean hasNext = iterator.hasNext();
+                            exhausted |= !hasNext;
+                            return hasNext;
+                        }
+
+                        @Override
+                        public KeyValue next() {
+                            KeyValue entry = iterator.next();
+                            keys.add(entry.getKey());
+                            keyVersions.add(version(entry.getKey()));
+                            return entry;
+                        }
+                    };
+                });
+        }
+
+        /**
+         * Runs the query again against the committed state.
+         *
+         * @return the first key whose presence or version differs, or null if the consumed results are unchanged
+         */
+        @SuppressWarnings("unchecked")
+        String revalidate() {
+            Iterable<KeyValue> results;
+            try {
+                results = (Iterable<KeyValue>) method.invoke(committed, args);
+            } catch (ReflectiveOperationException e) {
+                throw new IllegalStateException("Cannot run " + method.getName() + " again", e);
+            }
+
+            Iterator<KeyValue> current = results.iterator();
+            for (int i = 0; i < keys.size(); i++) {
+                if (!current.hasNext()) {
+                    return keys.get(i);
+                }
+                String key = current.next().getKey();
+                if (!key.equals(keys.get(i))) {
+                    return key.compareTo(keys.get(i)) < 0 ? key : keys.get(i);
+                }
+                if (version(key) != keyVersions.get(i)) {
+                    return key;
+                }
+            }
+            if (exhausted && current.hasNext()) {
+                return current.next().getKey();
+            }
+            return null;
+        }
+    }
+}
@@ -0,0 +1,131 @@
+package org.example;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import org.example.VersionedWorldState.Endorsement;
+import org.example.VersionedWorldState.ValidationCode;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+
+public final class VersionedWorldStateTest {
+
+    private final CredentialTransfer contract = new CredentialTransfer();
+
+    private final VersionedWorldState state = new VersionedWorldState();
+
+    private final SimulatedContext ctx = new SimulatedContext(state.getCommitted());
+
+    @BeforeEach
+    public void createCredentials() {
+        state.commit(Arrays.asList(
+                state.endorse("seed1", stub -> contract.CreateCredential(ctx.begin(stub), "credential1", "owner1", "name", "value")),
+                state.endorse("seed2", stub -> contract.CreateCredential(ctx.begin(stub), "credential2", "owner1", "name", "value"))));
+    }
+
+    @Test
+    public void leavesTheCommittedStateAloneDuringEndorsement() {
+        long version = state.getVersion("credential1");
+
+        Endorsement update = state.endorse("tx1", stub -> contract.UpdateCredential(ctx.begin(stub), "credential1", "owner1", "name", "new value"));
+
+        assertThat(update.getCode()).isEqualTo(ValidationCode.PENDING);
+        assertThat(update.getKeysWritten()).contains("credential1");
+        assertThat(state.getVersion("credential1")).isEqualTo(version);
+    }
+
+    @Test
+    public void invalidatesTheSecondOfTwoConcurrentUpdates() {
+        Endorsement first = state.endorse("tx1", stub -> contract.UpdateCredential(ctx.begin(stub), "credential1", "owner1", "name", "first"));
+        Endorsement second = state.endorse("tx2", stub -> contract.UpdateCredential(ctx.begin(stub), "credential1", "owner1", "name", "second"));
+
+        state.commit(Arrays.asList(first, second));
+
+        assertThat(first.getCode()).isEqualTo(ValidationCode.VALID);
+        assertThat(second.getCode()).isEqualTo(ValidationCode.MVCC_READ_CONFLICT);
+        assertThat(second.getConflictKey()).isEqualTo("credential1");
+    }
+
+    @Test
+    public void commitsConcurrentUpdatesOfDifferentCredentialsOfOneOwner() {
+        Endorsement first = state.endorse("tx1", stub -> contract.UpdateCredential(ctx.begin(stub), "credential1", "owner1", "name", "first"));
+        Endorsement second = state.endorse("tx2", stub -> contract.UpdateCredential(ctx.begin(stub), "credential2", "owner1", "name", "second"));
+
+        state.commit(Arrays.asList(first, second));
+
+        assertThat(first.getCode()).isEqualTo(ValidationCode.VALID);
+        assertThat(second.getCode()).isEqualTo(ValidationCode.VALID);
+    }
+
+    @Test
+    public void commitsUpdatesEndorsedAfterTheLastBlock() {
+        long version = state.getVersion("credential1");
+        state.commit(Collections.singletonList(
+                state.endorse("tx1", stub -> contract.UpdateCredential(ctx.begin(stub), "credential1", "owner1", "name", "first"))));
+
+        Endorsement second = state.endorse("tx2", stub -> contract.UpdateCredential(ctx.begin(stub), "credential1", "owner1", "name", "second"));
+        state.commit(Collections.singletonList(second));
+
+        assertThat(second.getCode()).isEqualTo(ValidationCode.VALID);
+        assertThat(state.getHeight()).isEqualTo(3);
+        assertThat(state.getVersion("credential1")).isGreaterThan(version);
+    }
+
+    @Test
+    public void invalidatesListingsThatMissACredentialCreatedMeanwhile() {
+        Endorsement listing = state.endorse("tx1", stub -> contract.GetAllCredentials(ctx.begin(stub), "owner1"));
+        Endorsement create = state.endorse("tx2", stub -> contract.CreateCredential(ctx.begin(stub), "credential3", "owner1", "name", "value"));
+
+        state.commit(Arrays.asList(create, listing));
+
+        assertThat(create.getCode()).isEqualTo(ValidationCode.VALID);
+        assertThat(listing.getCode()).isEqualTo(ValidationCode.PHANTOM_READ_CONFLICT);
+        assertThat(listing.getConflictKey()).contains("credential3");
+    }
+
+    @Test
+    public void failsEndorsementsThatWriteAfterAPaginatedQuery() {
+        Endorsement migration = state.endorse("tx1", stub -> {
+            stub.getStateByRangeWithPagination("", "", 10, "");
+            stub.putState("credential1", "value".getBytes());
+        });
+
+        assertThat(migration.getCode()).isEqualTo(ValidationCode.ENDORSEMENT_FAILURE);
+        assertThat(migration.getFailure()).hasMessage("Transaction has already performed a paginated query. Writes are not allowed");
+    }
+
+    @Test
+    public void failsEndorsementsThatRunAPaginatedQueryAfterAWrite() {
+        Endorsement migration = state.endorse("tx1", stub -> {
+            stub.delState("credential1");
+            stub.getStateByRangeWithPagination("", "", 10, "");
+        });
+
+        assertThat(migration.getCode()).isEqualTo(ValidationCode.ENDORSEMENT_FAILURE);
+        assertThat(migration.getFailure()).hasMessage("Paginated queries are not supported in a transaction that writes");
+    }
+
+    @Test
+    public void runsPaginatedListingsAfterCommittedWrites() {
+        Endorsement page = state.endorse("tx1", stub -> contract.GetAllCredentialsWithPagination(ctx.begin(stub), "owner1", 1, ""));
+        Endorsement create = state.endorse("tx2", stub -> contract.CreateCredential(ctx.begin(stub), "credential3", "owner1", "name", "value"));
+
+        state.commit(Arrays.asList(create, page));
+
+        assertThat(page.getCode()).isEqualTo(ValidationCode.VALID);
+        assertThat(state.endorse("tx3", stub -> contract.GetAllCredentialsWithPagination(ctx.begin(stub), "owner1", 1, "")).getCode())
+                .isEqualTo(ValidationCode.PENDING);
+    }
+
+    @Test
+    public void skipsFailedEndorsements() {
+        Endorsement read = state.endorse("tx1", stub -> contract.ReadCredential(ctx.begin(stub), "credential9", "owner1"));
+
+        state.commit(Collections.singletonList(read));
+
+        assertThat(read.getCode()).isEqualTo(ValidationCode.ENDORSEMENT_FAILURE);
+        assertThat(read.getFailure()).hasMessage("Credential credential9 does not exist");
+    }
+}